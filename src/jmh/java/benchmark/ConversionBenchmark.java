@@ -0,0 +1,153 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the conversion hot paths on a synthetic document. Next to the number of calls per second every
+ * benchmark reports the tokens processed per second as the "tokens" counter. Run with "gradle jmh", which adds
+ * the gc profiler to report the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+    private static final List<String> ALLOWED_LABELS = Collections.singletonList("COMP");
+    private static final String DOCUMENT_NAME = "synthetic";
+
+    @Param({"2000", "50000"})
+    public int documentTokens;
+
+    @Param({"0.05", "0.3"})
+    public double annotationDensity;
+
+    @Param({"0.0", "0.5"})
+    public double unicodeMix;
+
+    private ConverterAccess converter;
+    private File directory;
+    private String text;
+    private String asciiText;
+    private List<String> annotationLines;
+    private List<String> rawTokens;
+    private List<String> tokens;
+    private List<Integer> startPositions;
+    private List<?> entities;
+    private Object alignedTokens;
+    private Object annotationIndex;
+
+    /**
+     * Counts the tokens processed by a benchmark, reported by JMH as tokens per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class TokenCounter {
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void createDocument() throws Throwable {
+        converter = new ConverterAccess();
+        SyntheticCorpus.Document document = new SyntheticCorpus(42, documentTokens, annotationDensity, unicodeMix)
+                .nextDocument(DOCUMENT_NAME);
+        directory = Files.createTempDirectory("conversion-benchmark").toFile();
+        document.writeTo(directory);
+
+        text = document.getText().replace('\n', ' ');
+        annotationLines = document.getAnnotationLines();
+        asciiText = converter.applyAsciiTransformation(text);
+        rawTokens = converter.tokenizeString(new StringReader(document.getText()));
+        tokens = converter.tokensOf(converter.alignTokens(text));
+        startPositions = converter.findStartingPositionsOfTokens(tokens, asciiText);
+        entities = converter.readInAnnotationFile(DOCUMENT_NAME, directory.getPath(), ALLOWED_LABELS);
+        alignedTokens = converter.alignTokens(text);
+        annotationIndex = converter.newAnnotationIndex(annotationLines, ALLOWED_LABELS);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDocument() throws IOException {
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory.toPath());
+    }
+
+    @Benchmark
+    public List<String> tokenizeString(TokenCounter counter) throws Throwable {
+        List<String> result = converter.tokenizeString(new StringReader(text));
+        counter.tokens += result.size();
+        return result;
+    }
+
+    @Benchmark
+    public String applyAsciiTransformationText(TokenCounter counter) throws Throwable {
+        counter.tokens += tokens.size();
+        return converter.applyAsciiTransformation(text);
+    }
+
+    @Benchmark
+    public int applyAsciiTransformationTokens(TokenCounter counter) throws Throwable {
+        int length = 0;
+        for (String token : rawTokens) {
+            length += converter.applyAsciiTransformation(token).length();
+        }
+        counter.tokens += rawTokens.size();
+        return length;
+    }
+
+    @Benchmark
+    public int splitAnnotationsByDelimiters(TokenCounter counter) throws Throwable {
+        int parts = 0;
+        for (String token : rawTokens) {
+            parts += converter.splitAnnotationsByDelimiters(token).size();
+        }
+        counter.tokens += rawTokens.size();
+        return parts;
+    }
+
+    @Benchmark
+    public List<Integer> findStartingPositionsOfTokens(TokenCounter counter) throws Throwable {
+        counter.tokens += tokens.size();
+        return converter.findStartingPositionsOfTokens(tokens, asciiText);
+    }
+
+    @Benchmark
+    public Object alignTokens(TokenCounter counter) throws Throwable {
+        counter.tokens += tokens.size();
+        return converter.alignTokens(text);
+    }
+
+    @Benchmark
+    public List<String> matchTokens(TokenCounter counter) throws Throwable {
+        counter.tokens += tokens.size();
+        return converter.matchTokens(tokens, entities, startPositions);
+    }
+
+    @Benchmark
+    public List<String> labelTokens(TokenCounter counter) throws Throwable {
+        counter.tokens += tokens.size();
+        return converter.labelTokens(annotationIndex, alignedTokens);
+    }
+
+    @Benchmark
+    public void createTSVFile(TokenCounter counter) throws Throwable {
+        converter.createTSVFile(DOCUMENT_NAME, directory.getPath(), ALLOWED_LABELS);
+        counter.tokens += tokens.size();
+    }
+}
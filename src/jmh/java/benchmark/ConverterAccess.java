@@ -0,0 +1,172 @@
+package benchmark;
+
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Gives the benchmarks access to the converter. JMH does not allow benchmarks in the default package and classes
+ * of the default package cannot be imported, so the methods are looked up once by reflection and called through
+ * method handles.
+ */
+class ConverterAccess {
+    // static final handles are treated as constants by the JIT, so calling them costs about as much as a direct call
+    private static final Class<?> ANNOTATION_INDEX_CLASS;
+    private static final Class<?> LABEL_SCHEMA_CLASS;
+    private static final MethodHandle TOKENIZE_STRING;
+    private static final MethodHandle APPLY_ASCII_TRANSFORMATION;
+    private static final MethodHandle SPLIT_ANNOTATIONS_BY_DELIMITERS;
+    private static final MethodHandle FIND_STARTING_POSITIONS_OF_TOKENS;
+    private static final MethodHandle MATCH_TOKENS;
+    private static final MethodHandle READ_IN_ANNOTATION_FILE;
+    private static final MethodHandle ALIGN_TOKENS;
+    private static final MethodHandle GET_TOKENS;
+    private static final MethodHandle ADD_ANNOTATION_LINE;
+    private static final MethodHandle LABEL_TOKENS;
+    private static final MethodHandle CREATE_TSV_FILE;
+    private static final MethodHandle CONVERT_DOCUMENTS;
+    private static final MethodHandle NEW_CRF_TRAINER;
+    private static final MethodHandle DEFAULT_PROPERTIES;
+    private static final MethodHandle CROSS_VALIDATE;
+    private static final MethodHandle TOTAL;
+    private static final MethodHandle GET_F1;
+    private static final Class<?> CONVERSION_OPTIONS_CLASS;
+    private static final Class<?> SEQUENCE_SPLITTER_CLASS;
+
+    static {
+        try {
+            Class<?> parserClass = Class.forName("FileParser");
+            Class<?> alignedTokensClass = Class.forName("AlignedTokens");
+            ANNOTATION_INDEX_CLASS = Class.forName("AnnotationIndex");
+            LABEL_SCHEMA_CLASS = Class.forName("LabelSchema");
+
+            TOKENIZE_STRING = find(parserClass, "tokenizeString", Reader.class);
+            APPLY_ASCII_TRANSFORMATION = find(parserClass, "applyAsciiTransformation", String.class);
+            SPLIT_ANNOTATIONS_BY_DELIMITERS = find(parserClass, "splitAnnotationsByDelimiters", String.class);
+            FIND_STARTING_POSITIONS_OF_TOKENS = find(parserClass, "findStartingPositionsOfTokens", List.class,
+                    String.class);
+            MATCH_TOKENS = find(parserClass, "matchTokens", List.class, List.class, List.class);
+            READ_IN_ANNOTATION_FILE = find(parserClass, "readInAnnotationFile", String.class, String.class,
+                    List.class);
+            ALIGN_TOKENS = find(parserClass, "alignTokens", String.class);
+            GET_TOKENS = find(alignedTokensClass, "getTokens");
+            ADD_ANNOTATION_LINE = find(ANNOTATION_INDEX_CLASS, "addAnnotationLine", String.class);
+            LABEL_TOKENS = find(ANNOTATION_INDEX_CLASS, "labelTokens", alignedTokensClass);
+            CREATE_TSV_FILE = find(parserClass, "createTSVFile", String.class, String.class, List.class);
+
+            Class<?> trainerClass = Class.forName("CrfTrainer");
+            CONVERSION_OPTIONS_CLASS = Class.forName("ConversionOptions");
+            SEQUENCE_SPLITTER_CLASS = Class.forName("SequenceSplitter");
+            CONVERT_DOCUMENTS = find(parserClass, "convertDocuments", String.class, List.class,
+                    CONVERSION_OPTIONS_CLASS);
+            NEW_CRF_TRAINER = MethodHandles.lookup().unreflectConstructor(trainerClass.getConstructor(
+                    Properties.class, int.class, long.class, SEQUENCE_SPLITTER_CLASS));
+            DEFAULT_PROPERTIES = find(trainerClass, "defaultProperties");
+            CROSS_VALIDATE = find(trainerClass, "crossValidate", List.class, int.class);
+            TOTAL = find(trainerClass, "total", List.class);
+            GET_F1 = find(Class.forName("CrfTrainer$FoldResult"), "getF1");
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Object parser;
+
+    ConverterAccess() throws ReflectiveOperationException {
+        parser = Class.forName("FileParser").getConstructor().newInstance();
+    }
+
+    private static MethodHandle find(Class<?> type, String name, Class<?>... parameterTypes)
+            throws ReflectiveOperationException {
+        Method method = type.getDeclaredMethod(name, parameterTypes);
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<String> tokenizeString(Reader reader) throws Throwable {
+        return (List<String>) TOKENIZE_STRING.invoke(parser, reader);
+    }
+
+    String applyAsciiTransformation(String input) throws Throwable {
+        return (String) APPLY_ASCII_TRANSFORMATION.invoke(parser, input);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<String> splitAnnotationsByDelimiters(String token) throws Throwable {
+        return (List<String>) SPLIT_ANNOTATIONS_BY_DELIMITERS.invoke(parser, token);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Integer> findStartingPositionsOfTokens(List<String> tokens, String text) throws Throwable {
+        return (List<Integer>) FIND_STARTING_POSITIONS_OF_TOKENS.invoke(parser, tokens, text);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<String> matchTokens(List<String> tokens, List<?> entities, List<Integer> startPositions) throws Throwable {
+        return (List<String>) MATCH_TOKENS.invoke(parser, tokens, entities, startPositions);
+    }
+
+    List<?> readInAnnotationFile(String textName, String path, List<String> allowedLabels) throws Throwable {
+        return (List<?>) READ_IN_ANNOTATION_FILE.invoke(parser, textName, path, allowedLabels);
+    }
+
+    Object alignTokens(String text) throws Throwable {
+        return ALIGN_TOKENS.invoke(parser, text);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<String> tokensOf(Object alignedTokens) throws Throwable {
+        return (List<String>) GET_TOKENS.invoke(alignedTokens);
+    }
+
+    Object newAnnotationIndex(List<String> annotationLines, List<String> allowedLabels) throws Throwable {
+        Object schema = LABEL_SCHEMA_CLASS.getConstructor(Collection.class).newInstance(allowedLabels);
+        Object index = ANNOTATION_INDEX_CLASS.getConstructor(LABEL_SCHEMA_CLASS).newInstance(schema);
+        for (String line : annotationLines) {
+            ADD_ANNOTATION_LINE.invoke(index, line);
+        }
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<String> labelTokens(Object annotationIndex, Object alignedTokens) throws Throwable {
+        return (List<String>) LABEL_TOKENS.invoke(annotationIndex, alignedTokens);
+    }
+
+    void createTSVFile(String textName, String path, List<String> allowedLabels) throws Throwable {
+        CREATE_TSV_FILE.invoke(parser, textName, path, allowedLabels);
+    }
+
+    /**
+     * @return the converted documents of the directory, ConvertedDocument instances
+     */
+    List<?> convertDocuments(String path, List<String> allowedLabels) throws Throwable {
+        Object options = CONVERSION_OPTIONS_CLASS.getConstructor().newInstance();
+        return (List<?>) CONVERT_DOCUMENTS.invoke(parser, path, allowedLabels, options);
+    }
+
+    /**
+     * @param maxSequenceLength maximal length of the sentence level sequences, 0 for sentences of any length and
+     *                          -1 to train on whole documents
+     * @return a CrfTrainer with the default properties training a single fold at a time
+     */
+    static Object newCrfTrainer(int maxSequenceLength) throws Throwable {
+        Object splitter = maxSequenceLength < 0 ? null
+                : SEQUENCE_SPLITTER_CLASS.getConstructor(int.class).newInstance(maxSequenceLength);
+        return NEW_CRF_TRAINER.invoke((Properties) DEFAULT_PROPERTIES.invoke(), 1, Runtime.getRuntime().maxMemory(),
+                splitter);
+    }
+
+    /**
+     * @return F1 of the entities over all folds
+     */
+    static double crossValidate(Object trainer, List<?> documents, int k) throws Throwable {
+        List<?> results = (List<?>) CROSS_VALIDATE.invoke(trainer, documents, k);
+        return (double) GET_F1.invoke(TOTAL.invoke(results));
+    }
+}
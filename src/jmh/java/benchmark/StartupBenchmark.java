@@ -0,0 +1,91 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to the first converted document of a new JVM: every invocation starts the shadow jar in a
+ * process of its own, converts a single synthetic document and waits for the process to end. With appCds the
+ * process is started with the class data sharing archive built by "gradle appCds", which has to be run before,
+ * e.g. gradle appCds jmh -PjmhArgs="StartupBenchmark"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @Param({"false", "true"})
+    public boolean appCds;
+
+    /** the shadow jar, relative to the project directory gradle runs the benchmarks in */
+    @Param({"build/libs/AnnotationFileConverter-1.0-all.jar"})
+    public String jar;
+
+    private File directory;
+    private File logFile;
+    private List<String> command;
+
+    @Setup(Level.Trial)
+    public void createDocument() throws IOException {
+        File jarFile = new File(jar);
+        File archive = new File(jar.replaceAll("\\.jar$", ".jsa"));
+        if (!jarFile.isFile() || (appCds && !archive.isFile())) {
+            throw new IllegalStateException(jarFile + " or " + archive + " does not exist, run gradle appCds");
+        }
+        directory = Files.createTempDirectory("startup-benchmark").toFile();
+        File input = new File(directory, "input");
+        File output = new File(directory, "output");
+        if (!input.mkdir() || !output.mkdir()) {
+            throw new IOException("could not create the directories in " + directory);
+        }
+        new SyntheticCorpus(42, 200, 0.05, 0.2).nextDocument("synthetic").writeTo(input);
+        logFile = new File(directory, "output.log");
+
+        command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        if (appCds) {
+            command.add("-XX:SharedArchiveFile=" + archive.getPath());
+            command.add("-Xshare:auto");
+        }
+        command.add("-jar");
+        command.add(jarFile.getPath());
+        command.add("-i");
+        command.add(input.getPath());
+        command.add("-o");
+        command.add(output.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDocument() throws IOException {
+        deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int convertFirstDocument() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile)
+                .start();
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException("the conversion failed with exit code " + exitCode + ", see " + logFile);
+        }
+        return exitCode;
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        File[] children = file.listFiles();
+        for (File child : children == null ? new File[0] : children) {
+            deleteRecursively(child);
+        }
+        Files.delete(file.toPath());
+    }
+}
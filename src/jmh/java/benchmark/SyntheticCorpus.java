@@ -0,0 +1,124 @@
+package benchmark;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates brat documents (.txt and .ann) with a controlled size, annotation density and amount of unicode
+ * punctuation. The same seed always produces the same documents, so benchmark runs are comparable.
+ */
+public class SyntheticCorpus {
+    private static final String[] WORDS = {"the", "company", "reported", "growth", "in", "revenue", "for",
+            "quarter", "analysts", "expected", "market", "shares", "rose", "percent", "after", "announcement",
+            "of", "and", "with", "new", "product", "line", "said", "chief", "executive", "on", "Monday"};
+    private static final String[] COMPANY_NAMES = {"Siemens", "BASF", "Apple", "Beats-Electronics", "Foo.Bar",
+            "M\u00fcller", "AT&T", "Daimler", "Volks", "Bayer"};
+    private static final String[] COMPANY_SUFFIXES = {"AG", "SE", "GmbH", "Inc.", "Co. KG", "Ltd."};
+    private static final String[][] PUNCTUATION = {
+            // ascii variant, unicode variant: quotes, ellipsis, no-break space and soft hyphen
+            {"\"", "\u201c"}, {"\"", "\u201d"}, {"'", "\u2019"}, {"...", "\u2026"}, {" ", "\u00a0"}, {"", "\u00ad"}};
+
+    private final Random random;
+    private final int documentTokens;
+    private final double annotationDensity;
+    private final double unicodeMix;
+
+    /**
+     * @param seed seed of the random generator
+     * @param documentTokens number of words and punctuation marks per document
+     * @param annotationDensity probability that a word position starts an annotated company name
+     * @param unicodeMix probability that a punctuation mark is written with its unicode instead of its ascii form
+     */
+    public SyntheticCorpus(long seed, int documentTokens, double annotationDensity, double unicodeMix) {
+        this.random = new Random(seed);
+        this.documentTokens = documentTokens;
+        this.annotationDensity = annotationDensity;
+        this.unicodeMix = unicodeMix;
+    }
+
+    /**
+     * @param name name of the document without file ending
+     * @return next generated document
+     */
+    public Document nextDocument(String name) {
+        StringBuilder text = new StringBuilder();
+        List<String> annotationLines = new ArrayList<>();
+        int tokens = 0;
+        while (tokens < documentTokens) {
+            if (tokens > 0) {
+                text.append(tokens % 17 == 0 ? "\n" : " ");
+            }
+            if (random.nextDouble() < annotationDensity) {
+                int start = text.length();
+                text.append(pick(COMPANY_NAMES)).append(' ').append(pick(COMPANY_SUFFIXES));
+                annotationLines.add("T" + (annotationLines.size() + 1) + "\tCOMP " + start + " " + text.length()
+                        + "\t" + text.substring(start));
+                tokens += 2;
+            } else if (random.nextInt(6) == 0) {
+                String[] punctuation = PUNCTUATION[random.nextInt(PUNCTUATION.length)];
+                text.append(random.nextDouble() < unicodeMix ? punctuation[1] : punctuation[0]);
+                text.append(pick(WORDS));
+                tokens += 2;
+            } else {
+                text.append(pick(WORDS));
+                tokens++;
+            }
+            if (random.nextInt(12) == 0) {
+                text.append(random.nextBoolean() ? "," : ".");
+                tokens++;
+            }
+        }
+        text.append(".\n");
+        return new Document(name, text.toString(), annotationLines);
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * A generated document.
+     */
+    public static class Document {
+        private final String name;
+        private final String text;
+        private final List<String> annotationLines;
+
+        Document(String name, String text, List<String> annotationLines) {
+            this.name = name;
+            this.text = text;
+            this.annotationLines = annotationLines;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public List<String> getAnnotationLines() {
+            return annotationLines;
+        }
+
+        /**
+         * writes the document as name.txt and name.ann into the directory
+         * @param directory directory where the files are created
+         * @throws IOException if the files could not be written
+         */
+        public void writeTo(File directory) throws IOException {
+            try (Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(new File(directory, name + ".txt")), StandardCharsets.UTF_8)) {
+                writer.write(text);
+            }
+            try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(new File(directory, name + ".ann")), StandardCharsets.UTF_8))) {
+                annotationLines.forEach(writer::println);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the CRF cross validation on whole documents with the training on sentence level sequences. Every
+ * invocation trains and evaluates all folds once, so the time per invocation is the training time. The "f1"
+ * counter reports the F1 of the entities over all folds, so the speedup can be weighed against the quality.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrainingBenchmark {
+    private static final List<String> ALLOWED_LABELS = Collections.singletonList("COMP");
+    private static final int DOCUMENTS = 40;
+    private static final int FOLDS = 2;
+
+    /** -1 trains on whole documents, 0 on sentences, larger values on sentences of at most that many tokens */
+    @Param({"-1", "0", "40"})
+    public int maxSequenceLength;
+
+    @Param({"2000"})
+    public int documentTokens;
+
+    private File directory;
+    private List<?> documents;
+    private Object trainer;
+
+    /**
+     * Reports the F1 of the last cross validation of an iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Quality {
+        public double f1;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            f1 = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void createDocuments() throws Throwable {
+        SyntheticCorpus corpus = new SyntheticCorpus(42, documentTokens, 0.05, 0.0);
+        directory = Files.createTempDirectory("training-benchmark").toFile();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            corpus.nextDocument("synthetic" + i).writeTo(directory);
+        }
+        documents = new ConverterAccess().convertDocuments(directory.getPath(), ALLOWED_LABELS);
+        trainer = ConverterAccess.newCrfTrainer(maxSequenceLength);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDocuments() throws IOException {
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory.toPath());
+    }
+
+    @Benchmark
+    public double crossValidate(Quality quality) throws Throwable {
+        quality.f1 = ConverterAccess.crossValidate(trainer, documents, FOLDS);
+        return quality.f1;
+    }
+}
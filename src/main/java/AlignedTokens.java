@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tokens of a text together with the position of each token in the text. Positions are kept in int arrays,
+ * so no Integer has to be created per token. The tokens of the PTB Tokenizer the tokens were split from are
+ * remembered by the index of their first token.
+ */
+public class AlignedTokens {
+    private final List<String> tokens = new ArrayList<>();
+    private int[] begins = new int[64];
+    private int[] ends = new int[64];
+    private int[] wordStarts = new int[64];
+    private int wordCount = 0;
+
+    /**
+     * adds a token at the end of the text
+     * @param token the token
+     * @param begin start position of the token in the text
+     * @param end end position of the token in the text (exclusive)
+     */
+    void add(String token, int begin, int end) {
+        int index = tokens.size();
+        if (index == begins.length) {
+            begins = Arrays.copyOf(begins, index * 2);
+            ends = Arrays.copyOf(ends, index * 2);
+        }
+        tokens.add(token);
+        begins[index] = begin;
+        ends[index] = end;
+    }
+
+    /**
+     * starts the next token of the PTB Tokenizer, the tokens added after it were split from it
+     */
+    void startWord() {
+        if (wordCount == wordStarts.length) {
+            wordStarts = Arrays.copyOf(wordStarts, wordCount * 2);
+        }
+        wordStarts[wordCount++] = tokens.size();
+    }
+
+    /**
+     * removes all tokens, so the arrays can be used for the next text
+     */
+    void clear() {
+        tokens.clear();
+        wordCount = 0;
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    public String getToken(int index) {
+        return tokens.get(index);
+    }
+
+    public int getBegin(int index) {
+        return begins[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @return index of the first token of every token of the PTB Tokenizer, in the order of the text
+     */
+    public int[] getWordStarts() {
+        return Arrays.copyOf(wordStarts, wordCount);
+    }
+}
@@ -0,0 +1,444 @@
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.process.CoreLabelTokenFactory;
+import edu.stanford.nlp.process.PTBTokenizer;
+import edu.stanford.nlp.process.Tokenizer;
+import edu.stanford.nlp.process.TokenizerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Converts a text and its brat annotations in memory, without any file. This is the converter FileParser uses
+ * for every document, so the tokens and labels are the same as in the TSV files.
+ * A converter is immutable and can be used by any number of threads at the same time, every call works on its
+ * own tokenizer and annotation index. The annotations are read completely before the first token is returned,
+ * the text is tokenized lazily while the returned iterator is consumed.
+ * Line breaks in the text are replaced with a space (\r\n with a single space) before tokenizing, like for
+ * .txt files, and all positions refer to this text.
+ * Texts too large for memory can be converted in chunks: the text is then read and tokenized in windows of a
+ * fixed number of chars, so only one window of the text is held at a time.
+ */
+public class AnnotationConverter {
+    /** options of the PTB Tokenizer, part of the configuration of a conversion */
+    static final String PARSING_OPTIONS = "normalizeParentheses=false, asciiQuotes=true, " +
+            "latexQuotes=false, ptb3Dashes=false, normalizeOtherBrackets=false, ptb3Ellipsis=false, unicodeEllipsis=false," +
+            "normalizeFractions = false, normalizeCurrency = false";
+    // chars at the end of a chunk which are only tokenized to see how the last token before the cut ends
+    private static final int MAX_CHUNK_LOOKAHEAD = 256;
+
+    private final LabelSchema schema;
+    private final AsciiNormalizer normalizer;
+    private final DelimiterSplitter splitter;
+
+    /**
+     * creates a converter which uses the default ascii mapping of AsciiNormalizer and the default delimiters of
+     * DelimiterSplitter
+     * @param allowedLabels labels which are taken over from the annotations
+     */
+    public AnnotationConverter(Collection<String> allowedLabels) {
+        this(allowedLabels, new AsciiNormalizer(), new DelimiterSplitter());
+    }
+
+    /**
+     * @param allowedLabels labels which are taken over from the annotations
+     * @param normalizer normalizer used to clean the tokens
+     * @param splitter splitter used to split tokens at delimiters
+     */
+    public AnnotationConverter(Collection<String> allowedLabels, AsciiNormalizer normalizer,
+                               DelimiterSplitter splitter) {
+        this(new LabelSchema(allowedLabels), normalizer, splitter);
+    }
+
+    /**
+     * @param schema labels which are taken over from the annotations
+     * @param normalizer normalizer used to clean the tokens
+     * @param splitter splitter used to split tokens at delimiters
+     */
+    public AnnotationConverter(LabelSchema schema, AsciiNormalizer normalizer, DelimiterSplitter splitter) {
+        this.schema = schema;
+        this.normalizer = normalizer;
+        this.splitter = splitter;
+    }
+
+    /**
+     * @param text content of the .txt file
+     * @param annotations content of the .ann file
+     * @return the labeled tokens of the text, tokenized while iterating
+     */
+    public Iterator<LabeledToken> convert(CharSequence text, CharSequence annotations) {
+        return convertText(TextInput.joinLines(text), indexAnnotations(TextInput.splitLines(annotations)));
+    }
+
+    /**
+     * @param text content of the .txt file, read until its end but not closed
+     * @param annotations content of the .ann file, read until its end but not closed
+     * @return the labeled tokens of the text, tokenized while iterating
+     * @throws IOException if one of the readers could not be read
+     */
+    public Iterator<LabeledToken> convert(Reader text, Reader annotations) throws IOException {
+        AnnotationIndex index = indexAnnotations(TextInput.readLines(annotations));
+        return convertText(TextInput.readText(text), index);
+    }
+
+    /**
+     * @param text UTF-8 encoded content of the .txt file, read until its end but not closed
+     * @param annotations UTF-8 encoded content of the .ann file, read until its end but not closed
+     * @return the labeled tokens of the text, tokenized while iterating
+     * @throws IOException if one of the streams could not be read
+     */
+    public Iterator<LabeledToken> convert(InputStream text, InputStream annotations) throws IOException {
+        AnnotationIndex index = indexAnnotations(TextInput.readLines(annotations));
+        return convertText(TextInput.readText(text), index);
+    }
+
+    /**
+     * Converts the text in windows of at most chunkSize chars, so the memory needed is bounded by the chunk size
+     * and the annotations instead of the size of the text. Every window is cut after the last sentence end in
+     * its second half, or else after its last whitespace, and the tokenizer still sees the rest of the window
+     * behind the cut, so the tokens are the same as without chunks. Only a run of more than chunkSize chars
+     * without whitespace is split into several tokens.
+     * @param text content of the .txt file, read while iterating but not closed
+     * @param annotations content of the .ann file, read until its end but not closed
+     * @param chunkSize number of chars which are tokenized at once
+     * @return the labeled tokens of the text, the iterator throws UncheckedIOException if the text can not be read
+     * @throws IOException if the annotations could not be read
+     */
+    public Iterator<LabeledToken> convert(Reader text, Reader annotations, int chunkSize) throws IOException {
+        return convertChunked(text, indexAnnotations(TextInput.readLines(annotations)), chunkSize);
+    }
+
+    /**
+     * hands every labeled token of the text to the consumer, in the order of the text
+     * @param text content of the .txt file
+     * @param annotations content of the .ann file
+     * @param consumer receives the labeled tokens
+     */
+    public void convert(CharSequence text, CharSequence annotations, Consumer<LabeledToken> consumer) {
+        convert(text, annotations).forEachRemaining(consumer);
+    }
+
+    /**
+     * indexes the text bound annotations with allowed labels, lines which can not be parsed are skipped
+     * @param lines lines of a .ann file
+     * @return spans and labels of the annotations
+     */
+    AnnotationIndex indexAnnotations(List<String> lines) {
+        AnnotationIndex annotations = new AnnotationIndex(schema);
+        for (String line : lines) {
+            annotations.addAnnotationLine(line);
+        }
+        return annotations;
+    }
+
+    /**
+     * @param text text with lines separated by " ", positions of the annotations refer to this text
+     * @param annotations annotations of the text
+     * @return the labeled tokens of the text, tokenized while iterating
+     */
+    Iterator<LabeledToken> convertText(String text, AnnotationIndex annotations) {
+        return new TokenIterator(text, annotations);
+    }
+
+    /**
+     * @param text text with line breaks, read while iterating but not closed
+     * @param annotations annotations of the text
+     * @param chunkSize number of chars which are tokenized at once, at least 1
+     * @return the labeled tokens of the text, tokenized one window of the text at a time
+     */
+    Iterator<LabeledToken> convertChunked(Reader text, AnnotationIndex annotations, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size has to be positive but was " + chunkSize);
+        }
+        return new ChunkedTokenIterator(TextInput.joinLines(text), annotations, chunkSize);
+    }
+
+    /**
+     * Tokenizes the text with the PTB Tokenizer and cleans the tokens like FileParser.preprocessTokens(). The
+     * position of every token is taken from the tokenizer, so the text does not have to be searched for the
+     * tokens afterwards. Tokens which are split by delimiters get the positions of their parts within the
+     * original token.
+     * @param text text as returned by TextInput.readText(), positions refer to this text
+     * @return cleaned tokens together with their start and end positions in the text
+     */
+    AlignedTokens alignTokens(String text) {
+        List<CoreLabel> tokenLabels = tokenize(text);
+        return alignTokens(tokenLabels, normalizeTokens(tokenLabels));
+    }
+
+    /**
+     * @param text text which should be tokenized
+     * @return tokens produced by the PTB Tokenizer, including their positions in the text
+     */
+    List<CoreLabel> tokenize(String text) {
+        List<CoreLabel> tokenLabels = new ArrayList<>();
+        Tokenizer<CoreLabel> ptbt = newTokenizer(text);
+        while (ptbt.hasNext()) {
+            tokenLabels.add(ptbt.next());
+        }
+        return tokenLabels;
+    }
+
+    /**
+     * tokenizes without cleaning the tokens
+     * @param input text which should be tokenized
+     * @return the words produced by the PTB Tokenizer
+     */
+    static List<String> tokenizeWords(Reader input) {
+        List<String> words = new ArrayList<>();
+        Tokenizer<CoreLabel> ptbt = TokenizerHolder.FACTORY.getTokenizer(input);
+        while (ptbt.hasNext()) {
+            words.add(ptbt.next().value());
+        }
+        return words;
+    }
+
+    /**
+     * @param tokenLabels tokens produced by the PTB Tokenizer
+     * @return the value of every token with unicode characters replaced
+     */
+    AsciiNormalizer.NormalizedText[] normalizeTokens(List<CoreLabel> tokenLabels) {
+        AsciiNormalizer.NormalizedText[] normalizedTokens = new AsciiNormalizer.NormalizedText[tokenLabels.size()];
+        for (int i = 0; i < normalizedTokens.length; i++) {
+            normalizedTokens[i] = normalizer.normalizeWithOffsets(tokenLabels.get(i).value());
+        }
+        return normalizedTokens;
+    }
+
+    /**
+     * splits the normalized tokens at the delimiters and computes the position of every part in the text
+     * @param tokenLabels tokens produced by the PTB Tokenizer
+     * @param normalizedTokens normalized value of every token
+     * @return cleaned tokens together with their start and end positions in the text
+     */
+    AlignedTokens alignTokens(List<CoreLabel> tokenLabels, AsciiNormalizer.NormalizedText[] normalizedTokens) {
+        AlignedTokens alignedTokens = new AlignedTokens();
+        for (int i = 0; i < normalizedTokens.length; i++) {
+            alignedTokens.startWord();
+            alignToken(tokenLabels.get(i), normalizedTokens[i], 0, alignedTokens);
+        }
+        return alignedTokens;
+    }
+
+    private Tokenizer<CoreLabel> newTokenizer(String text) {
+        return TokenizerHolder.FACTORY.getTokenizer(new StringReader(text));
+    }
+
+    /**
+     * Creates the tokenizer factory when the first text is tokenized. The CoreNLP classes are only loaded then, so
+     * commands which do not tokenize, like merge and export, start without loading them.
+     */
+    private static class TokenizerHolder {
+        static final TokenizerFactory<CoreLabel> FACTORY =
+                PTBTokenizer.factory(new CoreLabelTokenFactory(), PARSING_OPTIONS);
+    }
+
+    /**
+     * splits a single normalized token at the delimiters and adds its parts with their positions in the text
+     * @param label token produced by the PTB Tokenizer
+     * @param normalizedToken normalized value of the token
+     * @param offset position of the tokenized text in the whole text
+     * @param alignedTokens receives the parts of the token
+     */
+    private void alignToken(CoreLabel label, AsciiNormalizer.NormalizedText normalizedToken, int offset,
+                            AlignedTokens alignedTokens) {
+        int begin = offset + label.beginPosition();
+        int end = offset + label.endPosition();
+        int valueLength = label.value().length();
+        String token = normalizedToken.getText();
+
+        splitter.split(token, (partStart, partEnd) -> alignedTokens.add(token.substring(partStart, partEnd),
+                toTextPosition(normalizedToken.getOriginalOffset(partStart), begin, end, valueLength),
+                toTextPosition(normalizedToken.getOriginalOffset(partEnd), begin, end, valueLength)));
+    }
+
+    /**
+     * converts a position inside a token produced by the tokenizer to a position in the text. If the token does not
+     * have the length of its text span (e.g. "&amp;" which is returned as "&") the position is limited to the span
+     * of the token.
+     * @param tokenPosition position inside the token
+     * @param begin start position of the token in the text
+     * @param end end position of the token in the text
+     * @param tokenLength length of the token
+     * @return position in the text
+     */
+    private static int toTextPosition(int tokenPosition, int begin, int end, int tokenLength) {
+        if (tokenLength == end - begin) {
+            return begin + tokenPosition;
+        }
+        return Math.min(begin + tokenPosition, end);
+    }
+
+    /**
+     * Pulls one token at a time from the tokenizer, splits it at the delimiters and labels its parts.
+     */
+    private class TokenIterator implements Iterator<LabeledToken> {
+        private final Tokenizer<CoreLabel> tokenizer;
+        private final AnnotationIndex annotations;
+        private final AlignedTokens parts = new AlignedTokens();
+        private int nextPart = 0;
+        // token of the PTB Tokenizer the parts were split from
+        private String word;
+
+        TokenIterator(String text, AnnotationIndex annotations) {
+            this.tokenizer = newTokenizer(text);
+            this.annotations = annotations;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (nextPart == parts.size() && tokenizer.hasNext()) {
+                CoreLabel label = tokenizer.next();
+                parts.clear();
+                nextPart = 0;
+                word = label.value();
+                alignToken(label, normalizer.normalizeWithOffsets(label.value()), 0, parts);
+            }
+            return nextPart < parts.size();
+        }
+
+        @Override
+        public LabeledToken next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int begin = parts.getBegin(nextPart);
+            int end = parts.getEnd(nextPart);
+            LabeledToken token = new LabeledToken(parts.getToken(nextPart), annotations.labelToken(begin, end),
+                    begin, end, nextPart == 0 ? word : null);
+            nextPart++;
+            return token;
+        }
+    }
+
+    /**
+     * Tokenizes the text one window at a time. The window is filled from the reader, cut at a sentence end or
+     * whitespace, and the tokens starting before the cut are returned; the next window starts at the cut, or
+     * behind the last returned token if the tokenizer joined chars across the cut.
+     */
+    private class ChunkedTokenIterator implements Iterator<LabeledToken> {
+        private final Reader text;
+        private final AnnotationIndex annotations;
+        private final char[] window;
+        private final AlignedTokens parts = new AlignedTokens();
+        private int nextPart = 0;
+        // token of the PTB Tokenizer the parts were split from
+        private String word;
+        private int windowLength = 0;
+        // position of the first char of the window in the text
+        private int windowOffset = 0;
+        private boolean endOfText = false;
+        private Tokenizer<CoreLabel> tokenizer;
+        private int cut;
+        // chars of the window which are tokenized, the window is moved by this much for the next chunk
+        private int consumed = 0;
+
+        ChunkedTokenIterator(Reader text, AnnotationIndex annotations, int chunkSize) {
+            this.text = text;
+            this.annotations = annotations;
+            this.window = new char[chunkSize];
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (nextPart == parts.size()) {
+                CoreLabel label = tokenizer != null && tokenizer.hasNext() ? tokenizer.next() : null;
+                if (label == null || label.beginPosition() >= cut) {
+                    // the rest of the window is tokenized again as part of the next chunk
+                    tokenizer = null;
+                    consumed = Math.max(consumed, cut);
+                    if (!nextChunk()) {
+                        return false;
+                    }
+                    continue;
+                }
+                parts.clear();
+                nextPart = 0;
+                word = label.value();
+                alignToken(label, normalizer.normalizeWithOffsets(label.value()), windowOffset, parts);
+                consumed = Math.max(consumed, label.endPosition());
+            }
+            return true;
+        }
+
+        @Override
+        public LabeledToken next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int begin = parts.getBegin(nextPart);
+            int end = parts.getEnd(nextPart);
+            LabeledToken token = new LabeledToken(parts.getToken(nextPart), annotations.labelToken(begin, end),
+                    begin, end, nextPart == 0 ? word : null);
+            nextPart++;
+            return token;
+        }
+
+        /**
+         * drops the tokenized part of the window, fills it up from the text and starts tokenizing it
+         * @return false if the whole text was tokenized
+         */
+        private boolean nextChunk() {
+            System.arraycopy(window, consumed, window, 0, windowLength - consumed);
+            windowLength -= consumed;
+            windowOffset += consumed;
+            consumed = 0;
+            try {
+                while (!endOfText && windowLength < window.length) {
+                    int read = text.read(window, windowLength, window.length - windowLength);
+                    if (read < 0) {
+                        endOfText = true;
+                    } else {
+                        windowLength += read;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (windowLength == 0) {
+                return false;
+            }
+            cut = endOfText ? windowLength : findCut(window, windowLength);
+            tokenizer = newTokenizer(new String(window, 0, windowLength));
+            return true;
+        }
+    }
+
+    /**
+     * @param window chars of the text
+     * @param length number of chars in the window
+     * @return length of the part of the window which ends behind the last sentence end in the second half of the
+     * window, or else behind the last whitespace, or the whole window if it contains no whitespace. The last
+     * chars of the window are kept behind the cut if possible, the tokenizer looks at them to decide how the
+     * token before the cut ends, e.g. an abbreviation at the end of the text gets an additional "."
+     */
+    private static int findCut(char[] window, int length) {
+        int lookahead = Math.min(MAX_CHUNK_LOOKAHEAD, length / 4);
+        int lastWhitespace = -1;
+        for (int i = length - 1; i > 0; i--) {
+            if (Character.isWhitespace(window[i])) {
+                if (i >= length - lookahead) {
+                    if (lastWhitespace < 0) {
+                        lastWhitespace = i;
+                    }
+                    continue;
+                }
+                if (lastWhitespace < 0 || lastWhitespace >= length - lookahead) {
+                    lastWhitespace = i;
+                }
+                char previous = window[i - 1];
+                if (i >= length / 2 && (previous == '.' || previous == '!' || previous == '?')) {
+                    return i + 1;
+                }
+                if (i < length / 2) {
+                    break;
+                }
+            }
+        }
+        return lastWhitespace < 0 ? length : lastWhitespace + 1;
+    }
+}
@@ -1,5 +1,4 @@
 public class AnnotationEntity {
-    private String ID;
     private String label;
     private int startingPosition;
     private int endPosition;
@@ -7,7 +6,6 @@ public class AnnotationEntity {
 
 /**
      * constructor that takes all relevant information for an annotation entity
-     * @param ID of the annotation
      * @param content of the annotation
      * @param startPos of the annotation
      * @param endPos of the annotation
@@ -15,8 +13,7 @@ public class AnnotationEntity {
      * @return AnnotationEnity with all properties set
      */
 
-    AnnotationEntity(String ID, String content, int startPos, int endPos, String label){
-        this.ID = ID;
+    AnnotationEntity(String content, int startPos, int endPos, String label){
         this.content = content;
         this.label = label;
         this.startingPosition = startPos;
@@ -0,0 +1,254 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Text bound annotations of a single document, indexed by their character spans. Start and end positions and
+ * the label ids of the LabelSchema are kept in sorted parallel int arrays, so the annotation covering a token is
+ * found by binary search and a tree of the largest end positions instead of comparing token and annotation
+ * contents, and an annotation takes 12 bytes instead of an object with its own Strings. Labeling n tokens with m
+ * annotations takes O((n + m) log m), also if long annotations enclose many short ones. Annotations may overlap
+ * each other and discontinuous brat annotations (T1 \t LABEL 0 5;10 15 \t ...) are stored as one entry per
+ * fragment.
+ */
+public class AnnotationIndex {
+    private final LabelSchema schema;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int[] labelIds = new int[16];
+    private int size = 0;
+
+    /** largest end positions of all annotations, only valid after sort() */
+    private MaxEndTree allEnds;
+    /** largest end positions of the annotations which did not overlap a token yet */
+    private MaxEndTree unmatchedEnds;
+    private boolean[] matched;
+
+    /**
+     * @param schema labels which are taken over from the annotation lines
+     */
+    public AnnotationIndex(LabelSchema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * adds the fragments of a line of a .ann file. Lines which are no text bound annotations (relations, events,
+     * notes, ...) and annotations with labels which are not in the schema are skipped.
+     * @param line line in .ann file in format ID \t Label Start End[;Start End]* \t Content
+     * @return false if the line is a text bound annotation which could not be parsed
+     */
+    boolean addAnnotationLine(String line) {
+        if (!line.startsWith("T")) {
+            return true;
+        }
+        int labelStart = line.indexOf('\t') + 1;
+        if (labelStart == 0) {
+            return false;
+        }
+        int informationEnd = line.indexOf('\t', labelStart);
+        if (informationEnd < 0) {
+            informationEnd = line.length();
+        }
+        int labelEnd = line.indexOf(' ', labelStart);
+        if (labelEnd < 0 || labelEnd > informationEnd) {
+            return false;
+        }
+        // the label is looked up in the line, lines with other labels are skipped without creating any String
+        int labelId = schema.getId(line, labelStart, labelEnd);
+        if (labelId < 0) {
+            return true;
+        }
+
+        try {
+            for (String fragment : line.substring(labelEnd + 1, informationEnd).split(";")) {
+                String[] positions = fragment.trim().split(" ");
+                if (positions.length != 2) {
+                    return false;
+                }
+                add(Integer.parseInt(positions[0]), Integer.parseInt(positions[1]), labelId);
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * adds a single annotated span
+     * @param start start position of the span in the text
+     * @param end end position of the span in the text (exclusive)
+     * @param labelId id of the label of the annotation in the schema
+     */
+    void add(int start, int end, int labelId) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            labelIds = Arrays.copyOf(labelIds, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        labelIds[size] = labelId;
+        size++;
+        allEnds = null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * sorts the annotations by start position. Annotations are sorted by a single long key containing start
+     * position and insertion index, so no objects have to be created and the order of equal starts is kept.
+     */
+    private void sort() {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) starts[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int[] sortedStarts = new int[size];
+        int[] sortedEnds = new int[size];
+        int[] sortedLabelIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            int index = (int) keys[i];
+            sortedStarts[i] = starts[index];
+            sortedEnds[i] = ends[index];
+            sortedLabelIds[i] = labelIds[index];
+        }
+        starts = sortedStarts;
+        ends = sortedEnds;
+        labelIds = sortedLabelIds;
+        allEnds = new MaxEndTree(ends, size);
+        unmatchedEnds = new MaxEndTree(ends, size);
+        matched = new boolean[size];
+    }
+
+    /**
+     * Labels every token with the label of the annotation its span overlaps, tokens without annotation get "O".
+     * If several annotations overlap a token, the one starting last is used. All of them count as matched.
+     * @param tokens tokens of the text together with their positions
+     * @return label of every token
+     */
+    public List<String> labelTokens(AlignedTokens tokens) {
+        if (allEnds == null) {
+            sort();
+        }
+        List<String> tokenLabels = new ArrayList<>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            tokenLabels.add(labelToken(tokens.getBegin(i), tokens.getEnd(i)));
+        }
+        return tokenLabels;
+    }
+
+    /**
+     * labels a single token like labelTokens()
+     * @param begin start position of the token
+     * @param end end position of the token (exclusive)
+     * @return label of the annotation overlapping the token or "O"
+     */
+    String labelToken(int begin, int end) {
+        if (allEnds == null) {
+            sort();
+        }
+        // empty tokens are treated as one character long
+        int last = lastStartingBefore(Math.max(end, begin + 1));
+        // every annotation is marked and removed from the tree once, so marking costs O(m log m) for all tokens
+        for (int i = unmatchedEnds.findLast(last, begin); i >= 0; i = unmatchedEnds.findLast(i - 1, begin)) {
+            matched[i] = true;
+            unmatchedEnds.remove(i);
+        }
+        int annotation = allEnds.findLast(last, begin);
+        return annotation < 0 ? "O" : schema.getLabel(labelIds[annotation]);
+    }
+
+    /**
+     * @param position a position in the text
+     * @return index of the last annotation starting before the position, -1 if there is none
+     */
+    private int lastStartingBefore(int position) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < position) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * @return number of annotation fragments which overlapped at least one token in labelTokens()
+     */
+    public int getMatchedCount() {
+        int count = 0;
+        for (int i = 0; matched != null && i < size; i++) {
+            if (matched[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return number of annotation fragments which did not overlap any token in labelTokens()
+     */
+    public int getUnmatchedCount() {
+        return size - getMatchedCount();
+    }
+
+    /**
+     * Segment tree over the end positions of the sorted annotations, finds the last annotation of a prefix which
+     * ends behind a position in O(log m). Removed annotations are set to Integer.MIN_VALUE.
+     */
+    private static class MaxEndTree {
+        private final int leaves;
+        private final int[] tree;
+
+        MaxEndTree(int[] ends, int size) {
+            int leaves = 1;
+            while (leaves < size) {
+                leaves <<= 1;
+            }
+            this.leaves = leaves;
+            this.tree = new int[2 * leaves];
+            Arrays.fill(tree, Integer.MIN_VALUE);
+            System.arraycopy(ends, 0, tree, leaves, size);
+            for (int node = leaves - 1; node > 0; node--) {
+                tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+
+        /**
+         * @param last index of the last annotation which is searched
+         * @param position position the annotation has to end behind
+         * @return largest index i <= last with end[i] > position, -1 if there is none
+         */
+        int findLast(int last, int position) {
+            return last < 0 ? -1 : findLast(1, 0, leaves - 1, last, position);
+        }
+
+        private int findLast(int node, int nodeFirst, int nodeLast, int last, int position) {
+            if (nodeFirst > last || tree[node] <= position) {
+                return -1;
+            }
+            if (nodeFirst == nodeLast) {
+                return nodeFirst;
+            }
+            int middle = (nodeFirst + nodeLast) >>> 1;
+            int found = findLast(2 * node + 1, middle + 1, nodeLast, last, position);
+            return found >= 0 ? found : findLast(2 * node, nodeFirst, middle, last, position);
+        }
+
+        void remove(int index) {
+            int node = leaves + index;
+            tree[node] = Integer.MIN_VALUE;
+            for (node >>>= 1; node > 0; node >>>= 1) {
+                tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+    }
+}
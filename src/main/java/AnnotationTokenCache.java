@@ -0,0 +1,76 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Remembers the split tokens of annotation contents, so the same surface form, like a company name which is
+ * annotated thousands of times, is only tokenized once per run. The cache holds at most maxEntries contents and
+ * drops the least recently used one when it is full. It can be used by several threads at the same time;
+ * the tokenization itself runs outside of the lock, so two threads may tokenize the same new content at once.
+ */
+public class AnnotationTokenCache {
+    public static final int DEFAULT_SIZE = 10000;
+
+    private final Map<String, List<String>> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries number of annotation contents which are kept
+     */
+    public AnnotationTokenCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("cache size has to be positive but was " + maxEntries);
+        }
+        this.entries = new LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * returns the tokens of the content, tokenizing it only if it is not cached
+     * @param content text of the annotation
+     * @param tokenizer splits the content into tokens
+     * @return unmodifiable list of the tokens of the content
+     */
+    public List<String> getTokens(String content, Function<String, List<String>> tokenizer) {
+        List<String> tokens;
+        synchronized (entries) {
+            tokens = entries.get(content);
+        }
+        if (tokens != null) {
+            hits.incrementAndGet();
+            return tokens;
+        }
+
+        misses.incrementAndGet();
+        tokens = Collections.unmodifiableList(tokenizer.apply(content));
+        synchronized (entries) {
+            entries.put(content, tokens);
+        }
+        return tokens;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
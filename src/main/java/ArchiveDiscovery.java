@@ -0,0 +1,349 @@
+import java.io.*;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Finds all .txt files with an according .ann file in a zip, tar or gzip compressed tar archive without
+ * extracting it. The archive is read in a single sequential pass: the first file of a pair is kept in memory
+ * until the second one arrives, then the pair is returned. Documents are returned in the order in which their
+ * pairs are completed in the archive, so the same archive always gives the same order.
+ */
+public class ArchiveDiscovery implements Iterable<DocumentPair> {
+    private static final String TEXT_ENDING = ".txt";
+    private static final String ANNOTATION_ENDING = ".ann";
+
+    private final Path archive;
+    private final GlobFilter filter;
+
+    /**
+     * @param archive zip, tar, tar.gz or tgz file which contains the documents
+     * @param includeGlobs glob patterns for the path of the .txt file inside the archive, only matching documents
+     *                     are returned. All documents are returned if the list is empty.
+     * @param excludeGlobs glob patterns for the path of the .txt file inside the archive, matching documents are
+     *                     skipped
+     */
+    public ArchiveDiscovery(Path archive, List<String> includeGlobs, List<String> excludeGlobs) {
+        this.archive = archive;
+        this.filter = new GlobFilter(FileSystems.getDefault(), includeGlobs, excludeGlobs);
+    }
+
+    /**
+     * @param archive zip, tar, tar.gz or tgz file which contains the documents
+     */
+    public ArchiveDiscovery(Path archive) {
+        this(archive, Collections.<String>emptyList(), Collections.<String>emptyList());
+    }
+
+    @Override
+    public Iterator<DocumentPair> iterator() {
+        return new PairIterator();
+    }
+
+    /**
+     * A single file of the archive.
+     */
+    private interface EntryReader extends Closeable {
+        /**
+         * @return false if there are no more entries
+         */
+        boolean nextEntry() throws IOException;
+
+        String getName();
+
+        long getModified();
+
+        boolean isRegularFile();
+
+        byte[] readContent() throws IOException;
+    }
+
+    /**
+     * opens the archive, the format is recognized from the first bytes and not from the file name
+     */
+    private EntryReader openArchive() throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(archive), 64 * 1024);
+        try {
+            if (startsWith(in, 0x1f, 0x8b)) {
+                in = new BufferedInputStream(new GZIPInputStream(in, 64 * 1024), 64 * 1024);
+            }
+            if (startsWith(in, 'P', 'K', 3, 4)) {
+                return new ZipEntryReader(new ZipInputStream(in));
+            }
+            return new TarEntryReader(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static boolean startsWith(InputStream in, int... magic) throws IOException {
+        in.mark(magic.length);
+        try {
+            for (int b : magic) {
+                if (in.read() != b) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    private static class ZipEntryReader implements EntryReader {
+        private final ZipInputStream in;
+        private ZipEntry entry;
+
+        ZipEntryReader(ZipInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean nextEntry() throws IOException {
+            entry = in.getNextEntry();
+            return entry != null;
+        }
+
+        @Override
+        public String getName() {
+            return entry.getName();
+        }
+
+        @Override
+        public long getModified() {
+            return entry.getTime();
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return !entry.isDirectory();
+        }
+
+        @Override
+        public byte[] readContent() throws IOException {
+            ByteArrayOutputStream content = new ByteArrayOutputStream(entry.getSize() > 0
+                    ? (int) Math.min(entry.getSize(), Integer.MAX_VALUE - 8) : 8 * 1024);
+            byte[] buffer = new byte[8 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                content.write(buffer, 0, read);
+            }
+            return content.toByteArray();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class TarEntryReader implements EntryReader {
+        private final InputStream in;
+        private final TarReader reader;
+
+        TarEntryReader(InputStream in) {
+            this.in = in;
+            this.reader = new TarReader(in);
+        }
+
+        @Override
+        public boolean nextEntry() throws IOException {
+            return reader.nextEntry();
+        }
+
+        @Override
+        public String getName() {
+            return reader.getName();
+        }
+
+        @Override
+        public long getModified() {
+            return reader.getModified();
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return reader.isRegularFile();
+        }
+
+        @Override
+        public byte[] readContent() throws IOException {
+            return reader.readContent();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Content of one file of the archive.
+     */
+    private static class EntryContent {
+        private final byte[] content;
+        private final long modified;
+
+        EntryContent(byte[] content, long modified) {
+            this.content = content;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * A document whose .txt and .ann file were read from the archive.
+     */
+    private static class ArchiveDocumentPair extends DocumentPair {
+        private final EntryContent text;
+        private final EntryContent annotations;
+
+        ArchiveDocumentPair(String name, EntryContent text, EntryContent annotations) {
+            super(name, null, name.substring(name.lastIndexOf('/') + 1));
+            this.text = text;
+            this.annotations = annotations;
+        }
+
+        @Override
+        public InputStream openText() {
+            return new ByteArrayInputStream(text.content);
+        }
+
+        @Override
+        public InputStream openAnnotations() {
+            return new ByteArrayInputStream(annotations.content);
+        }
+
+        @Override
+        public String readText() throws IOException {
+            return TextInput.readText(text.content);
+        }
+
+        @Override
+        public List<String> readAnnotationLines() throws IOException {
+            return TextInput.readLines(annotations.content);
+        }
+
+        @Override
+        public long getTextLength() {
+            return text.content.length;
+        }
+
+        @Override
+        public long getTextModified() {
+            return text.modified;
+        }
+
+        @Override
+        public long getAnnotationLength() {
+            return annotations.content.length;
+        }
+
+        @Override
+        public long getAnnotationModified() {
+            return annotations.modified;
+        }
+    }
+
+    /**
+     * Reads the archive entry by entry until the next pair is complete. Files whose partner has not been read yet
+     * are kept in a map from their name without ending.
+     */
+    private class PairIterator implements Iterator<DocumentPair> {
+        private final Map<String, EntryContent> texts = new HashMap<>();
+        private final Map<String, EntryContent> annotations = new HashMap<>();
+        private EntryReader reader;
+        private boolean finished;
+        private DocumentPair next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !finished) {
+                try {
+                    if (reader == null) {
+                        reader = openArchive();
+                    }
+                    if (!reader.nextEntry()) {
+                        finish();
+                    } else if (reader.isRegularFile()) {
+                        next = readEntry();
+                    }
+                } catch (IOException e) {
+                    System.out.println("could not read archive " + archive + ": " + e.getMessage());
+                    finish();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public DocumentPair next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DocumentPair pair = next;
+            next = null;
+            return pair;
+        }
+
+        /**
+         * @return the pair completed by the current entry or null
+         */
+        private DocumentPair readEntry() throws IOException {
+            String entryName = reader.getName();
+            while (entryName.startsWith("./") || entryName.startsWith("/")) {
+                entryName = entryName.substring(entryName.indexOf('/') + 1);
+            }
+
+            Map<String, EntryContent> ownFiles;
+            Map<String, EntryContent> partnerFiles;
+            String stem;
+            if (entryName.endsWith(TEXT_ENDING)) {
+                stem = entryName.substring(0, entryName.length() - TEXT_ENDING.length());
+                if (!filter.isIncluded(Paths.get(entryName))) {
+                    return null;
+                }
+                ownFiles = texts;
+                partnerFiles = annotations;
+            } else if (entryName.endsWith(ANNOTATION_ENDING)) {
+                stem = entryName.substring(0, entryName.length() - ANNOTATION_ENDING.length());
+                if (!filter.isIncluded(Paths.get(stem + TEXT_ENDING))) {
+                    return null;
+                }
+                ownFiles = annotations;
+                partnerFiles = texts;
+            } else {
+                return null;
+            }
+
+            EntryContent content = new EntryContent(reader.readContent(), reader.getModified());
+            EntryContent partner = partnerFiles.remove(stem);
+            if (partner == null) {
+                ownFiles.put(stem, content);
+                return null;
+            }
+            return ownFiles == texts
+                    ? new ArchiveDocumentPair(stem, content, partner)
+                    : new ArchiveDocumentPair(stem, partner, content);
+        }
+
+        private void finish() {
+            finished = true;
+            // files without partner are not converted, like in a directory
+            texts.clear();
+            annotations.clear();
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Replaces unicode characters like typographic quotes with their ascii representation in a single pass over
+ * the input. Every character is looked up in a table which holds the replacement of the character: a single
+ * character, several characters (e.g. "..." for an ellipsis) or nothing, if the character should be deleted
+ * (e.g. a soft hyphen). Inputs which contain no mapped character are returned as they are, without copying.
+ */
+public class AsciiNormalizer {
+    private static final String DOUBLE_QUOTE = "\"";
+    private static final String SINGLE_QUOTE = "'";
+
+    private String[] replacements = new String[0];
+
+    /**
+     * creates a normalizer with the default mapping: unicode quotes are replaced by ascii quotes, non breaking
+     * spaces by spaces, the ellipsis by three points and soft hyphens are deleted
+     */
+    public AsciiNormalizer() {
+        for (char doubleQuote : new char[]{0x201c, 0x201d, 0x201e, 0x201f, 0x275d, 0x275e, 0x00AB, 0x00BB}) {
+            setReplacement(doubleQuote, DOUBLE_QUOTE);
+        }
+        for (char singleQuote : new char[]{0x2018, 0x2019, 0x201a, 0x201b, 0x275b, 0x275c, 0x0091}) {
+            setReplacement(singleQuote, SINGLE_QUOTE);
+        }
+        setReplacement((char) 0x00A0, " ");
+        setReplacement((char) 0x2026, "...");
+        setReplacement((char) 0x00AD, "");
+    }
+
+    /**
+     * creates a normalizer with the default mapping extended by the mappings in the given file.
+     * Every line of the file has the form U+XXXX \t replacement, where the replacement is taken as it is.
+     * An empty replacement deletes the character, mapping a character to itself removes a default mapping.
+     * Empty lines and lines starting with # are ignored.
+     * @param mappingFile path of the mapping file
+     * @return normalizer with the default and the given mappings
+     * @throws IOException if the file could not be read or contains an invalid line
+     */
+    public static AsciiNormalizer fromMappingFile(String mappingFile) throws IOException {
+        AsciiNormalizer normalizer = new AsciiNormalizer();
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(mappingFile), "UTF8"))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int separator = line.indexOf('\t');
+                String character = separator < 0 ? line.trim() : line.substring(0, separator).trim();
+                String replacement = separator < 0 ? "" : line.substring(separator + 1);
+                if (!character.matches("[Uu]\\+[0-9A-Fa-f]{1,4}")) {
+                    throw new IOException("invalid mapping in line " + lineNumber + " of " + mappingFile
+                            + ", expected U+XXXX for a character of the basic multilingual plane: " + line);
+                }
+                char mapped = (char) Integer.parseInt(character.substring(2), 16);
+                normalizer.setReplacement(mapped, replacement.equals(String.valueOf(mapped)) ? null : replacement);
+            }
+        }
+        return normalizer;
+    }
+
+    private void setReplacement(char character, String replacement) {
+        if (character >= replacements.length) {
+            replacements = Arrays.copyOf(replacements, character + 1);
+        }
+        replacements[character] = replacement;
+    }
+
+    private String replacementOf(char character) {
+        return character < replacements.length ? replacements[character] : null;
+    }
+
+    /**
+     * @return all mappings of this normalizer in the form U+XXXX=replacement, used to detect configuration changes
+     */
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < replacements.length; i++) {
+            if (replacements[i] != null) {
+                description.append(String.format("U+%04X=", i)).append(replacements[i]).append(';');
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * @param input text in which unicode characters should be replaced
+     * @return text with all mapped characters replaced, the input itself if it contains no mapped character
+     */
+    public String normalize(String input) {
+        int firstChange = findFirstChange(input);
+        if (firstChange == input.length()) {
+            return input;
+        }
+
+        StringBuilder normalized = new StringBuilder(input.length() + 16);
+        normalized.append(input, 0, firstChange);
+        for (int i = firstChange; i < input.length(); i++) {
+            char character = input.charAt(i);
+            String replacement = replacementOf(character);
+            if (replacement == null) {
+                normalized.append(character);
+            } else {
+                normalized.append(replacement);
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * normalizes the input like normalize() and additionally keeps for every position in the normalized text the
+     * position in the input it was created from
+     * @param input text in which unicode characters should be replaced
+     * @return normalized text together with the positions in the input
+     */
+    public NormalizedText normalizeWithOffsets(String input) {
+        int firstChange = findFirstChange(input);
+        if (firstChange == input.length()) {
+            return new NormalizedText(input, null);
+        }
+
+        StringBuilder normalized = new StringBuilder(input.length() + 16);
+        int[] originalOffsets = new int[input.length() + 17];
+        normalized.append(input, 0, firstChange);
+        for (int i = 0; i < firstChange; i++) {
+            originalOffsets[i] = i;
+        }
+        for (int i = firstChange; i < input.length(); i++) {
+            char character = input.charAt(i);
+            String replacement = replacementOf(character);
+            if (replacement == null) {
+                replacement = String.valueOf(character);
+            }
+            if (normalized.length() + replacement.length() >= originalOffsets.length) {
+                originalOffsets = Arrays.copyOf(originalOffsets,
+                        2 * originalOffsets.length + replacement.length());
+            }
+            for (int j = 0; j < replacement.length(); j++) {
+                originalOffsets[normalized.length()] = i;
+                normalized.append(replacement.charAt(j));
+            }
+        }
+        originalOffsets[normalized.length()] = input.length();
+        return new NormalizedText(normalized.toString(), originalOffsets);
+    }
+
+    private int findFirstChange(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if (replacementOf(input.charAt(i)) != null) {
+                return i;
+            }
+        }
+        return input.length();
+    }
+
+    /**
+     * Normalized text together with the position in the original text of every normalized character.
+     */
+    public static class NormalizedText {
+        private final String text;
+        private final int[] originalOffsets;
+
+        NormalizedText(String text, int[] originalOffsets) {
+            this.text = text;
+            this.originalOffsets = originalOffsets;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @param offset position in the normalized text, the length of the text is allowed as well
+         * @return position in the original text the character at offset was created from
+         */
+        public int getOriginalOffset(int offset) {
+            return originalOffsets == null ? offset : originalOffsets[offset];
+        }
+    }
+}
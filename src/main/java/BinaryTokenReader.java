@@ -0,0 +1,307 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads files written by BinaryTokenWriter. The file is memory mapped in windows of WINDOW_SIZE bytes, so files
+ * larger than a single MappedByteBuffer can be read; a document or the footer may continue in the next window.
+ * Only the footer with the vocabulary and the offset table is read when the reader is opened, the tokens of a
+ * document are decoded when the document is requested. Documents can be read in any order and by several threads
+ * at the same time. Equal tokens share a single String of the vocabulary.
+ */
+public class BinaryTokenReader implements Iterable<ConvertedDocument>, Closeable {
+    /** bytes mapped by a single MappedByteBuffer */
+    static final int WINDOW_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final int windowSize;
+    private final MappedByteBuffer[] windows;
+    private final String[] labels;
+    private final String[] vocabulary;
+    private final String[] names;
+    private final long[] offsets;
+    private final int[] tokenCounts;
+    private final int[] matchedAnnotations;
+    private final int[] unmatchedAnnotations;
+    private final int[][] sequenceCuts;
+
+    /**
+     * @param file file written by BinaryTokenWriter
+     * @throws IOException if the file could not be read or is not a complete binary token file
+     */
+    public BinaryTokenReader(Path file) throws IOException {
+        this(file, WINDOW_SIZE);
+    }
+
+    /**
+     * @param file file written by BinaryTokenWriter
+     * @param windowSize bytes mapped by a single MappedByteBuffer
+     * @throws IOException if the file could not be read or is not a complete binary token file
+     */
+    BinaryTokenReader(Path file, int windowSize) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.windowSize = windowSize;
+        try {
+            long size = channel.size();
+            windows = new MappedByteBuffer[(int) ((size + windowSize - 1) / windowSize)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = (long) i * windowSize;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+            }
+            if (size < BinaryTokenWriter.MAGIC.length + 4 + BinaryTokenWriter.TRAILER_LENGTH
+                    || !hasMagic(0) || !hasMagic(size - BinaryTokenWriter.MAGIC.length)) {
+                throw new IOException(file + " is not a complete binary token file");
+            }
+            int version = new Cursor(BinaryTokenWriter.MAGIC.length).getInt();
+            if (version < 1 || version > BinaryTokenWriter.VERSION) {
+                throw new IOException(file + " has version " + version + ", only versions 1 to "
+                        + BinaryTokenWriter.VERSION + " are supported");
+            }
+
+            Cursor footer = new Cursor(new Cursor(size - BinaryTokenWriter.TRAILER_LENGTH).getLong());
+            labels = readStrings(footer);
+            vocabulary = readStrings(footer);
+            int documentCount = footer.getVarInt();
+            names = new String[documentCount];
+            offsets = new long[documentCount];
+            tokenCounts = new int[documentCount];
+            matchedAnnotations = new int[documentCount];
+            unmatchedAnnotations = new int[documentCount];
+            sequenceCuts = new int[documentCount][];
+            for (int i = 0; i < documentCount; i++) {
+                offsets[i] = footer.getLong();
+                tokenCounts[i] = footer.getVarInt();
+                matchedAnnotations[i] = footer.getVarInt();
+                unmatchedAnnotations[i] = footer.getVarInt();
+                // version 1 files have no sequence cuts
+                sequenceCuts[i] = new int[version > 1 ? footer.getVarInt() : 0];
+                for (int cut = 0; cut < sequenceCuts[i].length; cut++) {
+                    sequenceCuts[i][cut] = (cut > 0 ? sequenceCuts[i][cut - 1] : 0) + footer.getVarInt();
+                }
+                names[i] = readString(footer);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            if (e instanceof IOException) {
+                throw e;
+            }
+            throw new IOException(file + " is not a valid binary token file: " + e, e);
+        }
+    }
+
+    public int getDocumentCount() {
+        return names.length;
+    }
+
+    /**
+     * @param document index of the document in the file
+     * @return name of the document
+     */
+    public String getName(int document) {
+        return names[document];
+    }
+
+    /**
+     * @param document index of the document in the file
+     * @return number of tokens of the document
+     */
+    public int getTokenCount(int document) {
+        return tokenCounts[document];
+    }
+
+    /**
+     * @param document index of the document in the file
+     * @return index of the first token of every sequence of the document but the first, ascending, empty if the
+     * documents were not split into sequences
+     */
+    public List<Integer> getSequenceCuts(int document) {
+        List<Integer> cuts = new ArrayList<>(sequenceCuts[document].length);
+        for (int cut : sequenceCuts[document]) {
+            cuts.add(cut);
+        }
+        return cuts;
+    }
+
+    /**
+     * @return number of different tokens in the file
+     */
+    public int getVocabularySize() {
+        return vocabulary.length;
+    }
+
+    /**
+     * decodes the tokens and labels of a document. The sentences of the document are not known anymore, the
+     * stored sequence cuts are returned as its sentence starts.
+     * @param document index of the document in the file
+     * @return the document
+     */
+    public ConvertedDocument getDocument(int document) {
+        Cursor tokens = new Cursor(offsets[document]);
+        String[] documentTokens = new String[tokenCounts[document]];
+        String[] documentLabels = new String[tokenCounts[document]];
+        for (int i = 0; i < documentTokens.length; i++) {
+            documentTokens[i] = vocabulary[tokens.getVarInt()];
+            documentLabels[i] = labels[tokens.get() & 0xff];
+        }
+        return new ConvertedDocument(names[document], Arrays.asList(documentTokens), Arrays.asList(documentLabels),
+                matchedAnnotations[document], unmatchedAnnotations[document], getSequenceCuts(document));
+    }
+
+    /**
+     * @return all documents in the order of the file, decoded while iterating
+     */
+    @Override
+    public Iterator<ConvertedDocument> iterator() {
+        return new Iterator<ConvertedDocument>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < names.length;
+            }
+
+            @Override
+            public ConvertedDocument next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getDocument(next++);
+            }
+        };
+    }
+
+    /**
+     * writes all documents in the format of the merged TSV file, with an empty line between the sequences of a
+     * document if the documents were split into sentences. The result is the file the TSV output of the same run
+     * would have been.
+     * @param tsvFile file which is created
+     * @throws IOException if the file could not be written
+     */
+    public void exportTSV(File tsvFile) throws IOException {
+        try (PrintWriter writer = new PrintWriter(tsvFile, "UTF-8")) {
+            for (int document = 0; document < names.length; document++) {
+                Cursor tokens = new Cursor(offsets[document]);
+                int cut = 0;
+                for (int i = 0; i < tokenCounts[document]; i++) {
+                    if (cut < sequenceCuts[document].length && sequenceCuts[document][cut] == i) {
+                        writer.println();
+                        cut++;
+                    }
+                    writer.println(vocabulary[tokens.getVarInt()] + "\t" + labels[tokens.get() & 0xff]);
+                }
+                writer.println();
+            }
+            if (writer.checkError()) {
+                throw new IOException("writing " + tsvFile + " failed");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean hasMagic(long position) {
+        Cursor bytes = new Cursor(position);
+        for (int i = 0; i < BinaryTokenWriter.MAGIC.length; i++) {
+            if (bytes.get() != BinaryTokenWriter.MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] readStrings(Cursor in) {
+        String[] strings = new String[in.getVarInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+        return strings;
+    }
+
+    private static String readString(Cursor in) {
+        byte[] bytes = new byte[in.getVarInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the file from a position on and moves to the next window when the current one is used up. Every
+     * cursor has its own view of the windows, so several threads can read at the same time.
+     */
+    private class Cursor {
+        private int window;
+        private ByteBuffer bytes;
+
+        Cursor(long position) {
+            window = (int) (position / windowSize);
+            if (window < windows.length) {
+                bytes = windows[window].duplicate();
+                bytes.position((int) (position % windowSize));
+            } else {
+                bytes = ByteBuffer.allocate(0);
+            }
+        }
+
+        byte get() {
+            if (!bytes.hasRemaining()) {
+                nextWindow();
+            }
+            return bytes.get();
+        }
+
+        void get(byte[] destination) {
+            int copied = 0;
+            while (copied < destination.length) {
+                if (!bytes.hasRemaining()) {
+                    nextWindow();
+                }
+                int length = Math.min(bytes.remaining(), destination.length - copied);
+                bytes.get(destination, copied, length);
+                copied += length;
+            }
+        }
+
+        int getInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = value << 8 | (get() & 0xff);
+            }
+            return value;
+        }
+
+        long getLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = value << 8 | (get() & 0xff);
+            }
+            return value;
+        }
+
+        int getVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = get();
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        private void nextWindow() {
+            if (window + 1 >= windows.length) {
+                throw new BufferUnderflowException();
+            }
+            bytes = windows[++window].duplicate();
+        }
+    }
+}
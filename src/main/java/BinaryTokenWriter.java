@@ -0,0 +1,282 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes converted documents in the compact binary format read by BinaryTokenReader, as alternative to the merged
+ * TSV file. Every token is stored as variable length id into a vocabulary, followed by its label id as single
+ * byte, so repeated tokens and labels take one to four bytes instead of a whole line. The file is written in a
+ * single pass:
+ * <pre>
+ * header:  "AFCB", int version
+ * body:    for every document, for every token: varint token id, byte label id
+ * footer:  varint label count, labels
+ *          varint vocabulary size, tokens
+ *          varint document count, for every document: long offset of its first token, varint token count,
+ *          varint matched annotations, varint unmatched annotations, varint sequence cut count, for every cut
+ *          the varint distance to the cut before, name
+ * trailer: long offset of the footer, "AFCB"
+ * </pre>
+ * Strings are stored as varint byte length followed by their UTF-8 bytes, numbers are big endian. A sequence cut
+ * is the index of the first token of a sequence but the first, if the documents are split into sentences.
+ * Version 1 files have no sequence cuts.
+ * Like PrintWriter the writer does not throw IOExceptions while writing, checkError() reports them.
+ */
+public class BinaryTokenWriter implements Closeable {
+    public static final String FILE_ENDING = ".bin";
+    static final byte[] MAGIC = {'A', 'F', 'C', 'B'};
+    static final int VERSION = 2;
+    static final int TRAILER_LENGTH = 8 + MAGIC.length;
+    private static final int MAX_LABELS = 256;
+
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private final Map<String, Integer> vocabulary = new HashMap<>();
+    private final List<String> tokens = new ArrayList<>();
+    private final Map<String, Integer> labelIds = new HashMap<>();
+    private final List<String> labels = new ArrayList<>();
+    private final List<DocumentEntry> documents = new ArrayList<>();
+    private DocumentEntry currentDocument;
+    private boolean error = false;
+    private boolean closed = false;
+
+    /**
+     * @param file file which is created
+     * @throws FileNotFoundException if the file could not be created
+     */
+    public BinaryTokenWriter(File file) throws FileNotFoundException {
+        this.counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        this.out = new DataOutputStream(counter);
+        try {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+
+    /**
+     * writes a whole converted document
+     * @param document the converted document
+     */
+    public void writeDocument(ConvertedDocument document) {
+        writeDocument(document, Collections.<Integer>emptyList());
+    }
+
+    /**
+     * writes a whole converted document which is split into sequences
+     * @param document the converted document
+     * @param sequenceCuts index of the first token of every sequence but the first, ascending
+     */
+    public void writeDocument(ConvertedDocument document, List<Integer> sequenceCuts) {
+        startDocument(document.getName());
+        Iterator<Integer> cuts = sequenceCuts.iterator();
+        int nextCut = cuts.hasNext() ? cuts.next() : -1;
+        for (int i = 0; i < document.getTokens().size(); i++) {
+            if (i == nextCut) {
+                endSequence();
+                nextCut = cuts.hasNext() ? cuts.next() : -1;
+            }
+            writeToken(document.getTokens().get(i),
+                    i < document.getLabels().size() ? document.getLabels().get(i) : "O");
+        }
+        endDocument(document.getMatchedAnnotations(), document.getUnmatchedAnnotations());
+    }
+
+    /**
+     * starts a document whose tokens are written one at a time, e.g. while it is converted in chunks
+     * @param name name of the document
+     */
+    public void startDocument(String name) {
+        if (currentDocument != null) {
+            throw new IllegalStateException("document " + currentDocument.name + " was not ended");
+        }
+        currentDocument = new DocumentEntry(name, counter.count);
+    }
+
+    /**
+     * @param token token of the current document
+     * @param label label of the token
+     */
+    public void writeToken(String token, String label) {
+        if (currentDocument == null) {
+            throw new IllegalStateException("no document was started");
+        }
+        Integer tokenId = vocabulary.get(token);
+        if (tokenId == null) {
+            tokenId = tokens.size();
+            vocabulary.put(token, tokenId);
+            tokens.add(token);
+        }
+        Integer labelId = labelIds.get(label);
+        if (labelId == null) {
+            if (labels.size() == MAX_LABELS) {
+                throw new IllegalStateException("the binary format supports at most " + MAX_LABELS + " labels");
+            }
+            labelId = labels.size();
+            labelIds.put(label, labelId);
+            labels.add(label);
+        }
+        try {
+            writeVarInt(tokenId);
+            out.writeByte(labelId);
+        } catch (IOException e) {
+            error = true;
+        }
+        currentDocument.tokenCount++;
+    }
+
+    /**
+     * ends the current sequence of the current document, the next token starts a new one
+     */
+    public void endSequence() {
+        if (currentDocument == null) {
+            throw new IllegalStateException("no document was started");
+        }
+        currentDocument.sequenceCuts.add(currentDocument.tokenCount);
+    }
+
+    /**
+     * ends the current document
+     * @param matchedAnnotations number of annotations of the document which matched a token
+     * @param unmatchedAnnotations number of annotations of the document which did not match any token
+     */
+    public void endDocument(int matchedAnnotations, int unmatchedAnnotations) {
+        if (currentDocument == null) {
+            throw new IllegalStateException("no document was started");
+        }
+        currentDocument.matchedAnnotations = matchedAnnotations;
+        currentDocument.unmatchedAnnotations = unmatchedAnnotations;
+        documents.add(currentDocument);
+        currentDocument = null;
+    }
+
+    /**
+     * drops the current document, e.g. after its conversion failed. Its tokens stay in the file but are not part
+     * of any document.
+     */
+    public void abortDocument() {
+        currentDocument = null;
+    }
+
+    /**
+     * @return number of bytes written so far
+     */
+    public long getBytesWritten() {
+        return counter.count;
+    }
+
+    /**
+     * @return number of different tokens written so far
+     */
+    public int getVocabularySize() {
+        return tokens.size();
+    }
+
+    /**
+     * @return true if writing failed, the file is incomplete then
+     */
+    public boolean checkError() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            error = true;
+        }
+        return error;
+    }
+
+    /**
+     * writes the footer with the vocabulary and the offset table and closes the file
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long footerOffset = counter.count;
+            writeVarInt(labels.size());
+            for (String label : labels) {
+                writeString(label);
+            }
+            writeVarInt(tokens.size());
+            for (String token : tokens) {
+                writeString(token);
+            }
+            writeVarInt(documents.size());
+            for (DocumentEntry document : documents) {
+                out.writeLong(document.offset);
+                writeVarInt(document.tokenCount);
+                writeVarInt(document.matchedAnnotations);
+                writeVarInt(document.unmatchedAnnotations);
+                writeVarInt(document.sequenceCuts.size());
+                int lastCut = 0;
+                for (int cut : document.sequenceCuts) {
+                    writeVarInt(cut - lastCut);
+                    lastCut = cut;
+                }
+                writeString(document.name);
+            }
+            out.writeLong(footerOffset);
+            out.write(MAGIC);
+            out.close();
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Counts the bytes written, the offsets in the file can be larger than DataOutputStream.size().
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+
+    /**
+     * Place and counters of a written document.
+     */
+    private static class DocumentEntry {
+        private final String name;
+        private final long offset;
+        private final List<Integer> sequenceCuts = new ArrayList<>();
+        private int tokenCount;
+        private int matchedAnnotations;
+        private int unmatchedAnnotations;
+
+        DocumentEntry(String name, long offset) {
+            this.name = name;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writer for the .tsv files which encodes UTF-8 directly into large reusable byte blocks and writes them through
+ * a FileChannel, without the CharsetEncoder and the small buffers of an OutputStreamWriter. Unpaired surrogates
+ * are written as '?' like OutputStreamWriter does, so the files are byte identical.
+ * If compressionThreads is larger than 0 every full block is compressed as an independent gzip member by one of
+ * the compression threads while the next block is filled. The members are written in order, the file is a
+ * standard multi-member gzip stream which gzip, zcat and GZIPInputStream read as a whole.
+ * The writer is not thread safe, like the writers of the merged file it is only used by the writing thread.
+ */
+public class ChannelWriter extends Writer {
+    public static final String GZIP_FILE_ENDING = ".gz";
+    static final int BLOCK_SIZE = 1024 * 1024;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final FileChannel channel;
+    private final ExecutorService compressors;
+    // compressed blocks in file order, at most maxPendingBlocks
+    private final Deque<Future<ByteBuffer>> pendingBlocks = new ArrayDeque<>();
+    private final BlockingQueue<byte[]> freeBlocks = new LinkedBlockingQueue<>();
+    private final int maxPendingBlocks;
+    private final long openedAt = System.nanoTime();
+    private byte[] block;
+    private int position = 0;
+    // high surrogate of a pair whose low surrogate was not written yet, 0 if there is none
+    private char highSurrogate = 0;
+    private long bytesWritten = 0;
+    private long uncompressedBytes = 0;
+    private long blockedNanos = 0;
+    private long elapsedNanos = -1;
+
+    /**
+     * @param file file which is created or replaced
+     * @param compressionThreads number of threads compressing blocks, 0 to write the file uncompressed
+     * @throws IOException if the file could not be created
+     */
+    public ChannelWriter(File file, int compressionThreads) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.block = new byte[BLOCK_SIZE];
+        if (compressionThreads > 0) {
+            this.compressors = Executors.newFixedThreadPool(compressionThreads, runnable -> {
+                Thread thread = new Thread(runnable, "gzip-block");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // enough blocks in flight to keep every thread busy while the writing thread fills the next block
+            this.maxPendingBlocks = 2 * compressionThreads;
+        } else {
+            this.compressors = null;
+            this.maxPendingBlocks = 0;
+        }
+    }
+
+    /**
+     * @param file file which is created or replaced
+     * @throws IOException if the file could not be created
+     */
+    public ChannelWriter(File file) throws IOException {
+        this(file, 0);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        put((char) c);
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        ensureOpen();
+        for (int i = offset; i < offset + length; i++) {
+            put(buffer[i]);
+        }
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        ensureOpen();
+        for (int i = offset; i < offset + length; i++) {
+            put(text.charAt(i));
+        }
+    }
+
+    /**
+     * writes all complete data to the file, with compression the current block becomes a member of its own
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeBlock();
+        while (!pendingBlocks.isEmpty()) {
+            writePendingBlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (block == null) {
+            return;
+        }
+        try {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                block[position++] = '?';
+            }
+            flush();
+        } finally {
+            block = null;
+            if (compressors != null) {
+                compressors.shutdownNow();
+            }
+            channel.close();
+            elapsedNanos = System.nanoTime() - openedAt;
+        }
+    }
+
+    /**
+     * @return number of bytes written to the file so far, compressed if the file is compressed
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return number of UTF-8 bytes passed to the file so far, before compression
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    /**
+     * @return time the writing thread waited for the file or for the compression threads, in milliseconds
+     */
+    public long getBlockedMillis() {
+        return blockedNanos / 1_000_000;
+    }
+
+    /**
+     * @return uncompressed bytes per second between opening and closing the writer, or until now if it is open
+     */
+    public double getBytesPerSecond() {
+        long nanos = elapsedNanos >= 0 ? elapsedNanos : System.nanoTime() - openedAt;
+        return nanos == 0 ? 0 : uncompressedBytes * 1e9 / nanos;
+    }
+
+    private void put(char c) throws IOException {
+        if (position > BLOCK_SIZE - 4) {
+            writeBlock();
+        }
+        if (highSurrogate != 0) {
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(highSurrogate, c);
+                highSurrogate = 0;
+                block[position++] = (byte) (0xf0 | (codePoint >> 18));
+                block[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                block[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                block[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                return;
+            }
+            highSurrogate = 0;
+            block[position++] = '?';
+        }
+        if (c < 0x80) {
+            block[position++] = (byte) c;
+        } else if (c < 0x800) {
+            block[position++] = (byte) (0xc0 | (c >> 6));
+            block[position++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            block[position++] = '?';
+        } else {
+            block[position++] = (byte) (0xe0 | (c >> 12));
+            block[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            block[position++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (block == null) {
+            throw new IOException("writer is closed");
+        }
+    }
+
+    /**
+     * writes the current block, or hands it to the compression threads and continues with a free block
+     */
+    private void writeBlock() throws IOException {
+        if (position == 0) {
+            return;
+        }
+        uncompressedBytes += position;
+        long start = System.nanoTime();
+        if (compressors == null) {
+            writeFully(ByteBuffer.wrap(block, 0, position));
+        } else {
+            while (pendingBlocks.size() >= maxPendingBlocks) {
+                writePendingBlock();
+            }
+            byte[] full = block;
+            int length = position;
+            pendingBlocks.add(compressors.submit(() -> {
+                try {
+                    return compress(full, length);
+                } finally {
+                    freeBlocks.add(full);
+                }
+            }));
+            byte[] free = freeBlocks.poll();
+            block = free != null ? free : new byte[BLOCK_SIZE];
+        }
+        position = 0;
+        blockedNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * waits for the oldest compressed block and writes it
+     */
+    private void writePendingBlock() throws IOException {
+        long start = System.nanoTime();
+        try {
+            writeFully(pendingBlocks.poll().get());
+        } catch (ExecutionException e) {
+            throw new IOException("compressing a block failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while compressing");
+        } finally {
+            blockedNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        bytesWritten += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return the bytes as a complete gzip member: header, raw deflate data, CRC-32 and length
+     */
+    private static ByteBuffer compress(byte[] bytes, int length) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes, 0, length);
+            deflater.finish();
+            // incompressible data grows by a few bytes per 16K, the header and trailer take 18 bytes
+            byte[] member = new byte[length + length / 1024 + 64];
+            System.arraycopy(GZIP_HEADER, 0, member, 0, GZIP_HEADER.length);
+            int size = GZIP_HEADER.length;
+            while (!deflater.finished()) {
+                if (size == member.length - 8) {
+                    byte[] larger = new byte[member.length * 2];
+                    System.arraycopy(member, 0, larger, 0, size);
+                    member = larger;
+                }
+                size += deflater.deflate(member, size, member.length - 8 - size);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, length);
+            ByteBuffer buffer = ByteBuffer.wrap(member, 0, size + 8);
+            buffer.position(size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt((int) crc.getValue());
+            buffer.putInt(length);
+            buffer.position(0);
+            return buffer;
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the converted tokens and labels of every document of a previous run, so unchanged .txt .ann pairs do
+ * not have to be converted again. An entry holds a line per token like the .tsv files, with an empty line where
+ * a sentence starts if the sentences were searched. A manifest stores for every document the size and
+ * modification time of both files, the hash of their contents and the number of matched annotations. If size and
+ * modification time are unchanged the cached output is used without reading the text, otherwise the contents are
+ * hashed and only converted again if the hash changed.
+ * The whole cache is discarded if the configuration of the conversion (converter version, tokenizer options,
+ * labels, character mapping, delimiters, sentence splitting) differs from the one the cache was created with.
+ */
+public class ConversionCache {
+    private static final String MANIFEST_FILE = "manifest.tsv";
+    private static final String FINGERPRINT_PREFIX = "# configuration ";
+    private static final String ENTRY_ENDING = ".tsv";
+
+    private final File directory;
+    private final String fingerprint;
+    private final Map<String, Entry> previousEntries = new HashMap<>();
+    private final Map<String, Entry> currentEntries = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * opens the cache in the given directory. Entries created with a different configuration are not used.
+     * @param directory directory of the cache, is created if not present
+     * @param configuration description of everything besides the input files which influences the conversion
+     * @throws IOException if the directory could not be created or the manifest could not be read
+     */
+    public ConversionCache(File directory, String configuration) throws IOException {
+        this.directory = directory;
+        this.fingerprint = hash(configuration.getBytes(StandardCharsets.UTF_8));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create cache directory " + directory);
+        }
+        readManifest();
+    }
+
+    private void readManifest() throws IOException {
+        File manifest = new File(directory, MANIFEST_FILE);
+        if (!manifest.isFile()) {
+            return;
+        }
+        List<String> lines = Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(FINGERPRINT_PREFIX + fingerprint)) {
+            System.out.println("configuration changed, conversion cache is rebuilt");
+            return;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t");
+            if (fields.length == 8) {
+                previousEntries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3]), Long.parseLong(fields[4]), fields[5],
+                        Integer.parseInt(fields[6]), Integer.parseInt(fields[7])));
+            }
+        }
+    }
+
+    /**
+     * returns the cached conversion of a document if the .txt and .ann file did not change since it was stored
+     * @param document the .txt and .ann file of the document
+     * @return the cached document or null if the document has to be converted
+     * @throws IOException if the files could not be read
+     */
+    public ConvertedDocument lookup(DocumentPair document) throws IOException {
+        String name = document.getName();
+        Entry previous = previousEntries.get(name);
+        Entry current = new Entry(document.getTextLength(), document.getTextModified(),
+                document.getAnnotationLength(), document.getAnnotationModified(), null, 0, 0);
+
+        if (previous != null && previous.hasSameFileState(current) && entryFile(previous.hash).isFile()) {
+            currentEntries.put(name, previous);
+            hits.incrementAndGet();
+            return readEntry(name, previous);
+        }
+
+        current.hash = hashContents(document);
+        if (previous != null && previous.hash.equals(current.hash) && entryFile(previous.hash).isFile()) {
+            current.matchedAnnotations = previous.matchedAnnotations;
+            current.unmatchedAnnotations = previous.unmatchedAnnotations;
+            currentEntries.put(name, current);
+            hits.incrementAndGet();
+            return readEntry(name, current);
+        }
+
+        // remembered until the converted document is stored
+        currentEntries.put(name, current);
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * stores the conversion of a document for which lookup() returned null
+     * @param document the converted document
+     * @throws IOException if the cache entry could not be written
+     */
+    public void store(ConvertedDocument document) throws IOException {
+        Entry entry = currentEntries.get(document.getName());
+        if (entry == null || entry.hash == null) {
+            throw new IllegalStateException("document was not looked up before: " + document.getName());
+        }
+        entry.matchedAnnotations = document.getMatchedAnnotations();
+        entry.unmatchedAnnotations = document.getUnmatchedAnnotations();
+
+        File entryFile = entryFile(entry.hash);
+        File temporaryFile = File.createTempFile(entry.hash, ".tmp", directory);
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(temporaryFile), StandardCharsets.UTF_8))) {
+            List<String> tokens = document.getTokens();
+            List<String> labels = document.getLabels();
+            Iterator<Integer> sentenceStarts = document.getSentenceStarts().iterator();
+            int nextStart = sentenceStarts.hasNext() ? sentenceStarts.next() : -1;
+            for (int i = 0; i < tokens.size(); i++) {
+                // an empty line in front of every sentence but the first
+                if (i == nextStart) {
+                    writer.println();
+                    nextStart = sentenceStarts.hasNext() ? sentenceStarts.next() : -1;
+                }
+                writer.println(tokens.get(i) + "\t" + labels.get(i));
+            }
+        }
+        Files.move(temporaryFile.toPath(), entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * forgets a document which was looked up but could not be converted
+     * @param name name of the document
+     */
+    public void remove(String name) {
+        currentEntries.remove(name);
+    }
+
+    /**
+     * writes the manifest for all documents of this run and deletes entries which are no longer used
+     * @throws IOException if the manifest could not be written
+     */
+    public void save() throws IOException {
+        Set<String> usedEntryFiles = new HashSet<>();
+        File manifest = new File(directory, MANIFEST_FILE);
+        File temporaryManifest = new File(directory, MANIFEST_FILE + ".tmp");
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(temporaryManifest), StandardCharsets.UTF_8))) {
+            writer.println(FINGERPRINT_PREFIX + fingerprint);
+            for (Map.Entry<String, Entry> document : new TreeMap<>(currentEntries).entrySet()) {
+                Entry entry = document.getValue();
+                if (!entryFile(entry.hash).isFile()) {
+                    continue;
+                }
+                usedEntryFiles.add(entry.hash + ENTRY_ENDING);
+                writer.println(document.getKey() + "\t" + entry.textLength + "\t" + entry.textModified + "\t"
+                        + entry.annotationLength + "\t" + entry.annotationModified + "\t" + entry.hash + "\t"
+                        + entry.matchedAnnotations + "\t" + entry.unmatchedAnnotations);
+            }
+        }
+        Files.move(temporaryManifest.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            if (file.getName().endsWith(ENTRY_ENDING) && !file.getName().equals(MANIFEST_FILE)
+                    && !usedEntryFiles.contains(file.getName())) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * @return number of documents taken from the cache
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of documents which had to be converted
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    private ConvertedDocument readEntry(String name, Entry entry) throws IOException {
+        List<String> lines = Files.readAllLines(entryFile(entry.hash).toPath(), StandardCharsets.UTF_8);
+        List<String> tokens = new ArrayList<>(lines.size());
+        List<String> labels = new ArrayList<>(lines.size());
+        List<Integer> sentenceStarts = new ArrayList<>();
+        for (String line : lines) {
+            if (line.isEmpty()) {
+                sentenceStarts.add(tokens.size());
+                continue;
+            }
+            int separator = line.lastIndexOf('\t');
+            tokens.add(line.substring(0, separator));
+            labels.add(line.substring(separator + 1));
+        }
+        return new ConvertedDocument(name, tokens, labels, entry.matchedAnnotations, entry.unmatchedAnnotations,
+                sentenceStarts);
+    }
+
+    private File entryFile(String hash) {
+        return new File(directory, hash + ENTRY_ENDING);
+    }
+
+    private static String hashContents(DocumentPair document) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        for (int file = 0; file < 2; file++) {
+            try (InputStream in = file == 0 ? document.openText() : document.openAnnotations()) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            // separates the files, so moving text from one file to the other changes the hash
+            digest.update((byte) 0);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @param content bytes which should be hashed
+     * @return hex encoded SHA-256 hash of the bytes
+     */
+    static String hash(byte[] content) {
+        return toHex(newDigest().digest(content));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * State of the .txt and .ann file of a document when it was converted.
+     */
+    private static class Entry {
+        private final long textLength;
+        private final long textModified;
+        private final long annotationLength;
+        private final long annotationModified;
+        private String hash;
+        private int matchedAnnotations;
+        private int unmatchedAnnotations;
+
+        Entry(long textLength, long textModified, long annotationLength, long annotationModified, String hash,
+              int matchedAnnotations, int unmatchedAnnotations) {
+            this.textLength = textLength;
+            this.textModified = textModified;
+            this.annotationLength = annotationLength;
+            this.annotationModified = annotationModified;
+            this.hash = hash;
+            this.matchedAnnotations = matchedAnnotations;
+            this.unmatchedAnnotations = unmatchedAnnotations;
+        }
+
+        boolean hasSameFileState(Entry other) {
+            return textLength == other.textLength && textModified == other.textModified
+                    && annotationLength == other.annotationLength && annotationModified == other.annotationModified;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Collects counters and per stage latencies of a conversion run and writes them as JSON summary. Counters are
+ * always collected, stage latencies and byte counts only if timing is enabled, so a run without metrics does not
+ * pay for reading the clock.
+ */
+public class ConversionMetrics {
+
+    /**
+     * Stages of the conversion of a single document.
+     */
+    public enum Stage {
+        READ, TOKENIZE, NORMALIZE, ALIGN, MATCH, WRITE
+    }
+
+    private final boolean timingEnabled;
+    private final long startTime = System.nanoTime();
+    private final LatencyHistogram[] stageLatencies = new LatencyHistogram[Stage.values().length];
+
+    private final AtomicLong convertedDocuments = new AtomicLong();
+    private final AtomicLong cachedDocuments = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong matchedAnnotations = new AtomicLong();
+    private final AtomicLong unmatchedAnnotations = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final Queue<String[]> failures = new ConcurrentLinkedQueue<>();
+
+    private ScheduledExecutorService progressReporter;
+    private volatile Supplier<String> progressDetails;
+
+    /**
+     * @param timingEnabled true if stage latencies and byte counts should be recorded
+     */
+    public ConversionMetrics(boolean timingEnabled) {
+        this.timingEnabled = timingEnabled;
+        for (Stage stage : Stage.values()) {
+            stageLatencies[stage.ordinal()] = new LatencyHistogram();
+        }
+    }
+
+    public boolean isTimingEnabled() {
+        return timingEnabled;
+    }
+
+    /**
+     * @return start time for stop(), 0 if timing is disabled
+     */
+    public long start() {
+        return timingEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * records the time since start for the stage
+     * @param stage stage which finished
+     * @param start value returned by start() before the stage began
+     */
+    public void stop(Stage stage, long start) {
+        if (timingEnabled) {
+            stageLatencies[stage.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * counts a document which was written to the output
+     * @param document the converted document
+     * @param fromCache true if the document was taken from the conversion cache
+     */
+    public void recordDocument(ConvertedDocument document, boolean fromCache) {
+        (fromCache ? cachedDocuments : convertedDocuments).incrementAndGet();
+        tokens.addAndGet(document.getTokens().size());
+        matchedAnnotations.addAndGet(document.getMatchedAnnotations());
+        unmatchedAnnotations.addAndGet(document.getUnmatchedAnnotations());
+    }
+
+    /**
+     * counts a document which was written to the output while it was converted, without a ConvertedDocument
+     * @param tokenCount number of tokens of the document
+     * @param matched number of annotations which matched a token
+     * @param unmatched number of annotations which did not match any token
+     */
+    public void recordStreamedDocument(long tokenCount, int matched, int unmatched) {
+        convertedDocuments.incrementAndGet();
+        tokens.addAndGet(tokenCount);
+        matchedAnnotations.addAndGet(matched);
+        unmatchedAnnotations.addAndGet(unmatched);
+    }
+
+    /**
+     * records a document which could not be converted
+     * @param document name of the document
+     * @param reason description of the error
+     */
+    public void recordFailure(String document, String reason) {
+        failures.add(new String[]{document, reason});
+    }
+
+    public void addBytesRead(long bytes) {
+        if (timingEnabled) {
+            bytesRead.addAndGet(bytes);
+        }
+    }
+
+    public void addBytesWritten(long bytes) {
+        if (timingEnabled) {
+            bytesWritten.addAndGet(bytes);
+        }
+    }
+
+    public long getConvertedDocuments() {
+        return convertedDocuments.get();
+    }
+
+    public long getCachedDocuments() {
+        return cachedDocuments.get();
+    }
+
+    public long getTokens() {
+        return tokens.get();
+    }
+
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startTime) / 1_000_000;
+    }
+
+    /**
+     * @return document name and reason of every failed document
+     */
+    public List<String[]> getFailures() {
+        return new ArrayList<>(failures);
+    }
+
+    public long getMatchedAnnotations() {
+        return matchedAnnotations.get();
+    }
+
+    public long getUnmatchedAnnotations() {
+        return unmatchedAnnotations.get();
+    }
+
+    /**
+     * @return tokens written per second since the metrics were created
+     */
+    public double getTokensPerSecond() {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return seconds > 0 ? tokens.get() / seconds : 0;
+    }
+
+    /**
+     * prints a progress line to System.out in the given interval until stopProgress() is called
+     * @param intervalSeconds seconds between two progress lines
+     */
+    public void startProgress(int intervalSeconds) {
+        progressReporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversion-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progressReporter.scheduleAtFixedRate(() -> {
+            Supplier<String> details = progressDetails;
+            System.out.println(String.format(Locale.ROOT,
+                    "progress: %d documents converted, %d taken from cache, %d failed, %.0f tokens/s",
+                    convertedDocuments.get(), cachedDocuments.get(), failures.size(), getTokensPerSecond())
+                    + (details != null ? ", " + details.get() : ""));
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param details supplies further information which is appended to every progress line, e.g. queue depths
+     */
+    public void setProgressDetails(Supplier<String> details) {
+        this.progressDetails = details;
+    }
+
+    public void stopProgress() {
+        if (progressReporter != null) {
+            progressReporter.shutdownNow();
+        }
+    }
+
+    /**
+     * writes the summary of the run as JSON
+     * @param file file the summary is written to
+     * @param additionalCounters further counters of the run which are added to the summary
+     * @throws IOException if the file could not be written
+     */
+    public void writeJson(String file, Map<String, Long> additionalCounters) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(toJson(additionalCounters));
+        }
+    }
+
+    /**
+     * @param additionalCounters further counters of the run which are added to the summary, e.g. cache statistics
+     * @return summary of the run as JSON object
+     */
+    public String toJson(Map<String, Long> additionalCounters) {
+        long elapsed = System.nanoTime() - startTime;
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"elapsedMillis\": ").append(elapsed / 1_000_000).append(",\n");
+        json.append("  \"documents\": {\"converted\": ").append(convertedDocuments.get())
+                .append(", \"fromCache\": ").append(cachedDocuments.get())
+                .append(", \"failed\": ").append(failures.size()).append("},\n");
+        json.append("  \"tokens\": ").append(tokens.get()).append(",\n");
+        json.append("  \"tokensPerSecond\": ").append(format(getTokensPerSecond())).append(",\n");
+        json.append("  \"annotations\": {\"matched\": ").append(matchedAnnotations.get())
+                .append(", \"unmatched\": ").append(unmatchedAnnotations.get()).append("},\n");
+        if (timingEnabled) {
+            json.append("  \"bytesRead\": ").append(bytesRead.get()).append(",\n");
+            json.append("  \"bytesWritten\": ").append(bytesWritten.get()).append(",\n");
+            json.append("  \"bytesWrittenPerSecond\": ")
+                    .append(format(elapsed == 0 ? 0 : bytesWritten.get() * 1e9 / elapsed)).append(",\n");
+            json.append("  \"stages\": {");
+            for (Stage stage : Stage.values()) {
+                json.append(stage.ordinal() == 0 ? "\n" : ",\n");
+                json.append("    \"").append(stage.name().toLowerCase(Locale.ROOT)).append("\": ");
+                stageLatencies[stage.ordinal()].appendJson(json);
+            }
+            json.append("\n  },\n");
+        }
+        for (Map.Entry<String, Long> counter : additionalCounters.entrySet()) {
+            json.append("  \"").append(escape(counter.getKey())).append("\": ").append(counter.getValue())
+                    .append(",\n");
+        }
+        json.append("  \"failures\": [");
+        boolean first = true;
+        for (String[] failure : failures) {
+            json.append(first ? "\n" : ",\n");
+            json.append("    {\"document\": \"").append(escape(failure[0])).append("\", \"reason\": \"")
+                    .append(escape(failure[1])).append("\"}");
+            first = false;
+        }
+        json.append(first ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    /**
+     * @return summary of the run as JSON object
+     */
+    public String toJson() {
+        return toJson(Collections.<String, Long>emptyMap());
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char character : value.toCharArray()) {
+            if (character == '"' || character == '\\') {
+                escaped.append('\\').append(character);
+            } else if (character < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) character));
+            } else {
+                escaped.append(character);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Histogram of latencies with one bucket per power of two nanoseconds. Recording is lock free, percentiles are
+     * reported as upper bound of the bucket they fall in.
+     */
+    private static class LatencyHistogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            buckets.incrementAndGet(nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos));
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long currentMax;
+            while (nanos > (currentMax = max.get()) && !max.compareAndSet(currentMax, nanos)) {
+                // retry until the maximum is updated or a larger value was recorded
+            }
+        }
+
+        private double percentileMillis(double percentile) {
+            long threshold = (long) Math.ceil(percentile * count.get());
+            long seen = 0;
+            for (int bucket = 0; bucket < 64; bucket++) {
+                seen += buckets.get(bucket);
+                if (seen >= threshold && seen > 0) {
+                    return Math.min(bucket >= 62 ? Long.MAX_VALUE : 2L << bucket, max.get()) / 1e6;
+                }
+            }
+            return 0;
+        }
+
+        void appendJson(StringBuilder json) {
+            long recorded = count.get();
+            json.append("{\"count\": ").append(recorded)
+                    .append(", \"totalMillis\": ").append(format(total.get() / 1e6))
+                    .append(", \"meanMillis\": ").append(format(recorded == 0 ? 0 : total.get() / 1e6 / recorded))
+                    .append(", \"p50Millis\": ").append(format(percentileMillis(0.5)))
+                    .append(", \"p90Millis\": ").append(format(percentileMillis(0.9)))
+                    .append(", \"p99Millis\": ").append(format(percentileMillis(0.99)))
+                    .append(", \"maxMillis\": ").append(format(max.get() / 1e6)).append('}');
+        }
+    }
+}
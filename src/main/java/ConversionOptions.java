@@ -0,0 +1,564 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Settings of a conversion run which are not part of the annotation data itself. The defaults reproduce
+ * the behaviour of a plain FileParser run.
+ */
+public class ConversionOptions {
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    /**
+     * Files the converted documents are written to: the merged TSV file, the binary file read by
+     * BinaryTokenReader, or both.
+     */
+    public enum OutputFormat {
+        TSV, BINARY, BOTH
+    }
+
+    /**
+     * Document kept of every cluster of duplicates: the one with the most annotations, the first of the corpus,
+     * or the one whose .ann file was changed last. Ties are won by the earlier document of the corpus.
+     */
+    public enum KeepPolicy {
+        MOST_ANNOTATIONS, FIRST, NEWEST
+    }
+
+    private int threads = 1;
+    private boolean streaming = false;
+    private boolean watching = false;
+    private boolean legacyAlignment = false;
+    private String cacheDirectory = null;
+    private String metricsFile = null;
+    private int progressInterval = 0;
+    private int annotationCacheSize = AnnotationTokenCache.DEFAULT_SIZE;
+    private List<String> includeGlobs = new ArrayList<>();
+    private List<String> excludeGlobs = new ArrayList<>();
+    private int chunkSize = 0;
+    private int readThreads = 0;
+    private int tokenizeThreads = 0;
+    private int matchThreads = 0;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int partition = 0;
+    private int partitionCount = 0;
+    private OutputFormat outputFormat = OutputFormat.TSV;
+    private int compressionThreads = 0;
+    private boolean sentenceSplitting = false;
+    private int maxSequenceLength = 0;
+    private boolean deduplication = false;
+    private double duplicateSimilarity = CorpusDeduplicator.DEFAULT_SIMILARITY;
+    private KeepPolicy keepPolicy = KeepPolicy.MOST_ANNOTATIONS;
+
+    /**
+     * @return number of documents which are converted at the same time
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * sets the number of documents which are converted at the same time
+     * @param threads number of worker threads, has to be at least 1
+     * @return these options
+     */
+    public ConversionOptions setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads has to be at least 1 but was: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @return true if converted documents are written directly into the merged file
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * sets whether converted documents are written directly into the merged file instead of creating
+     * an intermediate .tsv file for every document
+     * @param streaming true to skip the intermediate files
+     * @return these options
+     */
+    public ConversionOptions setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    /**
+     * @return true if the input directory is watched and converted again after every change, see CorpusWatcher
+     */
+    public boolean isWatching() {
+        return watching;
+    }
+
+    /**
+     * sets whether the input directory is watched and converted again after every change
+     * @param watching true to keep the merged file up to date until the JVM is stopped
+     * @return these options
+     */
+    public ConversionOptions setWatching(boolean watching) {
+        this.watching = watching;
+        return this;
+    }
+
+    /**
+     * @return true if tokens are aligned to the text by searching them instead of using the tokenizer positions
+     */
+    public boolean isLegacyAlignment() {
+        return legacyAlignment;
+    }
+
+    /**
+     * sets whether tokens are aligned to the text by searching them in the text, like older versions did,
+     * instead of using the positions reported by the tokenizer
+     * @param legacyAlignment true to search the tokens in the text
+     * @return these options
+     */
+    public ConversionOptions setLegacyAlignment(boolean legacyAlignment) {
+        this.legacyAlignment = legacyAlignment;
+        return this;
+    }
+
+    /**
+     * @return directory of the conversion cache, null if every document is converted
+     */
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * sets the directory in which converted documents are cached between runs. Documents whose .txt and .ann
+     * files did not change are then taken from the cache instead of being converted again.
+     * @param cacheDirectory directory of the cache, null to convert every document
+     * @return these options
+     */
+    public ConversionOptions setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        return this;
+    }
+
+    /**
+     * @return file the JSON metrics of the run are written to, null if no metrics are collected
+     */
+    public String getMetricsFile() {
+        return metricsFile;
+    }
+
+    /**
+     * sets the file the metrics of the run are written to as JSON. Stage timings are only collected if a file
+     * is set.
+     * @param metricsFile file for the metrics, null to skip the metrics
+     * @return these options
+     */
+    public ConversionOptions setMetricsFile(String metricsFile) {
+        this.metricsFile = metricsFile;
+        return this;
+    }
+
+    /**
+     * @return seconds between two progress lines, 0 if no progress is printed
+     */
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * sets the interval in which a progress line is printed during the run
+     * @param progressInterval seconds between two progress lines, 0 to print no progress
+     * @return these options
+     */
+    public ConversionOptions setProgressInterval(int progressInterval) {
+        this.progressInterval = progressInterval;
+        return this;
+    }
+
+    /**
+     * @return number of annotation contents whose tokens are cached during a run
+     */
+    public int getAnnotationCacheSize() {
+        return annotationCacheSize;
+    }
+
+    /**
+     * sets how many annotation contents the AnnotationTokenCache keeps. The cache is only used by the legacy
+     * alignment, which tokenizes the content of every annotation.
+     * @param annotationCacheSize number of cached annotation contents, has to be positive
+     * @return these options
+     */
+    public ConversionOptions setAnnotationCacheSize(int annotationCacheSize) {
+        if (annotationCacheSize < 1) {
+            throw new IllegalArgumentException("annotation cache size has to be positive but was: "
+                    + annotationCacheSize);
+        }
+        this.annotationCacheSize = annotationCacheSize;
+        return this;
+    }
+
+    /**
+     * @return glob patterns of the documents which are converted, all documents are converted if empty
+     */
+    public List<String> getIncludeGlobs() {
+        return includeGlobs;
+    }
+
+    /**
+     * sets glob patterns for the path of the .txt file relative to the input directory. Only documents matching
+     * one of the patterns are converted.
+     * @param includeGlobs glob patterns, an empty list converts all documents
+     * @return these options
+     */
+    public ConversionOptions setIncludeGlobs(List<String> includeGlobs) {
+        this.includeGlobs = includeGlobs;
+        return this;
+    }
+
+    /**
+     * @return glob patterns of the documents which are skipped
+     */
+    public List<String> getExcludeGlobs() {
+        return excludeGlobs;
+    }
+
+    /**
+     * sets glob patterns for the path of the .txt file relative to the input directory. Documents matching one
+     * of the patterns are skipped.
+     * @param excludeGlobs glob patterns of the skipped documents
+     * @return these options
+     */
+    public ConversionOptions setExcludeGlobs(List<String> excludeGlobs) {
+        this.excludeGlobs = excludeGlobs;
+        return this;
+    }
+
+    /**
+     * @return number of chars above which a document is converted in chunks, 0 if no document is chunked
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * sets the size of the windows in which large documents are tokenized. Documents whose .txt file has more
+     * bytes than the chunk size are converted in chunks and written directly into the merged file, so the memory
+     * needed for them is bounded by the chunk size. Chunked documents are not cached, and the legacy alignment
+     * does not support chunks.
+     * @param chunkSize number of chars tokenized at once, 0 to convert every document as a whole
+     * @return these options
+     */
+    public ConversionOptions setChunkSize(int chunkSize) {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("chunk size must not be negative but was: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * @return true if the documents are converted by the staged ConversionPipeline instead of one thread per
+     * document
+     */
+    public boolean isPipelined() {
+        return readThreads > 0;
+    }
+
+    /**
+     * Converts the documents in a ConversionPipeline: one stage reads the documents, one tokenizes, normalizes
+     * and aligns them, one matches the annotations, and the documents are written in order by the calling
+     * thread, so reading, tokenizing and writing of different documents overlap. The number of threads of every
+     * stage replaces getThreads().
+     * @param readThreads number of documents read at the same time, more helps on storage with high latency
+     * @param tokenizeThreads number of documents tokenized at the same time
+     * @param matchThreads number of documents whose annotations are matched at the same time
+     * @return these options
+     */
+    public ConversionOptions setPipeline(int readThreads, int tokenizeThreads, int matchThreads) {
+        if (readThreads < 1 || tokenizeThreads < 1 || matchThreads < 1) {
+            throw new IllegalArgumentException("every stage needs at least 1 thread but got: " + readThreads
+                    + ", " + tokenizeThreads + ", " + matchThreads);
+        }
+        this.readThreads = readThreads;
+        this.tokenizeThreads = tokenizeThreads;
+        this.matchThreads = matchThreads;
+        return this;
+    }
+
+    public int getReadThreads() {
+        return readThreads;
+    }
+
+    public int getTokenizeThreads() {
+        return tokenizeThreads;
+    }
+
+    public int getMatchThreads() {
+        return matchThreads;
+    }
+
+    /**
+     * @return number of documents each queue between two stages of the pipeline can hold
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * sets how many documents can wait in front of every stage of the pipeline. A stage whose next queue is full
+     * waits, so this bounds the documents held in memory.
+     * @param queueCapacity number of documents per queue, has to be at least 1
+     * @return these options
+     */
+    public ConversionOptions setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queue capacity has to be at least 1 but was: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * @return true if only one partition of the corpus is converted
+     */
+    public boolean isPartitioned() {
+        return partitionCount > 0;
+    }
+
+    /**
+     * Converts only the documents of partition k of N, chosen by a hash of their relative path, so N runs on
+     * different machines convert disjoint shares of the corpus. The output is written directly into a partial
+     * merged file with a PartitionManifest next to it, the partial files are combined with the merge command.
+     * @param partition number of the partition, from 1 to partitionCount
+     * @param partitionCount number of partitions the corpus is split into
+     * @return these options
+     */
+    public ConversionOptions setPartition(int partition, int partitionCount) {
+        if (partitionCount < 1 || partition < 1 || partition > partitionCount) {
+            throw new IllegalArgumentException("partition has to be between 1 and " + partitionCount
+                    + " but was: " + partition);
+        }
+        this.partition = partition;
+        this.partitionCount = partitionCount;
+        return this;
+    }
+
+    /**
+     * @return number of the converted partition, from 1 to getPartitionCount(), 0 if not partitioned
+     */
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * @return number of partitions the corpus is split into, 0 if not partitioned
+     */
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * @return files the converted documents are written to
+     */
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    /**
+     * sets the files the converted documents are written to. The binary file is always written directly, like
+     * with setStreaming(true), so no intermediate .tsv files are created if it is requested.
+     * @param outputFormat TSV, BINARY or BOTH
+     * @return these options
+     */
+    public ConversionOptions setOutputFormat(OutputFormat outputFormat) {
+        if (outputFormat == null) {
+            throw new IllegalArgumentException("output format must not be null");
+        }
+        this.outputFormat = outputFormat;
+        return this;
+    }
+
+    /**
+     * @return true if the merged TSV file is written
+     */
+    public boolean writesTSV() {
+        return outputFormat != OutputFormat.BINARY;
+    }
+
+    /**
+     * @return true if the binary file is written
+     */
+    public boolean writesBinary() {
+        return outputFormat != OutputFormat.TSV;
+    }
+
+    /**
+     * @return true if the merged TSV file is written gzip compressed
+     */
+    public boolean isCompressed() {
+        return compressionThreads > 0;
+    }
+
+    /**
+     * @return number of threads compressing blocks of the merged file, 0 if it is not compressed
+     */
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    /**
+     * sets whether the merged TSV file is written as .tsv.gz, see ChannelWriter. Its blocks are compressed in
+     * parallel, the file is a multi-member gzip stream which decompresses to the uncompressed merged file.
+     * @param compressionThreads number of threads compressing blocks, 0 to write the merged file uncompressed
+     * @return these options
+     */
+    public ConversionOptions setCompressionThreads(int compressionThreads) {
+        if (compressionThreads < 0) {
+            throw new IllegalArgumentException("compression threads must not be negative but was: "
+                    + compressionThreads);
+        }
+        this.compressionThreads = compressionThreads;
+        return this;
+    }
+
+    /**
+     * @return true if documents are written as sentence level sequences separated by empty lines
+     */
+    public boolean isSentenceSplitting() {
+        return sentenceSplitting;
+    }
+
+    /**
+     * sets whether every document is split into sentence level sequences for training, see SequenceSplitter.
+     * The binary file stores the same sequences, see BinaryTokenWriter.
+     * @param sentenceSplitting true to separate the sentences of a document with empty lines
+     * @return these options
+     */
+    public ConversionOptions setSentenceSplitting(boolean sentenceSplitting) {
+        this.sentenceSplitting = sentenceSplitting;
+        return this;
+    }
+
+    /**
+     * @return maximal number of tokens of a sequence if sentences are split, 0 if only sentence ends are used
+     */
+    public int getMaxSequenceLength() {
+        return maxSequenceLength;
+    }
+
+    /**
+     * sets the maximal number of tokens of a sequence, longer sentences are cut outside of annotations
+     * @param maxSequenceLength maximal number of tokens, 0 to cut only at sentence ends
+     * @return these options
+     */
+    public ConversionOptions setMaxSequenceLength(int maxSequenceLength) {
+        if (maxSequenceLength < 0) {
+            throw new IllegalArgumentException("maximal sequence length must not be negative but was: "
+                    + maxSequenceLength);
+        }
+        this.maxSequenceLength = maxSequenceLength;
+        return this;
+    }
+
+    /**
+     * @return true if duplicate documents are skipped before the conversion
+     */
+    public boolean isDeduplication() {
+        return deduplication;
+    }
+
+    /**
+     * sets whether exact and near duplicate documents are found before the conversion and only one document of
+     * every cluster of duplicates is converted, see CorpusDeduplicator
+     * @param deduplication true to skip duplicates
+     * @return these options
+     */
+    public ConversionOptions setDeduplication(boolean deduplication) {
+        this.deduplication = deduplication;
+        return this;
+    }
+
+    /**
+     * @return estimated similarity from which on documents are near duplicates
+     */
+    public double getDuplicateSimilarity() {
+        return duplicateSimilarity;
+    }
+
+    /**
+     * @param duplicateSimilarity estimated Jaccard similarity of the word shingles of two documents from which on
+     *                            they are near duplicates, 1 to only skip exact duplicates
+     * @return these options
+     */
+    public ConversionOptions setDuplicateSimilarity(double duplicateSimilarity) {
+        if (!(duplicateSimilarity > 0 && duplicateSimilarity <= 1)) {
+            throw new IllegalArgumentException("duplicate similarity must be larger than 0 and at most 1 but was: "
+                    + duplicateSimilarity);
+        }
+        this.duplicateSimilarity = duplicateSimilarity;
+        return this;
+    }
+
+    /**
+     * @return policy choosing the document kept of every cluster of duplicates
+     */
+    public KeepPolicy getKeepPolicy() {
+        return keepPolicy;
+    }
+
+    /**
+     * @param keepPolicy policy choosing the document kept of every cluster of duplicates
+     * @return these options
+     */
+    public ConversionOptions setKeepPolicy(KeepPolicy keepPolicy) {
+        if (keepPolicy == null) {
+            throw new IllegalArgumentException("keep policy must not be null");
+        }
+        this.keepPolicy = keepPolicy;
+        return this;
+    }
+
+    /**
+     * checks the settings which can not be combined. The setters only check their own values, since they can be
+     * called in any order.
+     * @return these options
+     * @throws IllegalArgumentException if two settings can not be combined
+     */
+    public ConversionOptions validate() {
+        if (legacyAlignment && chunkSize > 0) {
+            throw new IllegalArgumentException("chunk-size can not be combined with legacy-alignment");
+        }
+        if (legacyAlignment && isPipelined()) {
+            throw new IllegalArgumentException("pipeline can not be combined with legacy-alignment");
+        }
+        if (isPartitioned() && watching) {
+            throw new IllegalArgumentException("partition can not be combined with watch");
+        }
+        // partitions and the watch mode only write the merged TSV file, uncompressed
+        if (outputFormat != OutputFormat.TSV && (isPartitioned() || watching)) {
+            throw new IllegalArgumentException("format " + outputFormat.name().toLowerCase(Locale.ROOT)
+                    + " can not be combined with partition or watch");
+        }
+        if (isCompressed() && (isPartitioned() || watching)) {
+            throw new IllegalArgumentException("gzip can not be combined with partition or watch");
+        }
+        return this;
+    }
+
+    /**
+     * @param normalizer normalizer of the conversion
+     * @param schema labels which are taken over from the .ann files
+     * @return the deduplicator of a conversion run, null if duplicates are not skipped
+     */
+    CorpusDeduplicator newDeduplicator(AsciiNormalizer normalizer, LabelSchema schema) {
+        return deduplication ? new CorpusDeduplicator(normalizer, schema, keepPolicy, duplicateSimilarity) : null;
+    }
+
+    /**
+     * @return the splitter of the sequences, null if documents are not split
+     */
+    SequenceSplitter newSequenceSplitter() {
+        return sentenceSplitting ? new SequenceSplitter(maxSequenceLength) : null;
+    }
+}
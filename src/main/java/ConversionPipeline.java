@@ -0,0 +1,374 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs the conversion as a chain of stages connected by bounded queues, so blocking reads, tokenization and
+ * writes of different documents overlap: discover -> stage 1 -> ... -> stage n -> write. Every stage has its own
+ * number of threads. The discovery runs in its own thread, the write stage in the calling thread, and receives
+ * the items in the order of the discovery. A full queue blocks the stage before it, and only as many items as
+ * fit into the queues and threads are between discovery and write at any time, so a slow document does not
+ * let the items behind it pile up in front of the write stage.
+ * For every stage the time its threads waited for input (starved) and for space in the next queue (blocked by
+ * backpressure) is recorded, together with the depth of the queue in front of it.
+ * @param <T> item which is passed through the stages
+ */
+public class ConversionPipeline<T> {
+    private static final String DISCOVER = "discover";
+    private static final String WRITE = "write";
+
+    private final List<String> stageNames = new ArrayList<>();
+    private final List<UnaryOperator<T>> stageFunctions = new ArrayList<>();
+    private final List<Integer> stageThreads = new ArrayList<>();
+    private final int queueCapacity;
+    private final List<StageStatistics> statistics = new ArrayList<>();
+    private final List<BlockingQueue<Envelope<T>>> queues = new ArrayList<>();
+
+    /**
+     * @param queueCapacity number of items every queue between two stages can hold
+     */
+    public ConversionPipeline(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queue capacity has to be at least 1 but was: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * appends a stage to the pipeline
+     * @param name name of the stage in the statistics
+     * @param threads number of items the stage processes at the same time
+     * @param function processes an item and returns it or another item, null if the item failed and should be
+     *                 dropped, is called by several threads at the same time
+     * @return this pipeline
+     */
+    public ConversionPipeline<T> addStage(String name, int threads, UnaryOperator<T> function) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("stage " + name + " needs at least 1 thread but has: " + threads);
+        }
+        stageNames.add(name);
+        stageThreads.add(threads);
+        stageFunctions.add(function);
+        return this;
+    }
+
+    /**
+     * runs all items through the stages, returns when every item was written or dropped
+     * @param items items in the order they are written, taken by the discovery thread
+     * @param writer write stage, receives the items which passed all stages in the order of items
+     * @throws InterruptedException if the calling thread is interrupted, the stages are stopped then
+     */
+    public void run(Iterator<T> items, Consumer<T> writer) throws InterruptedException {
+        int stages = stageFunctions.size();
+        statistics.clear();
+        queues.clear();
+        statistics.add(new StageStatistics(DISCOVER, 1, null));
+        for (int i = 0; i <= stages; i++) {
+            BlockingQueue<Envelope<T>> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues.add(queue);
+            statistics.add(i < stages
+                    ? new StageStatistics(stageNames.get(i), stageThreads.get(i), queue)
+                    : new StageStatistics(WRITE, 1, queue));
+        }
+
+        int threads = 1;
+        for (int stageThreadCount : stageThreads) {
+            threads += stageThreadCount;
+        }
+        // every item in a queue, in a stage or waiting for an earlier item in front of the write stage
+        Semaphore inFlight = new Semaphore(queueCapacity * (stages + 1) + threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "conversion-pipeline-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            executor.execute(() -> discover(items, inFlight, threadsOf(0)));
+            for (int stage = 0; stage < stages; stage++) {
+                AtomicInteger running = new AtomicInteger(stageThreads.get(stage));
+                for (int thread = 0; thread < stageThreads.get(stage); thread++) {
+                    int currentStage = stage;
+                    executor.execute(() -> process(currentStage, running));
+                }
+            }
+            write(writer, inFlight);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return statistics of the discovery, every stage and the write stage of the last run, in pipeline order
+     */
+    public List<StageStatistics> getStatistics() {
+        return Collections.unmodifiableList(statistics);
+    }
+
+    /**
+     * @return current number of items in front of every stage and the write stage, e.g. "read 3/16, write 0/16"
+     */
+    public String describeQueues() {
+        StringBuilder description = new StringBuilder();
+        for (StageStatistics stage : statistics) {
+            if (stage.queue != null) {
+                description.append(description.length() == 0 ? "" : ", ").append(stage.getName()).append(' ')
+                        .append(stage.queue.size()).append('/').append(queueCapacity);
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * @param stage index of a stage, the number of stages for the write stage
+     * @return number of end markers the stage has to receive
+     */
+    private int threadsOf(int stage) {
+        return stage < stageThreads.size() ? stageThreads.get(stage) : 1;
+    }
+
+    private void discover(Iterator<T> items, Semaphore inFlight, int endMarkers) {
+        StageStatistics stats = statistics.get(0);
+        long sequence = 0;
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                boolean hasNext = items.hasNext();
+                T item = hasNext ? items.next() : null;
+                stats.busyNanos.addAndGet(System.nanoTime() - start);
+                if (!hasNext) {
+                    break;
+                }
+                start = System.nanoTime();
+                inFlight.acquire();
+                put(0, new Envelope<>(sequence++, item));
+                stats.outputWaitNanos.addAndGet(System.nanoTime() - start);
+                stats.items.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            // the documents found so far are still converted
+            e.printStackTrace();
+        }
+        sendEnd(0, endMarkers);
+    }
+
+    private void process(int stage, AtomicInteger running) {
+        StageStatistics stats = statistics.get(stage + 1);
+        UnaryOperator<T> function = stageFunctions.get(stage);
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                Envelope<T> envelope = queues.get(stage).take();
+                stats.inputWaitNanos.addAndGet(System.nanoTime() - start);
+                if (envelope.isEnd()) {
+                    break;
+                }
+
+                start = System.nanoTime();
+                T result = null;
+                if (envelope.item != null) {
+                    try {
+                        result = function.apply(envelope.item);
+                    } catch (Throwable e) {
+                        // a lost item would stop the write stage, so any failure only drops the item
+                        e.printStackTrace();
+                    }
+                }
+                stats.busyNanos.addAndGet(System.nanoTime() - start);
+                stats.items.incrementAndGet();
+
+                start = System.nanoTime();
+                // dropped items are passed on empty, so the write stage knows their place in the order is done
+                put(stage + 1, new Envelope<>(envelope.sequence, result));
+                stats.outputWaitNanos.addAndGet(System.nanoTime() - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (running.decrementAndGet() == 0 && !Thread.currentThread().isInterrupted()) {
+                try {
+                    sendEnd(stage + 1, threadsOf(stage + 1));
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void write(Consumer<T> writer, Semaphore inFlight) throws InterruptedException {
+        StageStatistics stats = statistics.get(statistics.size() - 1);
+        BlockingQueue<Envelope<T>> queue = queues.get(queues.size() - 1);
+        Map<Long, Envelope<T>> waiting = new HashMap<>();
+        long next = 0;
+        while (true) {
+            long start = System.nanoTime();
+            Envelope<T> envelope = queue.take();
+            stats.inputWaitNanos.addAndGet(System.nanoTime() - start);
+            if (envelope.isEnd()) {
+                break;
+            }
+            waiting.put(envelope.sequence, envelope);
+            while ((envelope = waiting.remove(next)) != null) {
+                next++;
+                writeItem(writer, envelope, inFlight, stats);
+            }
+        }
+        // items lost by a failing stage leave gaps, the remaining items are still written in order
+        List<Long> remaining = new ArrayList<>(waiting.keySet());
+        Collections.sort(remaining);
+        for (long sequence : remaining) {
+            writeItem(writer, waiting.get(sequence), inFlight, stats);
+        }
+    }
+
+    private void writeItem(Consumer<T> writer, Envelope<T> envelope, Semaphore inFlight, StageStatistics stats) {
+        long start = System.nanoTime();
+        try {
+            if (envelope.item != null) {
+                writer.accept(envelope.item);
+            }
+        } finally {
+            inFlight.release();
+            stats.busyNanos.addAndGet(System.nanoTime() - start);
+            stats.items.incrementAndGet();
+        }
+    }
+
+    private void put(int queue, Envelope<T> envelope) throws InterruptedException {
+        BlockingQueue<Envelope<T>> target = queues.get(queue);
+        target.put(envelope);
+        statistics.get(queue + 1).recordDepth(target.size());
+    }
+
+    /**
+     * puts an end marker for every thread of the stage into its queue
+     */
+    private void sendEnd(int queue, int count) {
+        try {
+            for (int i = 0; i < count; i++) {
+                queues.get(queue).put(Envelope.<T>end());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * An item together with its place in the order of the discovery.
+     */
+    private static class Envelope<T> {
+        private static final Envelope<?> END = new Envelope<>(-1, null);
+
+        private final long sequence;
+        private final T item;
+
+        Envelope(long sequence, T item) {
+            this.sequence = sequence;
+            this.item = item;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> Envelope<T> end() {
+            return (Envelope<T>) END;
+        }
+
+        boolean isEnd() {
+            return this == END;
+        }
+    }
+
+    /**
+     * Counters of a single stage. The wait times are summed over all threads of the stage.
+     */
+    public static class StageStatistics {
+        private final String name;
+        private final int threads;
+        // queue in front of the stage, null for the discovery
+        private final BlockingQueue<?> queue;
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong inputWaitNanos = new AtomicLong();
+        private final AtomicLong outputWaitNanos = new AtomicLong();
+        private final AtomicLong depthSum = new AtomicLong();
+        private final AtomicLong depthSamples = new AtomicLong();
+        private final AtomicLong maxDepth = new AtomicLong();
+
+        StageStatistics(String name, int threads, BlockingQueue<?> queue) {
+            this.name = name;
+            this.threads = threads;
+            this.queue = queue;
+        }
+
+        private void recordDepth(int depth) {
+            depthSum.addAndGet(depth);
+            depthSamples.incrementAndGet();
+            long currentMax;
+            while (depth > (currentMax = maxDepth.get()) && !maxDepth.compareAndSet(currentMax, depth)) {
+                // retry until the maximum is updated or a larger depth was recorded
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public long getItems() {
+            return items.get();
+        }
+
+        public long getBusyMillis() {
+            return busyNanos.get() / 1000000;
+        }
+
+        /**
+         * @return time the threads of the stage waited for an item from the stage before
+         */
+        public long getInputWaitMillis() {
+            return inputWaitNanos.get() / 1000000;
+        }
+
+        /**
+         * @return time the threads of the stage waited for space in the queue of the next stage
+         */
+        public long getOutputWaitMillis() {
+            return outputWaitNanos.get() / 1000000;
+        }
+
+        /**
+         * @return largest number of items found in the queue in front of the stage after adding an item
+         */
+        public long getMaxQueueDepth() {
+            return maxDepth.get();
+        }
+
+        /**
+         * @return mean number of items in the queue in front of the stage after adding an item
+         */
+        public double getMeanQueueDepth() {
+            long samples = depthSamples.get();
+            return samples == 0 ? 0 : (double) depthSum.get() / samples;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %d threads, %d items, busy %d ms, waited %d ms for input "
+                            + "and %d ms for the next stage, queue depth mean %.1f max %d", name, threads,
+                    getItems(), getBusyMillis(), getInputWaitMillis(), getOutputWaitMillis(), getMeanQueueDepth(),
+                    getMaxQueueDepth());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of converting a single .txt .ann file pair: the tokens of the text and the label of each token. If the
+ * documents are split into sentences it also holds where the sentences of the text start.
+ */
+public class ConvertedDocument {
+    private final String name;
+    private final List<String> tokens;
+    private final List<String> labels;
+    private final int matchedAnnotations;
+    private final int unmatchedAnnotations;
+    private final List<Integer> sentenceStarts;
+
+    /**
+     * constructor that takes all relevant information of a converted document
+     * @param name name of the text without file ending
+     * @param tokens tokens of the text
+     * @param labels label of each token, "O" for tokens which are not annotated
+     * @param matchedAnnotations number of annotations which were assigned to tokens
+     * @param unmatchedAnnotations number of annotations which did not match any token
+     */
+    ConvertedDocument(String name, List<String> tokens, List<String> labels, int matchedAnnotations,
+                      int unmatchedAnnotations) {
+        this(name, tokens, labels, matchedAnnotations, unmatchedAnnotations, Collections.<Integer>emptyList());
+    }
+
+    /**
+     * @param name name of the text without file ending
+     * @param tokens tokens of the text
+     * @param labels label of each token, "O" for tokens which are not annotated
+     * @param matchedAnnotations number of annotations which were assigned to tokens
+     * @param unmatchedAnnotations number of annotations which did not match any token
+     * @param sentenceStarts index of the first token of every sentence but the first, see
+     *                       SequenceSplitter.findSentenceStarts()
+     */
+    ConvertedDocument(String name, List<String> tokens, List<String> labels, int matchedAnnotations,
+                      int unmatchedAnnotations, List<Integer> sentenceStarts) {
+        this.name = name;
+        this.tokens = tokens;
+        this.labels = labels;
+        this.matchedAnnotations = matchedAnnotations;
+        this.unmatchedAnnotations = unmatchedAnnotations;
+        this.sentenceStarts = sentenceStarts;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public int getMatchedAnnotations() {
+        return matchedAnnotations;
+    }
+
+    public int getUnmatchedAnnotations() {
+        return unmatchedAnnotations;
+    }
+
+    /**
+     * @return index of the first token of every sentence but the first, empty if the sentences were not searched
+     */
+    public List<Integer> getSentenceStarts() {
+        return sentenceStarts;
+    }
+}
@@ -0,0 +1,350 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Finds exact and near duplicate documents of a corpus before it is converted, so re-annotated copies of the same
+ * text are converted and trained on only once. Documents are exact duplicates if their texts are equal after the
+ * ascii normalization and with all whitespace runs replaced by a single space. Near duplicates are found by
+ * MinHash over the shingles of SHINGLE_SIZE words of the normalized, lower cased text: documents whose signatures
+ * fall into the same bucket of one of the LSH bands are compared, and documents whose estimated Jaccard similarity
+ * is at least the configured similarity end up in the same cluster. Of every cluster one document is kept,
+ * chosen by the KeepPolicy, the others are skipped by select().
+ * Signatures are computed by any number of threads at the same time with signature(), and added in the order of
+ * the corpus with add(). Only the signature of every document is kept, less than a kilobyte independent of the size
+ * of the document, never its text.
+ */
+public class CorpusDeduplicator {
+    public static final double DEFAULT_SIMILARITY = 0.8;
+    static final int SHINGLE_SIZE = 5;
+    // 16 bands of 8 rows find 95% of the pairs with a similarity of 0.8 and almost none below 0.5
+    private static final int BANDS = 16;
+    private static final int ROWS = 8;
+    private static final int HASHES = BANDS * ROWS;
+    // comparisons of a document with earlier documents of the same bucket, keeps huge buckets linear
+    private static final int MAX_BUCKET_COMPARISONS = 64;
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        Random random = new Random(0x5eed);
+        for (int i = 0; i < HASHES; i++) {
+            SEEDS[i] = random.nextLong();
+        }
+    }
+
+    private final AsciiNormalizer normalizer;
+    private final LabelSchema schema;
+    private final ConversionOptions.KeepPolicy policy;
+    private final double similarity;
+    private final List<Signature> signatures = new ArrayList<>();
+    // name of every skipped document, mapped to the name of the document kept instead
+    private final Map<String, String> duplicates = new LinkedHashMap<>();
+    private final long startTime = System.nanoTime();
+    private int exactDuplicates = 0;
+    private int nearDuplicates = 0;
+    private long keptTextBytes = 0;
+    private long removedTextBytes = 0;
+    private long millis = -1;
+
+    /**
+     * @param normalizer normalizer applied to the texts before they are compared, the one of the conversion
+     * @param schema labels whose annotations are counted for KeepPolicy.MOST_ANNOTATIONS
+     * @param policy chooses the document which is kept of every cluster
+     * @param similarity estimated Jaccard similarity of the word shingles from which on documents are near
+     *                   duplicates, 1 to only remove exact duplicates
+     */
+    public CorpusDeduplicator(AsciiNormalizer normalizer, LabelSchema schema, ConversionOptions.KeepPolicy policy,
+                              double similarity) {
+        if (similarity <= 0 || similarity > 1) {
+            throw new IllegalArgumentException("similarity must be larger than 0 and at most 1 but was: "
+                    + similarity);
+        }
+        this.normalizer = normalizer;
+        this.schema = schema;
+        this.policy = policy;
+        this.similarity = similarity;
+    }
+
+    /**
+     * reads a document and computes its signature, can be called by several threads at the same time
+     * @param document a document of the corpus
+     * @return the signature of the document
+     * @throws IOException if the text or the annotations could not be read
+     */
+    public Signature signature(DocumentPair document) throws IOException {
+        String text = normalizer.normalize(document.readText());
+        String[] words = text.trim().isEmpty() ? new String[0] : text.trim().split("\\s+");
+        String exactHash = ConversionCache.hash(String.join(" ", words).getBytes(StandardCharsets.UTF_8));
+
+        int[] minHashes = new int[HASHES];
+        Arrays.fill(minHashes, Integer.MAX_VALUE);
+        int shingles = words.length == 0 ? 0 : Math.max(1, words.length - SHINGLE_SIZE + 1);
+        for (int start = 0; start < shingles; start++) {
+            long shingle = hashShingle(words, start, Math.min(words.length, start + SHINGLE_SIZE));
+            for (int i = 0; i < HASHES; i++) {
+                int hash = (int) (mix(shingle ^ SEEDS[i]) >>> 33);
+                if (hash < minHashes[i]) {
+                    minHashes[i] = hash;
+                }
+            }
+        }
+
+        int annotations = 0;
+        for (String line : document.readAnnotationLines()) {
+            if (isTakenOver(line)) {
+                annotations++;
+            }
+        }
+        return new Signature(document.getName(), exactHash, shingles > 0 ? minHashes : null, annotations,
+                document.getAnnotationModified(), document.getTextLength());
+    }
+
+    /**
+     * @param signature signature of the next document of the corpus, in the order of the corpus
+     */
+    public void add(Signature signature) {
+        signatures.add(signature);
+    }
+
+    /**
+     * clusters the documents of all added signatures and chooses the document kept of every cluster
+     */
+    public void deduplicate() {
+        int[] parents = new int[signatures.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        // exact duplicates are joined first, only the first document of every text takes part in the LSH
+        Map<String, Integer> texts = new HashMap<>();
+        boolean[] candidates = new boolean[parents.length];
+        for (int i = 0; i < parents.length; i++) {
+            Integer first = texts.putIfAbsent(signatures.get(i).exactHash, i);
+            if (first != null) {
+                union(parents, first, i);
+            } else {
+                candidates[i] = signatures.get(i).minHashes != null && similarity < 1;
+            }
+        }
+        for (int band = 0; band < BANDS; band++) {
+            joinBand(parents, candidates, band);
+        }
+
+        Map<Integer, Integer> kept = new HashMap<>();
+        for (int i = 0; i < parents.length; i++) {
+            kept.merge(find(parents, i), i, (current, next) -> isBetter(next, current) ? next : current);
+        }
+        for (int i = 0; i < parents.length; i++) {
+            Signature signature = signatures.get(i);
+            Signature keptSignature = signatures.get(kept.get(find(parents, i)));
+            if (signature == keptSignature) {
+                keptTextBytes += signature.textBytes;
+                continue;
+            }
+            duplicates.put(signature.name, keptSignature.name);
+            removedTextBytes += signature.textBytes;
+            if (signature.exactHash.equals(keptSignature.exactHash)) {
+                exactDuplicates++;
+            } else {
+                nearDuplicates++;
+            }
+        }
+        signatures.clear();
+        millis = (System.nanoTime() - startTime) / 1_000_000;
+    }
+
+    /**
+     * @param documents documents of the corpus, in the order the signatures were added
+     * @return the documents without the skipped duplicates
+     */
+    public Iterable<DocumentPair> select(Iterable<DocumentPair> documents) {
+        return () -> new Iterator<DocumentPair>() {
+            private final Iterator<DocumentPair> all = documents.iterator();
+            private DocumentPair next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && all.hasNext()) {
+                    DocumentPair document = all.next();
+                    if (!duplicates.containsKey(document.getName())) {
+                        next = document;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public DocumentPair next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                DocumentPair document = next;
+                next = null;
+                return document;
+            }
+        };
+    }
+
+    /**
+     * @return name of every skipped document, mapped to the name of the document kept instead
+     */
+    public Map<String, String> getDuplicates() {
+        return Collections.unmodifiableMap(duplicates);
+    }
+
+    public int getExactDuplicates() {
+        return exactDuplicates;
+    }
+
+    public int getNearDuplicates() {
+        return nearDuplicates;
+    }
+
+    /**
+     * @return time from creating the deduplicator until the duplicates were found, in milliseconds
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * estimates the time the skipped duplicates would have taken, from the time the kept documents took
+     * @param conversionMillis time the conversion of the kept documents took, in milliseconds
+     * @return estimated time saved, in milliseconds
+     */
+    public long estimateSavedMillis(long conversionMillis) {
+        return keptTextBytes == 0 ? 0 : conversionMillis * removedTextBytes / keptTextBytes;
+    }
+
+    /**
+     * joins the candidates whose rows of the band are equal and whose signatures are similar enough. The band
+     * hashes are sorted instead of kept in hash maps, so only one long per document is needed at a time.
+     */
+    private void joinBand(int[] parents, boolean[] candidates, int band) {
+        long[] entries = new long[parents.length];
+        int count = 0;
+        for (int i = 0; i < parents.length; i++) {
+            if (candidates[i]) {
+                int[] minHashes = signatures.get(i).minHashes;
+                long hash = band;
+                for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+                    hash = mix(hash * 31 + minHashes[row]);
+                }
+                entries[count++] = (hash & 0xffffffff00000000L) | i;
+            }
+        }
+        Arrays.sort(entries, 0, count);
+        int bucketStart = 0;
+        for (int entry = 1; entry <= count; entry++) {
+            if (entry < count && (entries[entry] >>> 32) == (entries[bucketStart] >>> 32)) {
+                int document = (int) entries[entry];
+                for (int other = Math.max(bucketStart, entry - MAX_BUCKET_COMPARISONS); other < entry; other++) {
+                    int otherDocument = (int) entries[other];
+                    if (find(parents, otherDocument) != find(parents, document)
+                            && estimateSimilarity(signatures.get(otherDocument), signatures.get(document))
+                            >= similarity) {
+                        union(parents, otherDocument, document);
+                        break;
+                    }
+                }
+            } else {
+                bucketStart = entry;
+            }
+        }
+    }
+
+    /**
+     * @return true if the document a should be kept instead of the document b, which comes earlier in the corpus
+     */
+    private boolean isBetter(int a, int b) {
+        Signature signatureA = signatures.get(a);
+        Signature signatureB = signatures.get(b);
+        switch (policy) {
+            case MOST_ANNOTATIONS:
+                return signatureA.annotations > signatureB.annotations;
+            case NEWEST:
+                return signatureA.annotationModified > signatureB.annotationModified;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if the line is a text bound annotation with a label which is taken over
+     */
+    private boolean isTakenOver(String line) {
+        int labelStart = line.indexOf('\t') + 1;
+        int labelEnd = line.indexOf(' ', labelStart);
+        return line.startsWith("T") && labelStart > 0 && labelEnd > 0
+                && schema.getId(line, labelStart, labelEnd) >= 0;
+    }
+
+    private static double estimateSimilarity(Signature a, Signature b) {
+        int equal = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (a.minHashes[i] == b.minHashes[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / HASHES;
+    }
+
+    private static long hashShingle(String[] words, int start, int end) {
+        // FNV-1a over the lower cased chars, with a separator between the words
+        long hash = 0xcbf29ce484222325L;
+        for (int word = start; word < end; word++) {
+            String value = words[word];
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ Character.toLowerCase(value.charAt(i))) * 0x100000001b3L;
+            }
+            hash = (hash ^ ' ') * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * the finalizer of MurmurHash3, spreads every input bit over all output bits
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    private static int find(int[] parents, int document) {
+        while (parents[document] != document) {
+            parents[document] = parents[parents[document]];
+            document = parents[document];
+        }
+        return document;
+    }
+
+    private static void union(int[] parents, int a, int b) {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+        // the earlier document becomes the root, so the clusters do not depend on the order of the joins
+        parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+    }
+
+    /**
+     * What is kept of a document to find its duplicates.
+     */
+    public static class Signature {
+        private final String name;
+        private final String exactHash;
+        // null if the document has no words
+        private final int[] minHashes;
+        private final int annotations;
+        private final long annotationModified;
+        private final long textBytes;
+
+        Signature(String name, String exactHash, int[] minHashes, int annotations, long annotationModified,
+                  long textBytes) {
+            this.name = name;
+            this.exactHash = exactHash;
+            this.minHashes = minHashes;
+            this.annotations = annotations;
+            this.annotationModified = annotationModified;
+            this.textBytes = textBytes;
+        }
+    }
+}
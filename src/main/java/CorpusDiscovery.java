@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Finds all .txt files with an according .ann file in a directory and its sub directories, like the nested
+ * collections of brat. Directories are read one at a time with a DirectoryStream and their pairs are returned
+ * before the next directory is read, so the converter can start before the whole corpus is listed. Within a
+ * directory the files are paired through a hash index of their names and returned in name order, sub directories
+ * follow in name order, so the order of the documents does not depend on the file system.
+ */
+public class CorpusDiscovery implements Iterable<DocumentPair> {
+    private static final String TEXT_ENDING = ".txt";
+    private static final String ANNOTATION_ENDING = ".ann";
+
+    private final Path root;
+    private final GlobFilter filter;
+
+    /**
+     * @param root directory in which the documents are searched
+     * @param includeGlobs glob patterns for the path of the .txt file relative to root, e.g. "news/**", only
+     *                     matching documents are returned. All documents are returned if the list is empty.
+     * @param excludeGlobs glob patterns for the path of the .txt file relative to root, matching documents are
+     *                     skipped
+     */
+    public CorpusDiscovery(Path root, List<String> includeGlobs, List<String> excludeGlobs) {
+        this.root = root;
+        this.filter = new GlobFilter(root.getFileSystem(), includeGlobs, excludeGlobs);
+    }
+
+    /**
+     * @param root directory in which all documents are searched
+     */
+    public CorpusDiscovery(Path root) {
+        this(root, Collections.<String>emptyList(), Collections.<String>emptyList());
+    }
+
+    @Override
+    public Iterator<DocumentPair> iterator() {
+        return new PairIterator();
+    }
+
+    /**
+     * reads a single directory
+     * @param directory directory which should be read
+     * @param subdirectories receives the sub directories of the directory in name order
+     * @return all document pairs in the directory in name order
+     */
+    private List<DocumentPair> scanDirectory(Path directory, List<Path> subdirectories) {
+        Map<String, Path> textFiles = new HashMap<>();
+        Set<String> annotationStems = new HashSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isDirectory()) {
+                    subdirectories.add(entry);
+                    continue;
+                }
+                // directories are walked even if they are named like a document, links are followed to files only
+                boolean regularFile = attributes.isSymbolicLink() ? Files.isRegularFile(entry)
+                        : attributes.isRegularFile();
+                String fileName = entry.getFileName().toString();
+                if (regularFile && fileName.endsWith(TEXT_ENDING)) {
+                    textFiles.put(fileName.substring(0, fileName.length() - TEXT_ENDING.length()), entry);
+                } else if (regularFile && fileName.endsWith(ANNOTATION_ENDING)) {
+                    annotationStems.add(fileName.substring(0, fileName.length() - ANNOTATION_ENDING.length()));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("could not read directory " + directory + ": " + e.getMessage());
+        }
+        Collections.sort(subdirectories);
+
+        List<String> stems = new ArrayList<>(textFiles.keySet());
+        Collections.sort(stems);
+        List<DocumentPair> pairs = new ArrayList<>();
+        for (String stem : stems) {
+            Path textFile = textFiles.get(stem);
+            if (annotationStems.contains(stem) && filter.isIncluded(root.relativize(textFile))) {
+                String name = root.relativize(directory.resolve(stem)).toString()
+                        .replace(directory.getFileSystem().getSeparator(), "/");
+                pairs.add(new DocumentPair(name, directory, stem));
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Walks the directory tree depth first, reading the next directory only when the pairs of the current one
+     * are used up.
+     */
+    private class PairIterator implements Iterator<DocumentPair> {
+        private final Deque<Path> directories = new ArrayDeque<>();
+        private Iterator<DocumentPair> currentPairs = Collections.emptyIterator();
+
+        PairIterator() {
+            directories.push(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!currentPairs.hasNext() && !directories.isEmpty()) {
+                List<Path> subdirectories = new ArrayList<>();
+                currentPairs = scanDirectory(directories.pop(), subdirectories).iterator();
+                for (int i = subdirectories.size() - 1; i >= 0; i--) {
+                    directories.push(subdirectories.get(i));
+                }
+            }
+            return currentPairs.hasNext();
+        }
+
+        @Override
+        public DocumentPair next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return currentPairs.next();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps converting a directory while annotators work on it. The directory tree is watched with a WatchService;
+ * after a change of a .txt or .ann file the watcher waits until no further change arrived for the debounce time,
+ * so a burst of saves leads to a single conversion, and then updates the merged file. Only the place of every
+ * document in the merged file is kept in memory: the changed documents are read and converted again and the
+ * lines of the unchanged documents are copied from the previous merged file, so the memory needed does not grow
+ * with the size of the merged file. If the merged file was changed by someone else, all documents are converted
+ * again. The corpus is only listed again if documents were added or directories changed, which reads the
+ * directory entries but no documents. The merged file is replaced in a single step, so a training reading it
+ * never sees a half written file.
+ * With deduplication the whole corpus is converted again after every change, since the document which is kept of
+ * a cluster of duplicates depends on all documents; the conversion cache saves converting the unchanged ones.
+ */
+public class CorpusWatcher {
+    private static final String TEXT_ENDING = ".txt";
+    private static final String ANNOTATION_ENDING = ".ann";
+    // a burst which never becomes quiet is converted after this many debounce times
+    private static final int MAX_DEBOUNCE_ROUNDS = 10;
+
+    private final FileParser parser;
+    private final Path input;
+    private final String outputPath;
+    private final String outputFileName;
+    private final List<String> allowedLabels;
+    private final ConversionOptions options;
+    private final long debounceMillis;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    // the place of every document in the merged file by its name, in the order of CorpusDiscovery
+    private Map<String, WatchedDocument> documents = new LinkedHashMap<>();
+    // length and modification time of the merged file when it was published
+    private long mergedFileLength;
+    private long mergedFileModified;
+
+    /**
+     * @param parser parser which converts the corpus
+     * @param input directory which contains the .txt and .ann files
+     * @param outputPath directory where the merged file is created
+     * @param outputFileName name of the merged file without the .tsv ending
+     * @param allowedLabels labels which are taken over from the .ann files
+     * @param options settings of the conversion runs, should name a cache directory so unchanged documents are
+     *                not converted again. They are marked as watching.
+     * @param debounceMillis time without changes after which the corpus is converted
+     * @throws IllegalArgumentException if the options can not be combined with the watch mode, see
+     * ConversionOptions.validate()
+     */
+    public CorpusWatcher(FileParser parser, Path input, String outputPath, String outputFileName,
+                         List<String> allowedLabels, ConversionOptions options, long debounceMillis) {
+        this.parser = parser;
+        this.input = input;
+        this.outputPath = outputPath;
+        this.outputFileName = outputFileName;
+        this.allowedLabels = allowedLabels;
+        this.options = options.setWatching(true).validate();
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * converts the corpus and afterwards after every change, until the thread is interrupted
+     * @throws IOException if the directory tree could not be watched
+     */
+    public void run() throws IOException {
+        try (WatchService watchService = input.getFileSystem().newWatchService()) {
+            // registered before the first conversion, so no change during the conversion is missed
+            registerTree(watchService, input);
+            convert(Collections.<String>emptySet(), true);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<String> changedDocuments = new TreeSet<>();
+                WatchKey key = watchService.take();
+                boolean rescan = handleEvents(watchService, key, changedDocuments);
+                int rounds = 0;
+                while (rounds++ < MAX_DEBOUNCE_ROUNDS
+                        && (key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    rescan |= handleEvents(watchService, key, changedDocuments);
+                }
+
+                if (rescan || !changedDocuments.isEmpty()) {
+                    System.out.println(changedDocuments.size() + " documents changed"
+                            + (rescan ? ", directories changed" : "") + ", converting again");
+                    convert(changedDocuments, rescan);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // the watch service is closed when the JVM shuts down
+        }
+    }
+
+    /**
+     * converts the changed documents and publishes the merged file
+     * @param changedDocuments names of the documents whose .txt or .ann file changed
+     * @param rescan true if the corpus has to be listed again
+     */
+    private void convert(Set<String> changedDocuments, boolean rescan) {
+        long start = System.currentTimeMillis();
+        if (options.isDeduplication()) {
+            parser.parseAnnotationFilesInDirectory(input.toString(), outputPath, outputFileName, allowedLabels,
+                    options);
+        } else {
+            File mergedFile = new File(outputPath, outputFileName + ".tsv");
+            if (!documents.isEmpty() && (mergedFile.length() != mergedFileLength
+                    || mergedFile.lastModified() != mergedFileModified)) {
+                System.out.println(mergedFile + " was changed, converting all documents again");
+                documents = new LinkedHashMap<>();
+            }
+            rescan |= documents.isEmpty();
+            for (String name : changedDocuments) {
+                // a new document has to be put into its place in the order of the corpus
+                rescan |= !documents.containsKey(name) && isPair(pairOf(name));
+            }
+            List<DocumentPair> corpus = new ArrayList<>();
+            if (rescan) {
+                new CorpusDiscovery(input, options.getIncludeGlobs(), options.getExcludeGlobs())
+                        .forEach(corpus::add);
+            } else {
+                documents.values().forEach(document -> corpus.add(document.pair));
+            }
+            List<DocumentPair> converted = new ArrayList<>();
+            for (DocumentPair pair : corpus) {
+                if (!documents.containsKey(pair.getName())
+                        || (changedDocuments.contains(pair.getName()) && isPair(pair))) {
+                    converted.add(pair);
+                }
+            }
+            if (!writeMergedFile(mergedFile, corpus, converted, changedDocuments)) {
+                // the changes are not in the merged file, so the next conversion starts over
+                documents = new LinkedHashMap<>();
+                return;
+            }
+        }
+        System.out.println("published " + outputFileName + ".tsv after " + (System.currentTimeMillis() - start)
+                + " ms, waiting for changes in " + input);
+    }
+
+    /**
+     * converts the documents into a temporary file, copies the unchanged documents between them from the previous
+     * merged file and replaces the merged file with it
+     * @param mergedFile merged file which is replaced
+     * @param corpus documents of the corpus in the order of the merged file
+     * @param converted documents of the corpus which are converted
+     * @param changedDocuments names of the documents whose .txt or .ann file changed
+     * @return true if the merged file was replaced
+     */
+    private boolean writeMergedFile(File mergedFile, List<DocumentPair> corpus, List<DocumentPair> converted,
+                                    Set<String> changedDocuments) {
+        File temporaryFile = new File(mergedFile.getPath() + ".tmp");
+        MergedFileWriter writer;
+        try (FileChannel out = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FileChannel previous = documents.isEmpty() ? null : FileChannel.open(mergedFile.toPath())) {
+            writer = new MergedFileWriter(corpus.iterator(), changedDocuments, previous, out);
+            parser.convertToMergedLines(converted, allowedLabels, options, writer::write);
+            writer.finish();
+        } catch (IOException e) {
+            System.out.println("writing " + temporaryFile + " failed, " + mergedFile + " was not replaced: "
+                    + e.getMessage());
+            return false;
+        }
+        if (!FileParser.publishMergedFile(temporaryFile, mergedFile)) {
+            return false;
+        }
+        documents = writer.written;
+        mergedFileLength = mergedFile.length();
+        mergedFileModified = mergedFile.lastModified();
+        return true;
+    }
+
+    /**
+     * @param name name of a document relative to the input directory
+     * @return the .txt and .ann file of the document, which do not have to exist
+     */
+    private DocumentPair pairOf(String name) {
+        int slash = name.lastIndexOf('/');
+        Path directory = slash < 0 ? input : input.resolve(name.substring(0, slash));
+        return new DocumentPair(name, directory, name.substring(slash + 1));
+    }
+
+    /**
+     * @return true if the .txt and the .ann file of the document exist
+     */
+    private static boolean isPair(DocumentPair pair) {
+        return Files.isRegularFile(pair.getDirectory().resolve(pair.getTextName() + TEXT_ENDING))
+                && Files.isRegularFile(pair.getDirectory().resolve(pair.getTextName() + ANNOTATION_ENDING));
+    }
+
+    /**
+     * collects the documents changed by the events of a key
+     * @param watchService service new directories are registered with
+     * @param key signalled key
+     * @param changedDocuments receives the names of the changed documents relative to the input directory
+     * @return true if the directory tree changed or events were lost, so all documents have to be checked
+     */
+    private boolean handleEvents(WatchService watchService, WatchKey key, Set<String> changedDocuments) {
+        Path directory = directories.get(key);
+        boolean rescan = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                rescan = true;
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            String fileName = child.getFileName().toString();
+            // like CorpusDiscovery a new directory is watched even if it is named like a document
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    registerTree(watchService, child);
+                } catch (IOException e) {
+                    System.out.println("could not watch directory " + child + ": " + e.getMessage());
+                }
+                rescan = true;
+            } else if (fileName.endsWith(TEXT_ENDING) || fileName.endsWith(ANNOTATION_ENDING)) {
+                String name = input.relativize(child).toString().replace(input.getFileSystem().getSeparator(), "/");
+                changedDocuments.add(name.substring(0, name.lastIndexOf('.')));
+            }
+        }
+        if (!key.reset()) {
+            // the directory was deleted together with its documents
+            directories.remove(key);
+            rescan = true;
+        }
+        return rescan;
+    }
+
+    private void registerTree(WatchService watchService, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+                    throws IOException {
+                WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Writes the merged file in the order of the corpus: the lines of the converted documents as they arrive and
+     * the lines of the unchanged documents between them copied from the previous merged file. Changed documents
+     * whose conversion failed and deleted documents are left out.
+     */
+    private class MergedFileWriter {
+        private final Iterator<DocumentPair> corpus;
+        private final Set<String> changedDocuments;
+        private final FileChannel previous;
+        private final FileChannel out;
+        // the place of every written document in the new merged file
+        private final Map<String, WatchedDocument> written = new LinkedHashMap<>();
+        private IOException failure;
+
+        MergedFileWriter(Iterator<DocumentPair> corpus, Set<String> changedDocuments, FileChannel previous,
+                         FileChannel out) {
+            this.corpus = corpus;
+            this.changedDocuments = changedDocuments;
+            this.previous = previous;
+            this.out = out;
+        }
+
+        /**
+         * writes the lines of a converted document, after the unchanged documents in front of it
+         */
+        void write(String name, byte[] lines) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                DocumentPair pair = copyUnchangedDocuments(name);
+                written.put(name, new WatchedDocument(pair, out.position(), lines.length));
+                ByteBuffer buffer = ByteBuffer.wrap(lines);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            } catch (IOException e) {
+                // the conversion goes on, so the conversion cache is complete for the next attempt
+                failure = e;
+            }
+        }
+
+        /**
+         * writes the unchanged documents after the last converted one
+         * @throws IOException if a document could not be written
+         */
+        void finish() throws IOException {
+            if (failure == null) {
+                copyUnchangedDocuments(null);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        /**
+         * @param name name of the next converted document, null to copy all remaining documents
+         * @return the converted document, null if name is null
+         */
+        private DocumentPair copyUnchangedDocuments(String name) throws IOException {
+            while (corpus.hasNext()) {
+                DocumentPair pair = corpus.next();
+                if (pair.getName().equals(name)) {
+                    return pair;
+                }
+                WatchedDocument document = documents.get(pair.getName());
+                if (document == null || changedDocuments.contains(pair.getName())) {
+                    continue;
+                }
+                long position = out.position();
+                long copied = 0;
+                while (copied < document.length) {
+                    long transferred = previous.transferTo(document.offset + copied, document.length - copied, out);
+                    if (transferred <= 0) {
+                        throw new EOFException("the previous merged file ends inside of " + pair.getName());
+                    }
+                    copied += transferred;
+                }
+                written.put(pair.getName(), new WatchedDocument(pair, position, document.length));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The place of a document in the merged file.
+     */
+    private static class WatchedDocument {
+        private final DocumentPair pair;
+        private final long offset;
+        private final long length;
+
+        WatchedDocument(DocumentPair pair, long offset, long length) {
+            this.pair = pair;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
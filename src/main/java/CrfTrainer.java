@@ -0,0 +1,332 @@
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Trains Stanford NER CRF models directly from converted documents, without writing the merged TSV file, and
+ * evaluates them with k-fold cross-validation. The folds are trained in parallel, but only as many at the same
+ * time as the memory cap allows: every fold reserves its estimated memory before it starts training.
+ */
+public class CrfTrainer {
+    /** rough memory a CRF needs per training token for features, weights and the optimizer */
+    static final long ESTIMATED_BYTES_PER_TOKEN = 2 * 1024;
+    private static final long MINIMUM_FOLD_MEMORY = 64L * 1024 * 1024;
+    private static final int MEGABYTE = 1024 * 1024;
+
+    private final Properties properties;
+    private final int threads;
+    private final long memoryCap;
+    private final SequenceSplitter sequenceSplitter;
+
+    /**
+     * @param properties properties of the CRFClassifier, see defaultProperties()
+     * @param threads maximal number of folds trained at the same time
+     * @param memoryCap memory in bytes all folds trained at the same time may use together
+     */
+    public CrfTrainer(Properties properties, int threads, long memoryCap) {
+        this(properties, threads, memoryCap, null);
+    }
+
+    /**
+     * @param properties properties of the CRFClassifier, see defaultProperties()
+     * @param threads maximal number of folds trained at the same time
+     * @param memoryCap memory in bytes all folds trained at the same time may use together
+     * @param sequenceSplitter splits the documents into the sequences the CRF is trained and evaluated on, null
+     *                         to use whole documents as sequences
+     */
+    public CrfTrainer(Properties properties, int threads, long memoryCap, SequenceSplitter sequenceSplitter) {
+        this.properties = properties;
+        this.threads = threads;
+        this.memoryCap = memoryCap;
+        this.sequenceSplitter = sequenceSplitter;
+    }
+
+    /**
+     * @return the features of the Stanford NER example configuration, the columns are the ones of the merged file
+     */
+    public static Properties defaultProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("map", "word=0,answer=1");
+        properties.setProperty("useClassFeature", "true");
+        properties.setProperty("useWord", "true");
+        properties.setProperty("useNGrams", "true");
+        properties.setProperty("noMidNGrams", "true");
+        properties.setProperty("maxNGramLeng", "6");
+        properties.setProperty("usePrev", "true");
+        properties.setProperty("useNext", "true");
+        properties.setProperty("useSequences", "true");
+        properties.setProperty("usePrevSequences", "true");
+        properties.setProperty("maxLeft", "1");
+        properties.setProperty("useTypeSeqs", "true");
+        properties.setProperty("useTypeSeqs2", "true");
+        properties.setProperty("useTypeySequences", "true");
+        properties.setProperty("wordShape", "chris2useLC");
+        properties.setProperty("useDisjunctive", "true");
+        return properties;
+    }
+
+    /**
+     * trains a model on all documents
+     * @param documents converted documents
+     * @return the trained classifier
+     */
+    public CRFClassifier<CoreLabel> train(List<ConvertedDocument> documents) {
+        CRFClassifier<CoreLabel> classifier = new CRFClassifier<>(properties);
+        List<List<CoreLabel>> trainingData = new ArrayList<>(documents.size());
+        for (ConvertedDocument document : documents) {
+            trainingData.addAll(toSequences(toCoreLabels(document, true), document));
+        }
+        classifier.train(trainingData);
+        return classifier;
+    }
+
+    /**
+     * Splits the documents into k folds, document i belongs to fold i % k, and trains a model for every fold on the
+     * other folds. The model is evaluated on the documents of its fold.
+     * @param documents converted documents, at least k
+     * @param k number of folds
+     * @return result of every fold in fold order
+     * @throws InterruptedException if the thread is interrupted while waiting for the folds
+     */
+    public List<FoldResult> crossValidate(List<ConvertedDocument> documents, int k) throws InterruptedException {
+        if (k < 2 || documents.size() < k) {
+            throw new IllegalArgumentException("cross-validation with " + k + " folds needs at least " + k
+                    + " documents and k >= 2, got " + documents.size() + " documents");
+        }
+        int memoryPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryCap / MEGABYTE));
+        Semaphore memory = new Semaphore(memoryPermits);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, k));
+        try {
+            List<Future<FoldResult>> futures = new ArrayList<>();
+            for (int fold = 0; fold < k; fold++) {
+                List<ConvertedDocument> trainingDocuments = new ArrayList<>();
+                List<ConvertedDocument> testDocuments = new ArrayList<>();
+                for (int i = 0; i < documents.size(); i++) {
+                    (i % k == fold ? testDocuments : trainingDocuments).add(documents.get(i));
+                }
+                int foldNumber = fold + 1;
+                int permits = (int) Math.min(memoryPermits, estimateMemory(trainingDocuments) / MEGABYTE + 1);
+                futures.add(executor.submit(() -> {
+                    memory.acquire(permits);
+                    try {
+                        return runFold(foldNumber, trainingDocuments, testDocuments);
+                    } finally {
+                        memory.release(permits);
+                    }
+                }));
+            }
+
+            List<FoldResult> results = new ArrayList<>();
+            for (Future<FoldResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("training of a fold failed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param results results of all folds
+     * @return precision, recall and F1 over the entities of all folds and the mean training time
+     */
+    public static String summarize(List<FoldResult> results) {
+        long trainingMillis = 0;
+        for (FoldResult result : results) {
+            trainingMillis += result.getTrainingMillis();
+        }
+        FoldResult total = total(results);
+        return String.format(Locale.ROOT, "all folds: mean training time %.1f s, precision %.3f, recall %.3f, "
+                        + "F1 %.3f", trainingMillis / 1000.0 / Math.max(1, results.size()), total.getPrecision(),
+                total.getRecall(), total.getF1());
+    }
+
+    /**
+     * @param results results of all folds
+     * @return the entities of all folds together, as result of fold 0
+     */
+    public static FoldResult total(List<FoldResult> results) {
+        int correct = 0;
+        int predicted = 0;
+        int gold = 0;
+        long trainingMillis = 0;
+        for (FoldResult result : results) {
+            correct += result.getCorrectEntities();
+            predicted += result.getPredictedEntities();
+            gold += result.getGoldEntities();
+            trainingMillis += result.getTrainingMillis();
+        }
+        return new FoldResult(0, 0, 0, trainingMillis, correct, predicted, gold);
+    }
+
+    /**
+     * @param documents training documents of a fold
+     * @return memory in bytes the training of the documents is expected to need
+     */
+    static long estimateMemory(List<ConvertedDocument> documents) {
+        long tokens = 0;
+        for (ConvertedDocument document : documents) {
+            tokens += document.getTokens().size();
+        }
+        return Math.max(MINIMUM_FOLD_MEMORY, tokens * ESTIMATED_BYTES_PER_TOKEN);
+    }
+
+    private FoldResult runFold(int fold, List<ConvertedDocument> trainingDocuments,
+                               List<ConvertedDocument> testDocuments) {
+        long start = System.nanoTime();
+        CRFClassifier<CoreLabel> classifier = train(trainingDocuments);
+        long trainingNanos = System.nanoTime() - start;
+
+        int correct = 0;
+        int predicted = 0;
+        int gold = 0;
+        for (ConvertedDocument document : testDocuments) {
+            // the entities are compared per document, also if the sequences are classified separately
+            List<String> predictedLabels = new ArrayList<>(document.getTokens().size());
+            for (List<CoreLabel> sequence : toSequences(toCoreLabels(document, false), document)) {
+                for (CoreLabel token : classifier.classify(sequence)) {
+                    predictedLabels.add(token.get(CoreAnnotations.AnswerAnnotation.class));
+                }
+            }
+            Set<String> goldEntities = entities(document.getLabels());
+            Set<String> predictedEntities = entities(predictedLabels);
+            gold += goldEntities.size();
+            predicted += predictedEntities.size();
+            predictedEntities.retainAll(goldEntities);
+            correct += predictedEntities.size();
+        }
+        return new FoldResult(fold, trainingDocuments.size(), testDocuments.size(), trainingNanos / 1000000,
+                correct, predicted, gold);
+    }
+
+    /**
+     * @param document converted document
+     * @param withAnswers true if the labels should be set as answers, for training
+     * @return the tokens of the document in the format of the CRFClassifier
+     */
+    private static List<CoreLabel> toCoreLabels(ConvertedDocument document, boolean withAnswers) {
+        List<CoreLabel> labels = new ArrayList<>(document.getTokens().size());
+        for (int i = 0; i < document.getTokens().size(); i++) {
+            CoreLabel label = new CoreLabel();
+            label.setWord(document.getTokens().get(i));
+            label.setValue(document.getTokens().get(i));
+            if (withAnswers) {
+                label.set(CoreAnnotations.AnswerAnnotation.class, document.getLabels().get(i));
+            }
+            labels.add(label);
+        }
+        return labels;
+    }
+
+    /**
+     * @param tokens tokens of the document in the format of the CRFClassifier
+     * @param document the converted document
+     * @return the sequences of the document, the whole document if no sequence splitter is set
+     */
+    private List<List<CoreLabel>> toSequences(List<CoreLabel> tokens, ConvertedDocument document) {
+        if (sequenceSplitter == null) {
+            return Collections.singletonList(tokens);
+        }
+        List<List<CoreLabel>> sequences = new ArrayList<>();
+        int start = 0;
+        for (int cut : sequenceSplitter.split(document.getTokens(), document.getLabels(),
+                document.getSentenceStarts())) {
+            sequences.add(tokens.subList(start, cut));
+            start = cut;
+        }
+        sequences.add(tokens.subList(start, tokens.size()));
+        return sequences;
+    }
+
+    /**
+     * @param labels label of every token
+     * @return every run of tokens with the same label other than "O", as "start end label"
+     */
+    private static Set<String> entities(List<String> labels) {
+        Set<String> entities = new HashSet<>();
+        int start = -1;
+        for (int i = 0; i <= labels.size(); i++) {
+            String label = i < labels.size() ? labels.get(i) : "O";
+            if (start >= 0 && !label.equals(labels.get(start))) {
+                entities.add(start + " " + i + " " + labels.get(start));
+                start = -1;
+            }
+            if (start < 0 && !label.equals("O")) {
+                start = i;
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * Training time and entity level evaluation of a single fold.
+     */
+    public static class FoldResult {
+        private final int fold;
+        private final int trainingDocuments;
+        private final int testDocuments;
+        private final long trainingMillis;
+        private final int correctEntities;
+        private final int predictedEntities;
+        private final int goldEntities;
+
+        FoldResult(int fold, int trainingDocuments, int testDocuments, long trainingMillis, int correctEntities,
+                   int predictedEntities, int goldEntities) {
+            this.fold = fold;
+            this.trainingDocuments = trainingDocuments;
+            this.testDocuments = testDocuments;
+            this.trainingMillis = trainingMillis;
+            this.correctEntities = correctEntities;
+            this.predictedEntities = predictedEntities;
+            this.goldEntities = goldEntities;
+        }
+
+        public int getFold() {
+            return fold;
+        }
+
+        public long getTrainingMillis() {
+            return trainingMillis;
+        }
+
+        public int getCorrectEntities() {
+            return correctEntities;
+        }
+
+        public int getPredictedEntities() {
+            return predictedEntities;
+        }
+
+        public int getGoldEntities() {
+            return goldEntities;
+        }
+
+        public double getPrecision() {
+            return predictedEntities == 0 ? 0 : (double) correctEntities / predictedEntities;
+        }
+
+        public double getRecall() {
+            return goldEntities == 0 ? 0 : (double) correctEntities / goldEntities;
+        }
+
+        public double getF1() {
+            double precision = getPrecision();
+            double recall = getRecall();
+            return precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "fold %d: %d training documents, %d test documents, trained in %.1f s, "
+                            + "precision %.3f, recall %.3f, F1 %.3f", fold, trainingDocuments, testDocuments,
+                    trainingMillis / 1000.0, getPrecision(), getRecall(), getF1());
+        }
+    }
+}
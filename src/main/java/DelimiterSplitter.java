@@ -0,0 +1,188 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits tokens at delimiter characters and reports the boundaries of the parts, without creating intermediate
+ * lists or strings. Removed delimiters (by default the space) only separate parts, kept delimiters (by default
+ * "-", ",", "&" and ".") become parts of their own.
+ * The parts are the same as those of the former chain of String.split() calls, which applied the delimiters one
+ * after another, each to the parts produced by the previous ones: delimiters at the end of a part are dropped and a
+ * part which consists of kept delimiters only is not split. Every character is looked up once in a table of the
+ * delimiter levels and the token is scanned once, keeping only the state of the deepest level whose part is open.
+ */
+public class DelimiterSplitter {
+    public static final String DEFAULT_REMOVED_DELIMITERS = " ";
+    public static final String DEFAULT_KEPT_DELIMITERS = "-,&.";
+
+    private static final int ASCII = 128;
+
+    private final char[] delimiters;
+    private final boolean[] kept;
+    // level of every ascii character, delimiters.length for characters which are no delimiter
+    private final int[] asciiLevels = new int[ASCII];
+    private final boolean nonAsciiDelimiters;
+    // true if a part of the delimiters of a level only is kept by this and all later levels
+    private final boolean[] keptAsPart;
+
+    /**
+     * Receives the boundaries of the parts of a token.
+     */
+    public interface BoundaryConsumer {
+        /**
+         * @param start start position of the part in the token
+         * @param end end position of the part in the token (exclusive)
+         */
+        void accept(int start, int end);
+    }
+
+    /**
+     * creates a splitter with the default delimiters
+     */
+    public DelimiterSplitter() {
+        this(DEFAULT_REMOVED_DELIMITERS, DEFAULT_KEPT_DELIMITERS);
+    }
+
+    /**
+     * creates a splitter which first applies all removed and then all kept delimiters, in the given order
+     * @param removedDelimiters delimiters which only separate parts
+     * @param keptDelimiters delimiters which become parts of their own
+     */
+    public DelimiterSplitter(String removedDelimiters, String keptDelimiters) {
+        String allDelimiters = removedDelimiters + keptDelimiters;
+        delimiters = allDelimiters.toCharArray();
+        kept = new boolean[delimiters.length];
+        for (int i = removedDelimiters.length(); i < kept.length; i++) {
+            kept[i] = true;
+        }
+
+        Arrays.fill(asciiLevels, delimiters.length);
+        boolean nonAscii = false;
+        keptAsPart = new boolean[delimiters.length];
+        for (int level = delimiters.length - 1; level >= 0; level--) {
+            char delimiter = delimiters[level];
+            if (delimiter < ASCII) {
+                asciiLevels[delimiter] = level;
+            } else {
+                nonAscii = true;
+            }
+            // a later level with the same delimiter sees such a part as delimiters only as well
+            keptAsPart[level] = kept[level];
+            for (int later = level + 1; later < delimiters.length; later++) {
+                if (delimiters[later] == delimiter) {
+                    keptAsPart[level] = kept[level] && keptAsPart[later];
+                    break;
+                }
+            }
+        }
+        nonAsciiDelimiters = nonAscii;
+    }
+
+    /**
+     * @return the delimiters in the order they are applied, used to detect configuration changes
+     */
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < delimiters.length; i++) {
+            description.append(kept[i] ? "kept " : "removed ").append(delimiters[i]).append(';');
+        }
+        return description.toString();
+    }
+
+    /**
+     * splits the token and reports every part in order
+     * @param token token which should be split
+     * @param consumer receives start and end of every part
+     */
+    public void split(CharSequence token, BoundaryConsumer consumer) {
+        int noDelimiter = delimiters.length;
+        // the parts of all levels below open contain other characters than their delimiter, only the part of the
+        // deepest open level may consist of delimiters so far. The parts of the levels between a delimiter and the
+        // next other character are not opened yet, noDelimiter is the level of the parts which are reported.
+        int open = 0;
+        int partStart = 0;
+        // start of the delimiters of the open level at the end of its part, -1 if there are none
+        int runStart = -1;
+        // true if the part of the open level contains other characters than its delimiter
+        boolean content = false;
+        int length = token.length();
+        for (int i = 0; i < length; i++) {
+            int level = levelOf(token.charAt(i));
+            if (level < open) {
+                // ends the parts of all deeper levels, the delimiter either splits its part or ends it
+                close(open, partStart, runStart, content, i, consumer);
+                open = level;
+                runStart = i;
+                content = true;
+            } else if (level == open) {
+                if (level < noDelimiter && runStart < 0) {
+                    runStart = i;
+                }
+            } else {
+                if (runStart >= 0) {
+                    // the delimiters are followed by other characters, so they split the part
+                    reportSplits(open, runStart, i, !content, consumer);
+                }
+                open = level;
+                partStart = i;
+                runStart = level < noDelimiter ? i : -1;
+                content = false;
+            }
+        }
+        close(open, partStart, runStart, content, length, consumer);
+    }
+
+    /**
+     * splits the token into its parts
+     * @param token token which should be split
+     * @return all parts of the token in order
+     */
+    public List<String> split(String token) {
+        List<String> parts = new ArrayList<>(2);
+        split(token, (start, end) -> parts.add(token.substring(start, end)));
+        return parts;
+    }
+
+    /**
+     * reports the parts around the delimiters from runStart to end, which split a part of the level
+     * @param leading true if the delimiters are at the start of the part, which puts an empty part before them
+     */
+    private void reportSplits(int level, int runStart, int end, boolean leading, BoundaryConsumer consumer) {
+        for (int i = runStart; i < end; i++) {
+            if (leading || i > runStart) {
+                consumer.accept(i, i);
+            }
+            if (keptAsPart[level]) {
+                consumer.accept(i, i + 1);
+            }
+        }
+    }
+
+    /**
+     * ends the part of the deepest open level at end and reports what is left of it
+     */
+    private void close(int level, int partStart, int runStart, boolean content, int end,
+                       BoundaryConsumer consumer) {
+        if (runStart < 0) {
+            consumer.accept(partStart, end);
+        } else if (!content && keptAsPart[level]) {
+            // the part consists of delimiters only, delimiters at the end of a part with content are dropped
+            consumer.accept(runStart, end);
+        }
+    }
+
+    private int levelOf(char character) {
+        if (character < ASCII) {
+            return asciiLevels[character];
+        }
+        if (nonAsciiDelimiters) {
+            for (int level = 0; level < delimiters.length; level++) {
+                if (delimiters[level] == character) {
+                    return level;
+                }
+            }
+        }
+        return delimiters.length;
+    }
+}
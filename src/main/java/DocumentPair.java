@@ -0,0 +1,97 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A .txt file together with its .ann file, found in the input directory or one of its sub directories.
+ * The contents are always read through this class, so documents which are not stored as files, like the entries
+ * of a corpus archive, can be converted the same way.
+ */
+public class DocumentPair {
+    private final String name;
+    private final Path directory;
+    private final String textName;
+
+    /**
+     * @param name path of the document relative to the input directory without file ending, separated by "/"
+     * @param directory directory which contains the .txt and .ann file, null if the document is not stored as files
+     * @param textName file name of the .txt and .ann file without ending
+     */
+    DocumentPair(String name, Path directory, String textName) {
+        this.name = name;
+        this.directory = directory;
+        this.textName = textName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public String getTextName() {
+        return textName;
+    }
+
+    /**
+     * @return the content of the .txt file
+     * @throws IOException if the text could not be opened
+     */
+    public InputStream openText() throws IOException {
+        return new FileInputStream(getTextFile());
+    }
+
+    /**
+     * @return the content of the .ann file
+     * @throws IOException if the annotations could not be opened
+     */
+    public InputStream openAnnotations() throws IOException {
+        return new FileInputStream(getAnnotationFile());
+    }
+
+    /**
+     * reads the text with every line followed by a space, the positions of the .ann file refer to this text
+     * @return text of the .txt file with lines separated by " "
+     * @throws IOException if the text could not be read
+     */
+    public String readText() throws IOException {
+        return TextInput.readText(getTextFile().toPath());
+    }
+
+    /**
+     * @return lines of the .ann file
+     * @throws IOException if the annotations could not be read
+     */
+    public List<String> readAnnotationLines() throws IOException {
+        return TextInput.readLines(getAnnotationFile().toPath());
+    }
+
+    public long getTextLength() {
+        return getTextFile().length();
+    }
+
+    public long getTextModified() {
+        return getTextFile().lastModified();
+    }
+
+    public long getAnnotationLength() {
+        return getAnnotationFile().length();
+    }
+
+    public long getAnnotationModified() {
+        return getAnnotationFile().lastModified();
+    }
+
+    private File getTextFile() {
+        return directory.resolve(textName + ".txt").toFile();
+    }
+
+    private File getAnnotationFile() {
+        return directory.resolve(textName + ".ann").toFile();
+    }
+}
@@ -1,96 +1,1682 @@
-import edu.stanford.nlp.ie.crf.CRFClassifier;
 import edu.stanford.nlp.ling.CoreLabel;
-import edu.stanford.nlp.process.CoreLabelTokenFactory;
-import edu.stanford.nlp.process.PTBTokenizer;
 import org.apache.commons.cli.*;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class FileParser {
 
-    private final String PARSING_OPTIONS = "normalizeParentheses=false, asciiQuotes=true, " +
-            "latexQuotes=false, ptb3Dashes=false, normalizeOtherBrackets=false, ptb3Ellipsis=false, unicodeEllipsis=false," +
-            "normalizeFractions = false, normalizeCurrency = false";
+    /**
+     * version of the conversion, has to be increased whenever a change leads to different tokens or labels for
+     * the same input, so documents cached by older versions are converted again
+     */
+    static final String CONVERTER_VERSION = "2";
+
+    private static final int DEFAULT_DEBOUNCE_MILLIS = 2000;
+    private static final int DEFAULT_FOLDS = 5;
+    // label taken over if neither labels nor an annotation.conf are given
+    private static final String DEFAULT_LABEL = "COMP";
+    // cache of the watch mode if no cache directory is given, inside the output directory
+    private static final String DEFAULT_WATCH_CACHE_DIRECTORY = ".conversion-cache";
+
+    private final String PARSING_OPTIONS = AnnotationConverter.PARSING_OPTIONS;
+
+    private final AsciiNormalizer normalizer;
+    private final DelimiterSplitter splitter;
+    // replaced at the start of every run, so the counters belong to a single run
+    private volatile AnnotationTokenCache annotationTokens =
+            new AnnotationTokenCache(AnnotationTokenCache.DEFAULT_SIZE);
+    // splits the written documents into sequences, set at the start of every run, null if documents are not split
+    private volatile SequenceSplitter sequenceSplitter;
+
+    /**
+     * creates a parser which uses the default ascii mapping of AsciiNormalizer and the default delimiters of
+     * DelimiterSplitter
+     */
+    public FileParser() {
+        this(new AsciiNormalizer(), new DelimiterSplitter());
+    }
+
+    /**
+     * creates a parser which uses the given normalizer to replace unicode characters in texts and tokens and the
+     * given splitter to split tokens at delimiters
+     * @param normalizer normalizer used to clean texts and tokens
+     * @param splitter splitter used to split tokens at delimiters
+     */
+    public FileParser(AsciiNormalizer normalizer, DelimiterSplitter splitter) {
+        this.normalizer = normalizer;
+        this.splitter = splitter;
+    }
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("train")) {
+            train(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("merge")) {
+            merge(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("export")) {
+            export(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         // Use Apache Commons CLI to handle command line input.
         CommandLineParser cmdParser = new DefaultParser();
 
-        // Create CommonsCLI Input Options
-        Options options = new Options();
+        // Create CommonsCLI Input Options
+        Options options = new Options();
+        addInputOutputOptions(options);
+        addConversionOptions(options);
+        addWatchOptions(options);
+        addScalingOptions(options);
+        addOutputOptions(options);
+        addLabelOptions(options);
+        addSequenceOptions(options);
+        addDeduplicationOptions(options);
+
+        try {
+            // parse the command line arguments
+            CommandLine line = cmdParser.parse( options, args );
+
+            if(line.hasOption("i") && line.hasOption("o")){
+
+                ConversionOptions conversionOptions = readConversionOptions(line);
+
+                AsciiNormalizer normalizer = line.hasOption("n")
+                        ? AsciiNormalizer.fromMappingFile(line.getOptionValue("n"))
+                        : new AsciiNormalizer();
+                DelimiterSplitter splitter = new DelimiterSplitter(DelimiterSplitter.DEFAULT_REMOVED_DELIMITERS,
+                        line.getOptionValue("d", DelimiterSplitter.DEFAULT_KEPT_DELIMITERS));
+
+                FileParser parser = new FileParser(normalizer, splitter);
+                List<String> allowedLabels = readLabels(line, line.getOptionValue("i"));
+                if (conversionOptions.isWatching()) {
+                    int debounceMillis = line.hasOption("debounce")
+                            ? parsePositiveInt(line.getOptionValue("debounce"), "debounce")
+                            : DEFAULT_DEBOUNCE_MILLIS;
+                    watchDirectory(parser, line.getOptionValue("i"), line.getOptionValue("o"), allowedLabels,
+                            conversionOptions, debounceMillis);
+                } else {
+                    parser.parseAnnotationFilesInDirectory(line.getOptionValue("i"), line.getOptionValue("o"),
+                            "merged", allowedLabels, conversionOptions);
+                }
+            }else{
+                HelpFormatter formatter = new HelpFormatter();
+                formatter.printHelp("FileParser", options);
+            }
+        }
+        catch( ParseException exp ) {
+            //print help text
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp("FileParser", options);
+
+            // oops, something went wrong => print Reason
+            System.err.println( "Parsing failed.  Reason: " + exp.getMessage() );
+        } catch (IOException e) {
+            System.err.println("Reading the normalization or annotation configuration file failed. Reason: "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * adds the input and output directory of the conversion
+     * @param options options of a command
+     */
+    private static void addInputOutputOptions(Options options) {
+        options.addOption(Option.builder("i")
+                .required(true)
+                .longOpt("input")
+                .hasArg()
+                .argName("directory")
+                .desc("directory that conatins *.txt and *.ann files, or a zip, tar or tar.gz archive of them")
+                .build());
+        options.addOption(Option.builder("o")
+                .required(true)
+                .longOpt("output")
+                .hasArg()
+                .argName("directory")
+                .desc("directory where to output the merged *.tsv file")
+                .build());
+    }
+
+    /**
+     * adds the options which choose how the documents are converted
+     * @param options options of a command
+     */
+    private static void addConversionOptions(Options options) {
+        options.addOption(Option.builder("t")
+                .longOpt("threads")
+                .hasArg()
+                .argName("count")
+                .desc("number of documents converted in parallel (default 1)")
+                .build());
+        options.addOption(Option.builder("s")
+                .longOpt("stream")
+                .desc("write converted documents directly into the merged file without intermediate *.tsv files")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("legacy-alignment")
+                .desc("search the tokens in the text and match annotations by their content instead of " +
+                        "using positions, reproduces the output of older versions")
+                .build());
+        options.addOption(Option.builder("n")
+                .longOpt("normalization")
+                .hasArg()
+                .argName("file")
+                .desc("file with additional character mappings (U+XXXX<tab>replacement) applied to texts and tokens")
+                .build());
+        options.addOption(Option.builder("d")
+                .longOpt("delimiters")
+                .hasArg()
+                .argName("characters")
+                .desc("characters at which tokens are split into separate tokens (default \"" +
+                        DelimiterSplitter.DEFAULT_KEPT_DELIMITERS + "\")")
+                .build());
+        options.addOption(Option.builder("c")
+                .longOpt("cache")
+                .hasArg()
+                .argName("directory")
+                .desc("directory where converted documents are cached, only changed documents are converted again")
+                .build());
+        options.addOption(Option.builder("m")
+                .longOpt("metrics")
+                .hasArg()
+                .argName("file")
+                .desc("write timing and throughput metrics of the run as JSON to the file")
+                .build());
+        options.addOption(Option.builder("p")
+                .longOpt("progress")
+                .hasArg()
+                .argName("seconds")
+                .desc("print a progress line in the given interval")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("annotation-cache-size")
+                .hasArg()
+                .argName("entries")
+                .desc("number of annotation contents whose tokens are kept for the legacy alignment, default "
+                        + AnnotationTokenCache.DEFAULT_SIZE)
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("include")
+                .hasArg()
+                .argName("glob")
+                .desc("only convert documents whose .txt path relative to the input directory matches the glob, " +
+                        "can be given several times")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("exclude")
+                .hasArg()
+                .argName("glob")
+                .desc("skip documents whose .txt path relative to the input directory matches the glob, " +
+                        "can be given several times")
+                .build());
+    }
+
+    /**
+     * adds the options of the watch mode
+     * @param options options of a command
+     */
+    private static void addWatchOptions(Options options) {
+        options.addOption(Option.builder("w")
+                .longOpt("watch")
+                .desc("keep running and convert the input directory again whenever .txt or .ann files change, " +
+                        "only changed documents are converted again")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("debounce")
+                .hasArg()
+                .argName("milliseconds")
+                .desc("time without changes the watch mode waits for before converting, default "
+                        + DEFAULT_DEBOUNCE_MILLIS)
+                .build());
+    }
+
+    /**
+     * adds the options for huge documents and corpora: chunks, the pipeline and partitions
+     * @param options options of a command
+     */
+    private static void addScalingOptions(Options options) {
+        options.addOption(Option.builder()
+                .longOpt("chunk-size")
+                .hasArg()
+                .argName("chars")
+                .desc("convert documents larger than this many characters in chunks of this size and write them " +
+                        "directly into the merged file, so a huge document does not have to fit in memory")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("pipeline")
+                .hasArg()
+                .argName("read,tokenize,match")
+                .desc("convert in stages connected by queues, with the given number of threads for reading, " +
+                        "tokenizing and matching, instead of --threads")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("queue-capacity")
+                .hasArg()
+                .argName("documents")
+                .desc("number of documents which can wait in front of every stage of the pipeline, default "
+                        + ConversionOptions.DEFAULT_QUEUE_CAPACITY)
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("partition")
+                .hasArg()
+                .argName("k/N")
+                .desc("convert only partition k of N of the documents, chosen by a hash of their path, into " +
+                        "merged.part-k-of-N.tsv and a manifest, combine all partitions with the merge command")
+                .build());
+    }
+
+    /**
+     * adds the options which choose the files the documents are written to
+     * @param options options of a command
+     */
+    private static void addOutputOptions(Options options) {
+        options.addOption(Option.builder()
+                .longOpt("format")
+                .hasArg()
+                .argName("tsv|binary|both")
+                .desc("write merged.tsv, the compact merged.bin or both, default tsv. merged.bin can be turned " +
+                        "into merged.tsv with the export command")
+                .build());
+        options.addOption(Option.builder("z")
+                .longOpt("gzip")
+                .hasArg()
+                .optionalArg(true)
+                .argName("threads")
+                .desc("write merged.tsv.gz, compressed in blocks by the given number of threads, default number " +
+                        "of cores")
+                .build());
+    }
+
+    /**
+     * @param line parsed command line of the conversion
+     * @return the settings of the conversion run
+     * @throws ParseException if an option has an invalid value or options can not be combined
+     */
+    private static ConversionOptions readConversionOptions(CommandLine line) throws ParseException {
+        ConversionOptions conversionOptions = new ConversionOptions();
+        if (line.hasOption("t")) {
+            conversionOptions.setThreads(parsePositiveInt(line.getOptionValue("t"), "threads"));
+        }
+        conversionOptions.setStreaming(line.hasOption("s"));
+        conversionOptions.setWatching(line.hasOption("w"));
+        conversionOptions.setLegacyAlignment(line.hasOption("legacy-alignment"));
+        conversionOptions.setCacheDirectory(line.getOptionValue("c"));
+        conversionOptions.setMetricsFile(line.getOptionValue("m"));
+        if (line.hasOption("annotation-cache-size")) {
+            conversionOptions.setAnnotationCacheSize(
+                    parsePositiveInt(line.getOptionValue("annotation-cache-size"), "annotation-cache-size"));
+        }
+        if (line.hasOption("include")) {
+            conversionOptions.setIncludeGlobs(Arrays.asList(line.getOptionValues("include")));
+        }
+        if (line.hasOption("exclude")) {
+            conversionOptions.setExcludeGlobs(Arrays.asList(line.getOptionValues("exclude")));
+        }
+        if (line.hasOption("p")) {
+            conversionOptions.setProgressInterval(parsePositiveInt(line.getOptionValue("p"), "progress"));
+        }
+        if (line.hasOption("chunk-size")) {
+            conversionOptions.setChunkSize(parsePositiveInt(line.getOptionValue("chunk-size"), "chunk-size"));
+        }
+        if (line.hasOption("pipeline")) {
+            String[] stageThreads = line.getOptionValue("pipeline").split(",");
+            if (stageThreads.length != 3) {
+                throw new ParseException("option pipeline expects three thread counts like 2,4,1 but was: "
+                        + line.getOptionValue("pipeline"));
+            }
+            conversionOptions.setPipeline(parsePositiveInt(stageThreads[0], "pipeline"),
+                    parsePositiveInt(stageThreads[1], "pipeline"),
+                    parsePositiveInt(stageThreads[2], "pipeline"));
+        }
+        if (line.hasOption("partition")) {
+            String[] partition = line.getOptionValue("partition").split("/");
+            if (partition.length != 2) {
+                throw new ParseException("option partition expects k/N like 2/4 but was: "
+                        + line.getOptionValue("partition"));
+            }
+            int partitionCount = parsePositiveInt(partition[1], "partition");
+            int partitionNumber = parsePositiveInt(partition[0], "partition");
+            if (partitionNumber > partitionCount) {
+                throw new ParseException("option partition expects k between 1 and N but was: "
+                        + line.getOptionValue("partition"));
+            }
+            conversionOptions.setPartition(partitionNumber, partitionCount);
+        }
+        if (line.hasOption("queue-capacity")) {
+            conversionOptions.setQueueCapacity(
+                    parsePositiveInt(line.getOptionValue("queue-capacity"), "queue-capacity"));
+        }
+        readSequenceOptions(line, conversionOptions);
+        readDeduplicationOptions(line, conversionOptions);
+        if (line.hasOption("format")) {
+            try {
+                conversionOptions.setOutputFormat(ConversionOptions.OutputFormat.valueOf(
+                        line.getOptionValue("format").trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new ParseException("option format expects tsv, binary or both but was: "
+                        + line.getOptionValue("format"));
+            }
+        }
+        if (line.hasOption("z")) {
+            conversionOptions.setCompressionThreads(line.getOptionValue("z") != null
+                    ? parsePositiveInt(line.getOptionValue("z"), "gzip")
+                    : Runtime.getRuntime().availableProcessors());
+        }
+        try {
+            return conversionOptions.validate();
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(e.getMessage());
+        }
+    }
+
+    /**
+     * The train command: converts the documents in memory, runs k-fold cross-validation of the Stanford NER CRF
+     * with the folds trained in parallel, and optionally trains and saves a model on all documents.
+     * @param args command line arguments after "train"
+     */
+    private static void train(String[] args) {
+        Options options = new Options();
+        options.addOption(Option.builder("i")
+                .required(true)
+                .longOpt("input")
+                .hasArg()
+                .argName("directory")
+                .desc("directory or archive that conatins *.txt and *.ann files, or a merged .bin file")
+                .build());
+        options.addOption(Option.builder("k")
+                .longOpt("folds")
+                .hasArg()
+                .argName("count")
+                .desc("number of cross-validation folds, default " + DEFAULT_FOLDS)
+                .build());
+        options.addOption(Option.builder("t")
+                .longOpt("threads")
+                .hasArg()
+                .argName("count")
+                .desc("number of folds trained and documents converted at the same time, default number of cores")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("memory-cap")
+                .hasArg()
+                .argName("megabytes")
+                .desc("memory the folds trained at the same time may use together, default 75% of the heap")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("prop")
+                .hasArg()
+                .argName("file")
+                .desc("Stanford NER properties which replace the default features")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("model")
+                .hasArg()
+                .argName("file")
+                .desc("train a model on all documents and save it to the file")
+                .build());
+        options.addOption(Option.builder("c")
+                .longOpt("cache")
+                .hasArg()
+                .argName("directory")
+                .desc("conversion cache, see the conversion options")
+                .build());
+        addLabelOptions(options);
+        addSequenceOptions(options);
+        addDeduplicationOptions(options);
+
+        try {
+            CommandLine line = new DefaultParser().parse(options, args);
+            int folds = line.hasOption("k") ? parsePositiveInt(line.getOptionValue("k"), "folds") : DEFAULT_FOLDS;
+            int threads = line.hasOption("t") ? parsePositiveInt(line.getOptionValue("t"), "threads")
+                    : Runtime.getRuntime().availableProcessors();
+            long memoryCap = line.hasOption("memory-cap")
+                    ? parsePositiveInt(line.getOptionValue("memory-cap"), "memory-cap") * 1024L * 1024L
+                    : Runtime.getRuntime().maxMemory() / 4 * 3;
+
+            Properties properties = CrfTrainer.defaultProperties();
+            if (line.hasOption("prop")) {
+                try (InputStream in = new FileInputStream(line.getOptionValue("prop"))) {
+                    properties.load(in);
+                }
+            }
+
+            ConversionOptions conversionOptions = new ConversionOptions()
+                    .setThreads(threads)
+                    .setCacheDirectory(line.getOptionValue("c"));
+            readSequenceOptions(line, conversionOptions);
+            readDeduplicationOptions(line, conversionOptions);
+            List<ConvertedDocument> documents;
+            if (line.getOptionValue("i").endsWith(BinaryTokenWriter.FILE_ENDING)) {
+                // already converted, the documents are decoded from the mapped file
+                documents = new ArrayList<>();
+                try (BinaryTokenReader reader = new BinaryTokenReader(Paths.get(line.getOptionValue("i")))) {
+                    reader.forEach(documents::add);
+                }
+                System.out.println("read " + documents.size() + " documents from " + line.getOptionValue("i"));
+            } else {
+                documents = new FileParser().convertDocuments(line.getOptionValue("i"),
+                        readLabels(line, line.getOptionValue("i")), conversionOptions);
+            }
+
+            CrfTrainer trainer = new CrfTrainer(properties, threads, memoryCap,
+                    conversionOptions.newSequenceSplitter());
+            List<CrfTrainer.FoldResult> results = trainer.crossValidate(documents, folds);
+            results.forEach(System.out::println);
+            System.out.println(CrfTrainer.summarize(results));
+
+            if (line.hasOption("model")) {
+                trainer.train(documents).serializeClassifier(line.getOptionValue("model"));
+                System.out.println("saved model trained on all documents to " + line.getOptionValue("model"));
+            }
+        } catch (ParseException exp) {
+            new HelpFormatter().printHelp("FileParser train", options);
+            System.err.println("Parsing failed.  Reason: " + exp.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Training failed. Reason: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Reading the properties, input or annotation configuration file failed. Reason: "
+                    + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * runs the watch mode until the JVM is stopped. The documents are always written directly into the merged
+     * file, so the watched directory does not receive intermediate .tsv files. Only changed documents are converted
+     * again, see CorpusWatcher, and a conversion cache is used so a restarted watch mode does not convert the
+     * unchanged documents either.
+     * @param parser parser which converts the documents
+     * @param inputPath directory which is watched
+     * @param outputPath directory where the merged file is published
+     * @param allowedLabels labels which are taken over from the .ann files
+     * @param options settings of the conversion runs
+     * @param debounceMillis time without changes after which the corpus is converted
+     */
+    private static void watchDirectory(FileParser parser, String inputPath, String outputPath,
+                                       List<String> allowedLabels, ConversionOptions options, int debounceMillis) {
+        Path input = Paths.get(inputPath);
+        if (!Files.isDirectory(input)) {
+            System.out.println("input directory " + inputPath + " does not exist");
+            return;
+        }
+        options.setStreaming(true);
+        if (options.getCacheDirectory() == null) {
+            options.setCacheDirectory(new File(outputPath, DEFAULT_WATCH_CACHE_DIRECTORY).getPath());
+        }
+        try {
+            new CorpusWatcher(parser, input, outputPath, "merged", allowedLabels, options, debounceMillis).run();
+        } catch (IOException e) {
+            System.err.println("Watching the input directory failed. Reason: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The merge command: combines the partial merged files of a conversion split with --partition into the merged
+     * file a single run would have written. All partitions have to be present, converted from the same corpus
+     * with the same configuration.
+     * @param args command line arguments after "merge"
+     */
+    private static void merge(String[] args) {
+        Options options = new Options();
+        options.addOption(Option.builder("i")
+                .required(true)
+                .longOpt("input")
+                .hasArgs()
+                .argName("directory")
+                .desc("directory with the partial .tsv and .manifest files, can be given several times")
+                .build());
+        options.addOption(Option.builder("o")
+                .required(true)
+                .longOpt("output")
+                .hasArg()
+                .argName("directory")
+                .desc("directory where merged.tsv is created")
+                .build());
+        options.addOption(Option.builder("m")
+                .longOpt("metrics")
+                .hasArg()
+                .argName("file")
+                .desc("write the summed up counters of all partitions as JSON to the given file")
+                .build());
+
+        try {
+            CommandLine line = new DefaultParser().parse(options, args);
+            List<File> manifestFiles = new ArrayList<>();
+            for (String directory : line.getOptionValues("i")) {
+                File[] files = new File(directory).listFiles(
+                        (dir, name) -> name.endsWith(PartitionManifest.FILE_ENDING));
+                if (files == null) {
+                    System.out.println("input directory " + directory + " does not exist");
+                    return;
+                }
+                Arrays.sort(files);
+                manifestFiles.addAll(Arrays.asList(files));
+            }
+
+            File mergedFile = new File(line.getOptionValue("o"), "merged.tsv");
+            File temporaryFile = new File(line.getOptionValue("o"), "merged.tsv.tmp");
+            String problem = PartitionManifest.merge(manifestFiles, temporaryFile);
+            if (problem != null) {
+                Files.deleteIfExists(temporaryFile.toPath());
+                System.out.println("partitions could not be merged, " + mergedFile + " was not replaced: " + problem);
+                return;
+            }
+            publishMergedFile(temporaryFile, mergedFile);
+            System.out.println("merged " + manifestFiles.size() + " partitions into " + mergedFile);
+            if (line.hasOption("m")) {
+                PartitionManifest.writeMergedMetrics(manifestFiles, line.getOptionValue("m"));
+            }
+        } catch (ParseException exp) {
+            new HelpFormatter().printHelp("FileParser merge", options);
+            System.err.println("Parsing failed.  Reason: " + exp.getMessage());
+        } catch (IOException e) {
+            System.err.println("Merging the partitions failed. Reason: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The export command: turns a merged .bin file into the merged .tsv file the same conversion run would have
+     * written with the TSV format.
+     * @param args command line arguments after "export"
+     */
+    private static void export(String[] args) {
+        Options options = new Options();
+        options.addOption(Option.builder("i")
+                .required(true)
+                .longOpt("input")
+                .hasArg()
+                .argName("file")
+                .desc("merged .bin file")
+                .build());
+        options.addOption(Option.builder("o")
+                .required(true)
+                .longOpt("output")
+                .hasArg()
+                .argName("file")
+                .desc(".tsv file which is created")
+                .build());
+
+        try {
+            CommandLine line = new DefaultParser().parse(options, args);
+            File tsvFile = new File(line.getOptionValue("o"));
+            File temporaryFile = new File(tsvFile.getPath() + ".tmp");
+            try (BinaryTokenReader reader = new BinaryTokenReader(Paths.get(line.getOptionValue("i")))) {
+                reader.exportTSV(temporaryFile);
+                publishMergedFile(temporaryFile, tsvFile);
+                System.out.println("exported " + reader.getDocumentCount() + " documents to " + tsvFile);
+            }
+        } catch (ParseException exp) {
+            new HelpFormatter().printHelp("FileParser export", options);
+            System.err.println("Parsing failed.  Reason: " + exp.getMessage());
+        } catch (IOException e) {
+            System.err.println("Exporting the binary file failed. Reason: " + e.getMessage());
+        }
+    }
+
+    /**
+     * adds the options which choose the labels taken over from the .ann files
+     * @param options options of a command
+     */
+    private static void addLabelOptions(Options options) {
+        options.addOption(Option.builder()
+                .longOpt("labels")
+                .hasArg()
+                .argName("label,...")
+                .desc("labels which are taken over from the .ann files, replaces the annotation.conf")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("annotation-conf")
+                .hasArg()
+                .argName("file")
+                .desc("brat annotation.conf whose entity types are taken over, default annotation.conf in the " +
+                        "input directory, or " + DEFAULT_LABEL + " if there is none. An annotation.conf in the " +
+                        "input directory replaces the former default " + DEFAULT_LABEL + " even without this option")
+                .build());
+    }
+
+    /**
+     * adds the options which split the documents into sentence level sequences
+     * @param options options of a command
+     */
+    private static void addSequenceOptions(Options options) {
+        options.addOption(Option.builder()
+                .longOpt("sentences")
+                .desc("split every document into sentences, separated by empty lines like documents, so the " +
+                        "CRF trains on shorter sequences. Annotations are never split")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("max-sequence-length")
+                .hasArg()
+                .argName("tokens")
+                .desc("split sentences longer than this many tokens as well, implies --sentences")
+                .build());
+    }
+
+    /**
+     * @param line parsed command line
+     * @param options settings the sequence options are set in
+     * @throws ParseException if the maximal sequence length is no positive number
+     */
+    private static void readSequenceOptions(CommandLine line, ConversionOptions options) throws ParseException {
+        options.setSentenceSplitting(line.hasOption("sentences") || line.hasOption("max-sequence-length"));
+        if (line.hasOption("max-sequence-length")) {
+            options.setMaxSequenceLength(
+                    parsePositiveInt(line.getOptionValue("max-sequence-length"), "max-sequence-length"));
+        }
+    }
+
+    /**
+     * adds the options which skip duplicate documents
+     * @param options options of a command
+     */
+    private static void addDeduplicationOptions(Options options) {
+        options.addOption(Option.builder()
+                .longOpt("dedup")
+                .hasArg()
+                .optionalArg(true)
+                .argName("similarity")
+                .desc("skip exact duplicates and documents whose word shingles are at least this similar to " +
+                        "another document, default " + CorpusDeduplicator.DEFAULT_SIMILARITY + ", 1 only skips " +
+                        "exact duplicates")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("keep")
+                .hasArg()
+                .argName("most-annotations|first|newest")
+                .desc("document kept of every cluster of duplicates, default most-annotations, implies --dedup")
+                .build());
+    }
+
+    /**
+     * @param line parsed command line
+     * @param options settings the deduplication options are set in
+     * @throws ParseException if the similarity or the keep policy is invalid
+     */
+    private static void readDeduplicationOptions(CommandLine line, ConversionOptions options) throws ParseException {
+        options.setDeduplication(line.hasOption("dedup") || line.hasOption("keep"));
+        if (line.getOptionValue("dedup") != null) {
+            try {
+                options.setDuplicateSimilarity(Double.parseDouble(line.getOptionValue("dedup")));
+            } catch (IllegalArgumentException e) {
+                throw new ParseException("option dedup expects a similarity larger than 0 and at most 1 but was: "
+                        + line.getOptionValue("dedup"));
+            }
+        }
+        if (line.hasOption("keep")) {
+            try {
+                options.setKeepPolicy(ConversionOptions.KeepPolicy.valueOf(
+                        line.getOptionValue("keep").trim().replace('-', '_').toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new ParseException("option keep expects most-annotations, first or newest but was: "
+                        + line.getOptionValue("keep"));
+            }
+        }
+    }
+
+    /**
+     * chooses the labels taken over from the .ann files: the labels given on the command line, else the entity
+     * types of the given annotation.conf or of the one in the input directory, else DEFAULT_LABEL
+     * @param line parsed command line
+     * @param inputPath input directory or archive
+     * @return labels which are taken over
+     * @throws ParseException if the labels option is empty
+     * @throws IOException if the annotation.conf could not be read
+     */
+    private static List<String> readLabels(CommandLine line, String inputPath) throws ParseException, IOException {
+        if (line.hasOption("labels")) {
+            List<String> labels = new ArrayList<>();
+            for (String label : line.getOptionValue("labels").split(",")) {
+                if (!label.trim().isEmpty()) {
+                    labels.add(label.trim());
+                }
+            }
+            if (labels.isEmpty()) {
+                throw new ParseException("option labels expects at least one label");
+            }
+            return labels;
+        }
+        Path configuration = line.hasOption("annotation-conf") ? Paths.get(line.getOptionValue("annotation-conf"))
+                : Paths.get(inputPath, LabelSchema.CONFIGURATION_FILE);
+        if (line.hasOption("annotation-conf") || Files.isRegularFile(configuration)) {
+            List<String> labels = new ArrayList<>(LabelSchema.fromConfiguration(configuration).getLabels());
+            System.out.println("taking over the labels " + labels + " of " + configuration);
+            return labels;
+        }
+        List<String> labels = new ArrayList<>();
+        labels.add(DEFAULT_LABEL);
+        return labels;
+    }
+
+    /**
+     * parses a command line value that has to be a positive integer
+     * @param value value given on the command line
+     * @param optionName name of the option, used in the error message
+     * @return parsed value
+     * @throws ParseException if the value is not a positive integer
+     */
+    private static int parsePositiveInt(String value, String optionName) throws ParseException {
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new ParseException("option " + optionName + " expects a positive number but was: " + value);
+    }
+
+    /**
+     * Scans directory for all txt files where an according .ann file is present and converts them in
+     * a single TSV file named merged.tsv
+     * @param path path of directory where txt and ann files should be searched
+     * @param outputPath
+     * @param outputFileName
+     * @param allowedLabels
+     */
+    public void parseAnnotationFilesInDirectory(String path, String outputPath, String outputFileName, List<String> allowedLabels) {
+        parseAnnotationFilesInDirectory(path, outputPath, outputFileName, allowedLabels, new ConversionOptions());
+    }
+
+    /**
+     * Scans directory and its sub directories for all txt files where an according .ann file is present and
+     * converts them in a single TSV file. Documents are converted independently, with up to options.getThreads()
+     * documents at the same time. The merged file always lists the documents in the order of CorpusDiscovery,
+     * so the output does not depend on the number of threads.
+     * If options.isStreaming() is set the converted documents are written directly into the merged file
+     * and no intermediate .tsv file is created in the input directory.
+     * If options.getChunkSize() is set the documents are written directly into the merged file as well, and
+     * documents larger than the chunk size are converted in chunks by the writing thread while they are written.
+     * If options.isPipelined() is set the documents are converted by a ConversionPipeline with separate stages for
+     * reading, tokenizing and matching instead of one thread per document, with the same output.
+     * If options.isPartitioned() is set only the documents of the partition are converted, directly into the
+     * partial file outputFileName.part-k-of-N.tsv, and a PartitionManifest is written next to it.
+     * If options.writesBinary() is set the documents are written directly into outputFileName.bin as well, or only
+     * into it, see BinaryTokenWriter.
+     * If options.isCompressed() is set the merged file is written as outputFileName.tsv.gz, see ChannelWriter.
+     * If path is a zip, tar or gzip compressed tar file the documents are read from the archive without
+     * extracting it and are always written directly into the merged file.
+     * If options.isDeduplication() is set the duplicates of the corpus are found before the conversion and only
+     * one document of every cluster of duplicates is converted, see CorpusDeduplicator.
+     * @param path path of directory or archive where txt and ann files should be searched
+     * @param outputPath directory where the merged file is created
+     * @param outputFileName name of the merged file without the .tsv ending
+     * @param allowedLabels labels which are taken over from the .ann files
+     * @param options settings of this conversion run
+     * @throws IllegalArgumentException if the options can not be combined, see ConversionOptions.validate()
+     */
+    public void parseAnnotationFilesInDirectory(String path, String outputPath, String outputFileName,
+                                                List<String> allowedLabels, ConversionOptions options) {
+        options.validate();
+        Iterable<DocumentPair> discovery = discoverDocuments(path, options);
+        if (discovery == null) {
+            return;
+        }
+        LabelSchema schema = new LabelSchema(allowedLabels);
+        boolean archive = discovery instanceof ArchiveDiscovery;
+        // all partitions skip the same duplicates, they are found in the whole corpus
+        CorpusDeduplicator deduplicator = findDuplicates(discovery, schema, options);
+        if (deduplicator != null) {
+            discovery = deduplicator.select(discovery);
+        }
+        long conversionStart = System.nanoTime();
+        PartitionManifest manifest = null;
+        if (options.isPartitioned()) {
+            manifest = new PartitionManifest(options.getPartition(), options.getPartitionCount(),
+                    ConversionCache.hash((getConfigurationFingerprint(allowedLabels, options)
+                            + "\nmaxSequenceLength=" + options.getMaxSequenceLength()
+                            + "\ndeduplication=" + options.isDeduplication()
+                            + (options.isDeduplication() ? " " + options.getDuplicateSimilarity() + " "
+                            + options.getKeepPolicy() : ""))
+                            .getBytes(StandardCharsets.UTF_8)));
+            discovery = manifest.select(discovery);
+            outputFileName += PartitionManifest.fileSuffix(options.getPartition(), options.getPartitionCount());
+        }
+        ConversionCache conversionCache = openCache(allowedLabels, options);
+
+        AnnotationTokenCache tokenCache = new AnnotationTokenCache(options.getAnnotationCacheSize());
+        annotationTokens = tokenCache;
+        sequenceSplitter = options.newSequenceSplitter();
+
+        ConversionMetrics metrics = new ConversionMetrics(options.getMetricsFile() != null);
+        // the legacy alignment has no separate stages
+        ConversionPipeline<StagedDocument> pipeline = options.isPipelined() && !options.isLegacyAlignment()
+                ? newPipeline(schema, options, conversionCache, metrics) : null;
+        if (pipeline != null) {
+            metrics.setProgressDetails(() -> "queues " + pipeline.describeQueues());
+        }
+        if (options.getProgressInterval() > 0) {
+            metrics.startProgress(options.getProgressInterval());
+        }
+
+        File mergedFile = new File(outputPath, outputFileName + ".tsv"
+                + (options.isCompressed() ? ChannelWriter.GZIP_FILE_ENDING : ""));
+        // the merged file is written next to its final place and only replaced when it is complete
+        File temporaryFile = new File(mergedFile.getPath() + ".tmp");
+        ChannelWriter output = null;
+        File binaryFile = new File(outputPath, outputFileName + BinaryTokenWriter.FILE_ENDING);
+        File temporaryBinaryFile = new File(outputPath, outputFileName + BinaryTokenWriter.FILE_ENDING + ".tmp");
+        BinaryTokenWriter binary = null;
+        boolean written = false;
+        // the documents of an archive have no directory for the intermediate .tsv files
+        if (options.isStreaming() || archive || options.getChunkSize() > 0 || manifest != null
+                || options.writesBinary()) {
+            try {
+                LineCountingWriter lines = null;
+                PrintWriter writer = null;
+                if (options.writesTSV()) {
+                    output = new ChannelWriter(temporaryFile, options.getCompressionThreads());
+                    lines = new LineCountingWriter(output);
+                    writer = new PrintWriter(lines);
+                }
+                if (options.writesBinary()) {
+                    binary = new BinaryTokenWriter(temporaryBinaryFile);
+                }
+                LineCountingWriter tsvLines = lines;
+                PrintWriter tsvWriter = writer;
+                BinaryTokenWriter binaryWriter = binary;
+                PartitionManifest partition = manifest;
+                boolean[] incomplete = {false};
+                if (pipeline != null) {
+                    boolean complete = runPipeline(pipeline, discovery, staged -> writeCounted(staged.pair,
+                            tsvLines, partition, () -> {
+                                if (staged.chunked) {
+                                    incomplete[0] |= !streamDocument(staged.pair, schema, options, tsvWriter,
+                                            binaryWriter, metrics);
+                                } else {
+                                    writeDocument(staged.document, tsvWriter, binaryWriter, metrics);
+                                }
+                            }));
+                    incomplete[0] |= !complete;
+                } else {
+                    // every document is turned into the action which writes it, run in document order
+                    convertInOrder(discovery.iterator(), pair -> {
+                        if (isChunked(pair, options)) {
+                            return () -> writeCounted(pair, tsvLines, partition,
+                                    () -> incomplete[0] |= !streamDocument(pair, schema, options, tsvWriter,
+                                            binaryWriter, metrics));
+                        }
+                        ConvertedDocument document = convertTextFile(pair, schema, options, conversionCache,
+                                metrics);
+                        return document == null ? null
+                                : () -> writeCounted(pair, tsvLines, partition, () -> writeDocument(document,
+                                tsvWriter, binaryWriter, metrics));
+                    }, Runnable::run, options.getThreads());
+                }
+                written = !incomplete[0];
+                if (writer != null) {
+                    writer.close();
+                    written &= !writer.checkError();
+                }
+                if (binary != null) {
+                    binary.close();
+                    written &= !binary.checkError();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            List<File> tsvFiles = new ArrayList<>();
+            boolean complete = true;
+            if (pipeline != null) {
+                complete = runPipeline(pipeline, discovery, staged -> {
+                    writeDocumentTSV(staged.pair, staged.document, metrics);
+                    tsvFiles.add(tsvFileOf(staged.pair));
+                });
+            } else {
+                convertInOrder(discovery.iterator(), pair -> {
+                    ConvertedDocument document = convertTextFile(pair, schema, options, conversionCache,
+                            metrics);
+                    if (document != null) {
+                        writeDocumentTSV(pair, document, metrics);
+                    }
+                    return document;
+                }, document -> tsvFiles.add(new File(path, document.getName() + ".tsv")), options.getThreads());
+            }
+            if (complete) {
+                try {
+                    output = new ChannelWriter(temporaryFile, options.getCompressionThreads());
+                    written = mergeTSVFiles(tsvFiles, output);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (written) {
+            if (options.writesTSV()) {
+                publishMergedFile(temporaryFile, mergedFile);
+            }
+            if (binary != null) {
+                publishMergedFile(temporaryBinaryFile, binaryFile);
+            }
+            if (manifest != null) {
+                manifest.setMetrics(metrics);
+                File manifestFile = new File(outputPath, outputFileName + PartitionManifest.FILE_ENDING);
+                try {
+                    manifest.write(manifestFile, mergedFile);
+                } catch (IOException e) {
+                    System.out.println("manifest " + manifestFile + " could not be written: " + e.getMessage());
+                }
+            }
+        } else if (options.writesTSV()) {
+            System.out.println("writing " + temporaryFile + " failed, " + mergedFile + " was not replaced");
+        } else {
+            System.out.println("writing " + temporaryBinaryFile + " failed, " + binaryFile + " was not replaced");
+        }
+        metrics.stopProgress();
+        if (metrics.isTimingEnabled()) {
+            metrics.addBytesWritten((options.writesTSV() ? mergedFile.length() : 0)
+                    + (binary != null ? binary.getBytesWritten() : 0));
+        }
+
+        System.out.println("matched " + metrics.getMatchedAnnotations() + " annotations, "
+                + metrics.getUnmatchedAnnotations() + " annotations did not match any token");
+
+        Map<String, Long> additionalCounters = new LinkedHashMap<>();
+        if (deduplicator != null) {
+            long savedMillis = deduplicator.estimateSavedMillis((System.nanoTime() - conversionStart) / 1_000_000);
+            System.out.println("skipping the duplicates saved about " + savedMillis + " ms of conversion, estimated "
+                    + "from the conversion time of the kept documents");
+            additionalCounters.put("exactDuplicates", (long) deduplicator.getExactDuplicates());
+            additionalCounters.put("nearDuplicates", (long) deduplicator.getNearDuplicates());
+            additionalCounters.put("deduplicationMillis", deduplicator.getMillis());
+            additionalCounters.put("deduplicationSavedMillis", savedMillis);
+        }
+        if (output != null && written) {
+            System.out.println(String.format(Locale.ROOT, "wrote %s: %d bytes%s at %.1f MB/s, waited %d ms for "
+                            + "the disk%s", mergedFile.getName(), output.getBytesWritten(),
+                    options.isCompressed() ? " from " + output.getUncompressedBytes() + " bytes of TSV" : "",
+                    output.getBytesPerSecond() / 1e6, output.getBlockedMillis(),
+                    options.isCompressed() ? " and the compression threads" : ""));
+            additionalCounters.put("outputBytesWritten", output.getBytesWritten());
+            additionalCounters.put("outputUncompressedBytes", output.getUncompressedBytes());
+            additionalCounters.put("outputBytesPerSecond", (long) output.getBytesPerSecond());
+            additionalCounters.put("outputBlockedMillis", output.getBlockedMillis());
+        }
+        if (binary != null) {
+            System.out.println("binary file: " + binary.getBytesWritten() + " bytes, vocabulary of "
+                    + binary.getVocabularySize() + " tokens");
+            additionalCounters.put("binaryBytesWritten", binary.getBytesWritten());
+            additionalCounters.put("binaryVocabularySize", (long) binary.getVocabularySize());
+        }
+        if (pipeline != null) {
+            for (ConversionPipeline.StageStatistics stage : pipeline.getStatistics()) {
+                System.out.println("stage " + stage);
+                String prefix = "pipeline" + Character.toUpperCase(stage.getName().charAt(0))
+                        + stage.getName().substring(1);
+                additionalCounters.put(prefix + "Threads", (long) stage.getThreads());
+                additionalCounters.put(prefix + "BusyMillis", stage.getBusyMillis());
+                additionalCounters.put(prefix + "InputWaitMillis", stage.getInputWaitMillis());
+                additionalCounters.put(prefix + "OutputWaitMillis", stage.getOutputWaitMillis());
+                additionalCounters.put(prefix + "MaxQueueDepth", stage.getMaxQueueDepth());
+            }
+        }
+        if (conversionCache != null) {
+            System.out.println("reused " + conversionCache.getHits() + " documents from the conversion cache, converted "
+                    + conversionCache.getMisses() + " documents");
+            additionalCounters.put("conversionCacheHits", (long) conversionCache.getHits());
+            additionalCounters.put("conversionCacheMisses", (long) conversionCache.getMisses());
+            try {
+                conversionCache.save();
+            } catch (IOException e) {
+                System.out.println("conversion cache could not be saved: " + e.getMessage());
+            }
+        }
+        if (tokenCache.getHits() + tokenCache.getMisses() > 0) {
+            System.out.println("annotation token cache: " + tokenCache.getHits() + " hits, "
+                    + tokenCache.getMisses() + " misses, " + tokenCache.getEvictions() + " evictions");
+            additionalCounters.put("annotationTokenCacheHits", tokenCache.getHits());
+            additionalCounters.put("annotationTokenCacheMisses", tokenCache.getMisses());
+            additionalCounters.put("annotationTokenCacheEvictions", tokenCache.getEvictions());
+        }
+
+        if (options.getMetricsFile() != null) {
+            try {
+                metrics.writeJson(options.getMetricsFile(), additionalCounters);
+            } catch (IOException e) {
+                System.out.println("metrics could not be written: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Converts all documents of a directory or archive in memory, like parseAnnotationFilesInDirectory() but
+     * without writing any .tsv file. This is used to train models without a merged file on disk.
+     * @param path path of directory or archive where txt and ann files should be searched
+     * @param allowedLabels labels which are taken over from the .ann files
+     * @param options settings of the conversion, streaming and metrics are not used
+     * @return the converted documents in the order of the merged file, empty if the input does not exist
+     * @throws IllegalArgumentException if the options can not be combined, see ConversionOptions.validate()
+     */
+    public List<ConvertedDocument> convertDocuments(String path, List<String> allowedLabels,
+                                                    ConversionOptions options) {
+        options.validate();
+        List<ConvertedDocument> documents = new ArrayList<>();
+        Iterable<DocumentPair> discovery = discoverDocuments(path, options);
+        if (discovery == null) {
+            return documents;
+        }
+        LabelSchema schema = new LabelSchema(allowedLabels);
+        CorpusDeduplicator deduplicator = findDuplicates(discovery, schema, options);
+        if (deduplicator != null) {
+            discovery = deduplicator.select(discovery);
+        }
+        ConversionCache conversionCache = openCache(allowedLabels, options);
+        annotationTokens = new AnnotationTokenCache(options.getAnnotationCacheSize());
+        ConversionMetrics metrics = new ConversionMetrics(false);
+
+        convertInOrder(discovery.iterator(),
+                pair -> convertTextFile(pair, schema, options, conversionCache, metrics),
+                documents::add, options.getThreads());
+
+        System.out.println("converted " + documents.size() + " documents, matched " + metrics.getMatchedAnnotations()
+                + " annotations, " + metrics.getUnmatchedAnnotations() + " annotations did not match any token");
+        if (conversionCache != null) {
+            try {
+                conversionCache.save();
+            } catch (IOException e) {
+                System.out.println("conversion cache could not be saved: " + e.getMessage());
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Converts documents into the lines they take in the merged file, with the empty line which ends every
+     * document. The watch mode only converts changed documents again and writes their lines between the unchanged
+     * documents of the previous merged file, see CorpusWatcher. Documents larger than options.getChunkSize() are
+     * converted in chunks like in the merged file.
+     * @param documents documents which should be converted
+     * @param allowedLabels labels which are taken over from the .ann files
+     * @param options settings of the conversion, partitions, output formats and metrics are not used
+     * @param consumer receives the name and the UTF-8 encoded lines of every converted document, in the order of
+     *                 documents. Documents whose conversion failed are left out.
+     * @throws IllegalArgumentException if the options can not be combined, see ConversionOptions.validate()
+     */
+    void convertToMergedLines(Iterable<DocumentPair> documents, List<String> allowedLabels,
+                              ConversionOptions options, BiConsumer<String, byte[]> consumer) {
+        options.validate();
+        int[] convertedDocuments = new int[1];
+        LabelSchema schema = new LabelSchema(allowedLabels);
+        ConversionCache conversionCache = openCache(allowedLabels, options);
+        annotationTokens = new AnnotationTokenCache(options.getAnnotationCacheSize());
+        sequenceSplitter = options.newSequenceSplitter();
+        ConversionMetrics metrics = new ConversionMetrics(false);
+
+        convertInOrder(documents.iterator(), pair -> {
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(lines, StandardCharsets.UTF_8));
+            if (isChunked(pair, options)) {
+                if (!streamDocument(pair, schema, options, writer, null, metrics)) {
+                    return null;
+                }
+            } else {
+                ConvertedDocument document = convertTextFile(pair, schema, options, conversionCache, metrics);
+                if (document == null) {
+                    return null;
+                }
+                writeDocument(document, writer, null, metrics);
+            }
+            writer.flush();
+            // a chunked document which failed before its first token wrote nothing
+            return lines.size() == 0 ? null : new AbstractMap.SimpleEntry<>(pair.getName(), lines.toByteArray());
+        }, entry -> {
+            convertedDocuments[0]++;
+            consumer.accept(entry.getKey(), entry.getValue());
+        }, options.getThreads());
+
+        System.out.println("converted " + convertedDocuments[0] + " documents, matched "
+                + metrics.getMatchedAnnotations() + " annotations, " + metrics.getUnmatchedAnnotations()
+                + " annotations did not match any token");
+        if (conversionCache != null) {
+            try {
+                conversionCache.save();
+            } catch (IOException e) {
+                System.out.println("conversion cache could not be saved: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * finds the exact and near duplicates of the corpus, the signatures of the documents are computed by
+     * options.getThreads() threads. Documents which can not be read are kept, their conversion reports the error.
+     * @param discovery documents of the corpus
+     * @param schema labels which are taken over from the .ann files
+     * @param options settings of the deduplication
+     * @return the deduplicator which found the duplicates, null if options.isDeduplication() is not set
+     */
+    private CorpusDeduplicator findDuplicates(Iterable<DocumentPair> discovery, LabelSchema schema,
+                                              ConversionOptions options) {
+        CorpusDeduplicator deduplicator = options.newDeduplicator(normalizer, schema);
+        if (deduplicator == null) {
+            return null;
+        }
+        convertInOrder(discovery.iterator(), pair -> {
+            try {
+                return deduplicator.signature(pair);
+            } catch (IOException | UncheckedIOException e) {
+                System.out.println(pair.getName() + " could not be read for the deduplication: " + e.getMessage());
+                return null;
+            }
+        }, deduplicator::add, options.getThreads());
+        deduplicator.deduplicate();
+        System.out.println("skipping " + deduplicator.getDuplicates().size() + " duplicate documents, "
+                + deduplicator.getExactDuplicates() + " exact and " + deduplicator.getNearDuplicates()
+                + " near duplicates, found in " + deduplicator.getMillis() + " ms");
+        return deduplicator;
+    }
+
+    /**
+     * @param path path of directory or archive where txt and ann files should be searched
+     * @param options settings with the include and exclude patterns
+     * @return the documents of the directory or archive, null if the input does not exist
+     */
+    private Iterable<DocumentPair> discoverDocuments(String path, ConversionOptions options) {
+        Path input = Paths.get(path);
+        if (Files.isRegularFile(input)) {
+            return new ArchiveDiscovery(input, options.getIncludeGlobs(), options.getExcludeGlobs());
+        } else if (Files.isDirectory(input)) {
+            return new CorpusDiscovery(input, options.getIncludeGlobs(), options.getExcludeGlobs());
+        }
+        System.out.println("input directory " + path + " does not exist");
+        return null;
+    }
+
+    /**
+     * @param allowedLabels labels which are taken over from the .ann files
+     * @param options settings with the cache directory
+     * @return the conversion cache or null if no cache directory is set or the cache could not be opened
+     */
+    private ConversionCache openCache(List<String> allowedLabels, ConversionOptions options) {
+        if (options.getCacheDirectory() == null) {
+            return null;
+        }
+        try {
+            return new ConversionCache(new File(options.getCacheDirectory()),
+                    getConfigurationFingerprint(allowedLabels, options));
+        } catch (IOException e) {
+            System.out.println("conversion cache could not be opened, converting all documents: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * describes everything besides the input files which influences the tokens and labels of a document. Cached
+     * documents are only used if this description did not change.
+     * @param allowedLabels labels which are taken over from the .ann files
+     * @param options settings of the conversion run
+     * @return description of the conversion configuration
+     */
+    String getConfigurationFingerprint(List<String> allowedLabels, ConversionOptions options) {
+        List<String> labels = new ArrayList<>(allowedLabels);
+        Collections.sort(labels);
+        return "version=" + CONVERTER_VERSION + "\n"
+                + "tokenizer=" + PARSING_OPTIONS + "\n"
+                + "labels=" + labels + "\n"
+                + "normalizer=" + normalizer + "\n"
+                + "splitter=" + splitter + "\n"
+                + "legacyAlignment=" + options.isLegacyAlignment() + "\n"
+                + "sentences=" + options.isSentenceSplitting();
+    }
+
+    /**
+     * @param document a converted document
+     * @return the intermediate .tsv file of the document, next to its .txt file
+     */
+    private static File tsvFileOf(DocumentPair document) {
+        return document.getDirectory().resolve(document.getTextName() + ".tsv").toFile();
+    }
+
+    /**
+     * @param pair a document
+     * @param options settings with the chunk size
+     * @return true if the document is larger than the chunk size and is converted in chunks
+     */
+    private static boolean isChunked(DocumentPair pair, ConversionOptions options) {
+        return options.getChunkSize() > 0 && pair.getTextLength() > options.getChunkSize();
+    }
+
+    /**
+     * runs the action which writes a document and records the lines it wrote in the manifest of the partition
+     * @param pair the written document
+     * @param lines counts the lines of the merged file
+     * @param manifest manifest of the partition, null if the corpus is not partitioned
+     * @param write writes the document, writes nothing if the document failed
+     */
+    private static void writeCounted(DocumentPair pair, LineCountingWriter lines, PartitionManifest manifest,
+                                     Runnable write) {
+        if (manifest == null) {
+            write.run();
+            return;
+        }
+        long before = lines.getLines();
+        write.run();
+        if (lines.getLines() > before) {
+            manifest.addDocument(pair.getName(), lines.getLines() - before);
+        }
+    }
+
+    /**
+     * writes a converted document into the merged file, followed by the empty line which separates documents,
+     * and into the binary file, both split into the same sequences
+     * @param writer writer of the merged file, null if only the binary file is written
+     * @param binary writer of the binary file, null if only the merged file is written
+     */
+    private void writeDocument(ConvertedDocument document, PrintWriter writer, BinaryTokenWriter binary,
+                               ConversionMetrics metrics) {
+        long start = metrics.start();
+        List<Integer> cuts = sequenceCuts(document);
+        if (writer != null) {
+            writeAnnotations(document.getTokens(), document.getLabels(), cuts, writer);
+            writer.println();
+        }
+        if (binary != null) {
+            binary.writeDocument(document, cuts);
+        }
+        metrics.stop(ConversionMetrics.Stage.WRITE, start);
+    }
+
+    /**
+     * writes the intermediate .tsv file of a converted document next to its .txt file
+     */
+    private void writeDocumentTSV(DocumentPair pair, ConvertedDocument document, ConversionMetrics metrics) {
+        long start = metrics.start();
+        writeAnnotationsToTSV(document, pair.getTextName(), pair.getDirectory().toString());
+        metrics.stop(ConversionMetrics.Stage.WRITE, start);
+        if (metrics.isTimingEnabled()) {
+            metrics.addBytesWritten(tsvFileOf(pair).length());
+        }
+        System.out.println("created tsv for: " + pair.getName() + ".txt");
+    }
+
+    /**
+     * creates the pipeline read -> tokenize -> match, the documents are written by the consumer of runPipeline()
+     * @param schema labels which are taken over from the .ann files
+     * @param options settings with the number of threads of every stage
+     * @param cache cache of previously converted documents, null if every document should be converted
+     * @param metrics metrics of the conversion run
+     * @return the pipeline
+     */
+    private ConversionPipeline<StagedDocument> newPipeline(LabelSchema schema, ConversionOptions options,
+                                                           ConversionCache cache, ConversionMetrics metrics) {
+        AnnotationConverter converter = new AnnotationConverter(schema, normalizer, splitter);
+        return new ConversionPipeline<StagedDocument>(options.getQueueCapacity())
+                .addStage("read", options.getReadThreads(),
+                        staged -> readStage(staged, schema, options, cache, metrics))
+                .addStage("tokenize", options.getTokenizeThreads(),
+                        staged -> tokenizeStage(staged, converter, cache, metrics))
+                .addStage("match", options.getMatchThreads(), staged -> matchStage(staged, cache, metrics));
+    }
+
+    /**
+     * runs all documents through the pipeline
+     * @param pipeline pipeline created by newPipeline()
+     * @param documents documents which should be converted
+     * @param writer receives every converted or chunked document in the order of documents
+     * @return false if the conversion was interrupted
+     */
+    private boolean runPipeline(ConversionPipeline<StagedDocument> pipeline, Iterable<DocumentPair> documents,
+                                Consumer<StagedDocument> writer) {
+        Iterator<DocumentPair> pairs = documents.iterator();
+        try {
+            pipeline.run(new Iterator<StagedDocument>() {
+                @Override
+                public boolean hasNext() {
+                    return pairs.hasNext();
+                }
+
+                @Override
+                public StagedDocument next() {
+                    return new StagedDocument(pairs.next());
+                }
+            }, writer);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-        Option inputDirectory = Option.builder("i")
-                .required(true)
-                .longOpt("input")
-                .hasArg()
-                .argName("directory")
-                .desc("directory that conatins *.txt and *.ann files")
-                .build();
+    /**
+     * takes the document from the cache or reads its text and annotations, documents which are converted in
+     * chunks are only marked, they are read by the write stage
+     * @return the document or null if it could not be read
+     */
+    private StagedDocument readStage(StagedDocument staged, LabelSchema schema, ConversionOptions options,
+                                     ConversionCache cache, ConversionMetrics metrics) {
+        DocumentPair pair = staged.pair;
+        if (isChunked(pair, options)) {
+            staged.chunked = true;
+            return staged;
+        }
+        try {
+            if (cache != null) {
+                ConvertedDocument cachedDocument = cache.lookup(pair);
+                if (cachedDocument != null) {
+                    metrics.recordDocument(cachedDocument, true);
+                    staged.document = cachedDocument;
+                    return staged;
+                }
+            }
 
-        Option outputDirectory = Option.builder("o")
-                .required(true)
-                .longOpt("output")
-                .hasArg()
-                .argName("directory")
-                .desc("directory where to output the merged *.tsv file")
-                .build();
+            System.out.println("started creating tsv for: " + pair.getName() + ".txt");
+            if (metrics.isTimingEnabled()) {
+                metrics.addBytesRead(pair.getTextLength() + pair.getAnnotationLength());
+            }
+            long start = metrics.start();
+            staged.annotations = readAnnotationIndex(pair, schema);
+            staged.text = readText(pair);
+            metrics.stop(ConversionMetrics.Stage.READ, start);
+            return staged;
+        } catch (IOException | RuntimeException e) {
+            return failStage(staged, "reading the document failed: ", e, cache, metrics);
+        }
+    }
 
-        options.addOption(inputDirectory);
-        options.addOption(outputDirectory);
+    /**
+     * tokenizes, normalizes and aligns the text of a document which was read
+     * @return the document or null if it could not be tokenized
+     */
+    private StagedDocument tokenizeStage(StagedDocument staged, AnnotationConverter converter, ConversionCache cache,
+                                         ConversionMetrics metrics) {
+        if (staged.isDone()) {
+            return staged;
+        }
+        try {
+            long start = metrics.start();
+            List<CoreLabel> tokenLabels = converter.tokenize(staged.text);
+            metrics.stop(ConversionMetrics.Stage.TOKENIZE, start);
+
+            start = metrics.start();
+            AsciiNormalizer.NormalizedText[] normalizedTokens = converter.normalizeTokens(tokenLabels);
+            metrics.stop(ConversionMetrics.Stage.NORMALIZE, start);
+
+            start = metrics.start();
+            staged.alignedTokens = converter.alignTokens(tokenLabels, normalizedTokens);
+            staged.sentenceStarts = findSentenceStarts(tokenLabels, staged.alignedTokens);
+            metrics.stop(ConversionMetrics.Stage.ALIGN, start);
+            staged.text = null;
+            return staged;
+        } catch (RuntimeException e) {
+            return failStage(staged, "tokenizing the document failed: ", e, cache, metrics);
+        }
+    }
 
+    /**
+     * labels the tokens of a document with its annotations and stores the converted document in the cache
+     * @return the document or null if it could not be matched or cached
+     */
+    private StagedDocument matchStage(StagedDocument staged, ConversionCache cache, ConversionMetrics metrics) {
+        if (staged.isDone()) {
+            return staged;
+        }
         try {
-            // parse the command line arguments
-            CommandLine line = cmdParser.parse( options, args );
+            long start = metrics.start();
+            List<String> labels = staged.annotations.labelTokens(staged.alignedTokens);
+            metrics.stop(ConversionMetrics.Stage.MATCH, start);
+            ConvertedDocument document = new ConvertedDocument(staged.pair.getName(),
+                    staged.alignedTokens.getTokens(), labels, staged.annotations.getMatchedCount(),
+                    staged.annotations.getUnmatchedCount(), staged.sentenceStarts);
+            if (document.getUnmatchedAnnotations() > 0) {
+                System.out.println(document.getUnmatchedAnnotations() + " annotations of " + staged.pair.getName()
+                        + ".txt did not match any token");
+            }
+            if (cache != null) {
+                cache.store(document);
+            }
+            metrics.recordDocument(document, false);
+            staged.document = document;
+            staged.annotations = null;
+            staged.alignedTokens = null;
+            return staged;
+        } catch (IOException | RuntimeException e) {
+            return failStage(staged, "matching or caching the document failed: ", e, cache, metrics);
+        }
+    }
 
-            if(line.hasOption("i") && line.hasOption("o")){
+    /**
+     * reports a document which failed in a stage of the pipeline, it is dropped from the output
+     * @return null
+     */
+    private static StagedDocument failStage(StagedDocument staged, String reason, Exception e,
+                                            ConversionCache cache, ConversionMetrics metrics) {
+        e.printStackTrace();
+        metrics.recordFailure(staged.pair.getName() + ".txt", reason + e);
+        if (cache != null) {
+            cache.remove(staged.pair.getName());
+        }
+        return null;
+    }
 
-                FileParser parser = new FileParser();
-                List<String> allowedLabels = new ArrayList<>();
-                allowedLabels.add("COMP");
-                parser.parseAnnotationFilesInDirectory(line.getOptionValue("i"), line.getOptionValue("o"), "merged",allowedLabels);
-            }else{
-                HelpFormatter formatter = new HelpFormatter();
-                formatter.printHelp("FileParser", options);
+    /**
+     * Runs the conversion for all given documents and hands the converted documents to the consumer in the order
+     * of the documents. With more than one thread at most 2 * threads documents are converted ahead of the
+     * consumer, so the memory needed does not grow with the number of documents.
+     * @param documents documents which should be converted, are only taken when a thread is free
+     * @param conversion converts a single document, returns null if the document could not be converted
+     * @param consumer receives all successfully converted documents in the order of documents
+     * @param threads number of documents which are converted at the same time
+     * @param <T> result of the conversion of a document
+     */
+    private <T> void convertInOrder(Iterator<DocumentPair> documents, Function<DocumentPair, T> conversion,
+                                    Consumer<T> consumer, int threads) {
+        if (threads == 1) {
+            while (documents.hasNext()) {
+                T document = conversion.apply(documents.next());
+                if (document != null) {
+                    consumer.accept(document);
+                }
             }
+            return;
         }
-        catch( ParseException exp ) {
-            //print help text
-            HelpFormatter formatter = new HelpFormatter();
-            formatter.printHelp("FileParser", options);
 
-            // oops, something went wrong => print Reason
-            System.err.println( "Parsing failed.  Reason: " + exp.getMessage() );
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Deque<Future<T>> pending = new ArrayDeque<>();
+            while (documents.hasNext() || !pending.isEmpty()) {
+                while (documents.hasNext() && pending.size() < 2 * threads) {
+                    DocumentPair document = documents.next();
+                    pending.add(executor.submit(() -> conversion.apply(document)));
+                }
+                try {
+                    T document = pending.poll().get();
+                    if (document != null) {
+                        consumer.accept(document);
+                    }
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
         }
     }
 
     /**
-     * Scans directory for all txt files where an according .ann file is present and converts them in
-     * a single TSV file named merged.tsv
-     * @param path path of directory where txt and ann files should be searched
-     * @param outputPath
-     * @param outputFileName
-     * @param allowedLabels
+     * Converts a single .txt file for which the according .ann file is present. Errors are reported
+     * and do not stop the conversion of other documents.
+     * @param pair the .txt and .ann file
+     * @param schema labels which are taken over from the .ann file
+     * @param options settings of the conversion run
+     * @param cache cache of previously converted documents, null if every document should be converted
+     * @param metrics metrics of the conversion run
+     * @return the converted document or null if the conversion failed
      */
-    public void parseAnnotationFilesInDirectory(String path, String outputPath, String outputFileName, List<String> allowedLabels) {
-        List<String> fileNames = getFileNames(path);
-        fileNames.stream().filter(fileName -> fileName.contains(".txt")
-                && fileNames.contains(StringUtils.substringBefore(fileName, ".txt") + ".ann")).forEach(fileName -> {
-            System.out.println("started creating tsv for: " + fileName);
+    private ConvertedDocument convertTextFile(DocumentPair pair, LabelSchema schema,
+                                              ConversionOptions options, ConversionCache cache,
+                                              ConversionMetrics metrics) {
+        String fileName = pair.getName() + ".txt";
+        try {
+            if (cache != null) {
+                ConvertedDocument cachedDocument = cache.lookup(pair);
+                if (cachedDocument != null) {
+                    metrics.recordDocument(cachedDocument, true);
+                    return cachedDocument;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            metrics.recordFailure(fileName, "reading the conversion cache failed: " + e);
+            return null;
+        }
 
-            try {
-                createTSVFile(StringUtils.substringBefore(fileName, ".txt"), path, allowedLabels);
-                System.out.println("created tsv for: " + fileName);
-            } catch (StringIndexOutOfBoundsException e) {
-                System.out.println("There was an error with text: " + fileName + " while searching the start positions of the tokens");
-            } catch (IndexOutOfBoundsException e) {
-                System.out.println("There was an error with text: " + fileName + " while matching the tokens");
+        System.out.println("started creating tsv for: " + fileName);
+        try {
+            ConvertedDocument document = convertDocument(pair, schema, options, metrics);
+            if (document.getUnmatchedAnnotations() > 0) {
+                System.out.println(document.getUnmatchedAnnotations() + " annotations of " + fileName
+                        + " did not match any token");
+            }
+            if (cache != null) {
+                cache.store(document);
+            }
+            metrics.recordDocument(document, false);
+            return document;
+        } catch (StringIndexOutOfBoundsException e) {
+            System.out.println("There was an error with text: " + fileName + " while searching the start positions of the tokens");
+            metrics.recordFailure(fileName, "searching the start positions of the tokens failed: " + e);
+        } catch (IndexOutOfBoundsException e) {
+            System.out.println("There was an error with text: " + fileName + " while matching the tokens");
+            metrics.recordFailure(fileName, "matching the tokens failed: " + e);
+        } catch (IOException e) {
+            e.printStackTrace();
+            metrics.recordFailure(fileName, "reading or caching the document failed: " + e);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            metrics.recordFailure(fileName, e.toString());
+        }
+        if (cache != null) {
+            cache.remove(pair.getName());
+        }
+        return null;
+    }
+
+    /**
+     * Converts a document in chunks of options.getChunkSize() chars and writes its tokens into the merged file
+     * while they are produced, so only one chunk of the text is in memory. The stages of the conversion are
+     * interleaved and are recorded together as TOKENIZE. The document is not cached.
+     * @param pair the .txt and .ann file
+     * @param schema labels which are taken over from the .ann file
+     * @param options settings of the conversion run
+     * @param writer writer of the merged file, null if only the binary file is written
+     * @param binary writer of the binary file, null if only the merged file is written
+     * @param metrics metrics of the conversion run
+     * @return false if the conversion failed after a part of the document was written
+     */
+    private boolean streamDocument(DocumentPair pair, LabelSchema schema, ConversionOptions options,
+                                   PrintWriter writer, BinaryTokenWriter binary, ConversionMetrics metrics) {
+        String fileName = pair.getName() + ".txt";
+        System.out.println("started creating tsv in chunks for: " + fileName);
+        if (metrics.isTimingEnabled()) {
+            metrics.addBytesRead(pair.getTextLength() + pair.getAnnotationLength());
+        }
+        AnnotationConverter converter = new AnnotationConverter(schema, normalizer, splitter);
+        long tokens = 0;
+        try {
+            long start = metrics.start();
+            AnnotationIndex annotations = readAnnotationIndex(pair, schema);
+            metrics.stop(ConversionMetrics.Stage.READ, start);
+
+            start = metrics.start();
+            if (binary != null) {
+                binary.startDocument(pair.getName());
+            }
+            SequenceSplitter.Session sequences = sequenceSplitter == null ? null
+                    : sequenceSplitter.start(new SequenceSplitter.Sink() {
+                        @Override
+                        public void token(String token, String label) {
+                            if (writer != null) {
+                                writer.print(token);
+                                writer.print('\t');
+                                writer.println(label);
+                            }
+                            if (binary != null) {
+                                binary.writeToken(token, label);
+                            }
+                        }
+
+                        @Override
+                        public void endSequence() {
+                            if (writer != null) {
+                                writer.println();
+                            }
+                            if (binary != null) {
+                                binary.endSequence();
+                            }
+                        }
+                    });
+            try (Reader text = new InputStreamReader(pair.openText(), StandardCharsets.UTF_8)) {
+                Iterator<LabeledToken> labeledTokens = converter.convertChunked(text, annotations,
+                        options.getChunkSize());
+                while (labeledTokens.hasNext()) {
+                    LabeledToken token = labeledTokens.next();
+                    if (sequences != null) {
+                        if (token.getWord() != null) {
+                            sequences.startWord(token.getWord());
+                        }
+                        sequences.add(token.getToken(), token.getLabel());
+                    } else {
+                        if (writer != null) {
+                            writer.print(token.getToken());
+                            writer.print('\t');
+                            writer.println(token.getLabel());
+                        }
+                        if (binary != null) {
+                            binary.writeToken(token.getToken(), token.getLabel());
+                        }
+                    }
+                    tokens++;
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (sequences != null) {
+                sequences.finish();
             }
+            if (writer != null) {
+                writer.println();
+            }
+            if (binary != null) {
+                binary.endDocument(annotations.getMatchedCount(), annotations.getUnmatchedCount());
+            }
+            metrics.stop(ConversionMetrics.Stage.TOKENIZE, start);
 
-        });
-        mergeTSVFiles(path, outputPath, outputFileName);
+            if (annotations.getUnmatchedCount() > 0) {
+                System.out.println(annotations.getUnmatchedCount() + " annotations of " + fileName
+                        + " did not match any token");
+            }
+            metrics.recordStreamedDocument(tokens, annotations.getMatchedCount(), annotations.getUnmatchedCount());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            metrics.recordFailure(fileName, "converting the document in chunks failed: " + e);
+            if (binary != null) {
+                binary.abortDocument();
+            }
+            // a document without any written token is just missing, like a failed document of the other modes
+            return tokens == 0;
+        }
     }
 
     /**
@@ -100,27 +1686,55 @@ public class FileParser {
      */
     public static void mergeTSVFiles(String path, String outputPath, String fileName) {
         FileParser parser = new FileParser();
-        List<String> fileNames = parser.getFileNames(path);
+        List<File> tsvFiles = parser.getFileNames(path).stream().filter(file -> file.contains(".tsv"))
+                .map(file -> new File(path, file)).collect(Collectors.toList());
         try {
-            fileName += ".tsv";
-            PrintWriter writer = new PrintWriter(outputPath + File.separator + fileName, "UTF-8");
-            fileNames.stream().filter(file -> file.contains(".tsv")).forEach(file -> {
-                List<String> lines = readFileToLines(file, path);
-                lines.forEach(writer::println);
-                writer.println();
-            });
-
-            writer.close();
-        } catch (FileNotFoundException | UnsupportedEncodingException e) {
+            mergeTSVFiles(tsvFiles, new ChannelWriter(new File(outputPath, fileName + ".tsv")));
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Creates TSV File for a single text. Requires according .ann File to be present.
-     * @param textName name of text wanted to convert to TSV format
-     * @param path path to directory where .txt and .ann file are
+     * Merges together the given TSV files in the given order, separated with a free line according to
+     * Standford NER input format
+     * @param tsvFiles files which should be merged
+     * @param output writer of the merged file, closed when all files are merged
+     * @return true if the merged file was written completely
+     */
+    private static boolean mergeTSVFiles(List<File> tsvFiles, ChannelWriter output) {
+        PrintWriter writer = new PrintWriter(output);
+        tsvFiles.forEach(file -> {
+            List<String> lines = readFileToLines(file.getName(), file.getParent());
+            lines.forEach(writer::println);
+            writer.println();
+        });
+
+        writer.close();
+        return !writer.checkError();
+    }
+
+    /**
+     * replaces the merged file with the completely written temporary file in a single step, so programs reading
+     * the merged file, like a running training, never see a half written file
+     * @param temporaryFile completely written merged file
+     * @param mergedFile file which is replaced
+     * @return true if the merged file was replaced
      */
+    static boolean publishMergedFile(File temporaryFile, File mergedFile) {
+        try {
+            try {
+                Files.move(temporaryFile.toPath(), mergedFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile.toPath(), mergedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("merged file " + mergedFile + " could not be replaced: " + e.getMessage());
+            return false;
+        }
+    }
 
     /**
      * Creates TSV File for a single text. Requires according .ann File to be present.
@@ -129,25 +1743,90 @@ public class FileParser {
      * @param allowedLabels
      */
     public void createTSVFile(String textName, String path, List<String> allowedLabels) {
-        FileParser parser = new FileParser();
-        List<AnnotationEntity> entities = parser.readInAnnotationFile(textName, path, allowedLabels);
         try {
-            List<String> tokens = parser.tokenizeText(textName, path);
-            String text = parser.readInText(textName, path);
-            tokens = preprocessTokens(tokens);
-
-            List<Integer> startingPositions = parser.findStartingPositionsOfTokens(tokens, text);
-
-            List<String> labels = parser.matchTokens(tokens, entities, startingPositions);
-            parser.writeAnnotationsToTSV(tokens, labels, textName, path);
+            ConvertedDocument document = convertDocument(new DocumentPair(textName, Paths.get(path), textName),
+                    new LabelSchema(allowedLabels), new ConversionOptions(), new ConversionMetrics(false));
+            writeAnnotationsToTSV(document, textName, path);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Converts a single text into its tokens and the label of each token. Requires according .ann File to be
+     * present.
+     * @param document the .txt and .ann file of the text
+     * @param schema labels which are taken over from the .ann file
+     * @param options settings of the conversion run
+     * @param metrics metrics the time of every stage is recorded in
+     * @return tokens of the text together with their labels
+     * @throws IOException if the text could not be read
+     */
+    ConvertedDocument convertDocument(DocumentPair document, LabelSchema schema,
+                                      ConversionOptions options, ConversionMetrics metrics) throws IOException {
+        if (metrics.isTimingEnabled()) {
+            metrics.addBytesRead(document.getTextLength() + document.getAnnotationLength());
+        }
+
+        if (options.isLegacyAlignment()) {
+            long start = metrics.start();
+            List<AnnotationEntity> entities = readInAnnotationFile(document, schema);
+            String text = readInText(document);
+            metrics.stop(ConversionMetrics.Stage.READ, start);
+
+            start = metrics.start();
+            List<String> words = tokenizeText(document);
+            metrics.stop(ConversionMetrics.Stage.TOKENIZE, start);
+
+            start = metrics.start();
+            int[] firstTokens = new int[words.size()];
+            List<String> tokens = preprocessTokens(words, firstTokens);
+            List<Integer> sentenceStarts = sequenceSplitter == null ? Collections.<Integer>emptyList()
+                    : sequenceSplitter.findSentenceStarts(words, firstTokens, tokens.size());
+            metrics.stop(ConversionMetrics.Stage.NORMALIZE, start);
+
+            start = metrics.start();
+            List<Integer> startingPositions = findStartingPositionsOfTokens(tokens, text);
+            metrics.stop(ConversionMetrics.Stage.ALIGN, start);
+
+            start = metrics.start();
+            List<String> labels = matchTokens(tokens, entities, startingPositions);
+            int matched = (int) labels.stream().filter(label -> !label.equals("O")).count();
+            metrics.stop(ConversionMetrics.Stage.MATCH, start);
+            return new ConvertedDocument(document.getName(), tokens, labels, matched, entities.size() - matched,
+                    sentenceStarts);
+        }
+
+        AnnotationConverter converter = new AnnotationConverter(schema, normalizer, splitter);
+        long start = metrics.start();
+        AnnotationIndex annotations = readAnnotationIndex(document, schema);
+        String text = readText(document);
+        metrics.stop(ConversionMetrics.Stage.READ, start);
+
+        start = metrics.start();
+        List<CoreLabel> tokenLabels = converter.tokenize(text);
+        metrics.stop(ConversionMetrics.Stage.TOKENIZE, start);
+
+        start = metrics.start();
+        AsciiNormalizer.NormalizedText[] normalizedTokens = converter.normalizeTokens(tokenLabels);
+        metrics.stop(ConversionMetrics.Stage.NORMALIZE, start);
+
+        start = metrics.start();
+        AlignedTokens alignedTokens = converter.alignTokens(tokenLabels, normalizedTokens);
+        List<Integer> sentenceStarts = findSentenceStarts(tokenLabels, alignedTokens);
+        metrics.stop(ConversionMetrics.Stage.ALIGN, start);
+
+        start = metrics.start();
+        List<String> labels = annotations.labelTokens(alignedTokens);
+        metrics.stop(ConversionMetrics.Stage.MATCH, start);
+        return new ConvertedDocument(document.getName(), alignedTokens.getTokens(), labels,
+                annotations.getMatchedCount(), annotations.getUnmatchedCount(), sentenceStarts);
+    }
+
     /**
      * Scans directory to list all file names present. This is used to find all pairs of files where an
-     * .ann and .txt file is present
+     * .ann and .txt file is present. The names are sorted so that the documents are always processed and
+     * merged in the same order, independent of the file system.
      * @param path path to directory which should be checked for filenames
      * @return all file names as string containing the file ending as well
      */
@@ -159,6 +1838,7 @@ public class FileParser {
         for (File file : files) {
             fileNames.add(file.getName());
         }
+        Collections.sort(fileNames);
         return fileNames;
     }
 
@@ -170,22 +1850,45 @@ public class FileParser {
      */
     private List<AnnotationEntity> readInAnnotationFile(String textName, String path,
                                                         List<String> allowedLabels) {
-        String fileName = textName + ".ann";
+        return readInAnnotationFile(new DocumentPair(textName, Paths.get(path), textName),
+                new LabelSchema(allowedLabels));
+    }
 
-        List<String> annotations = readFileToLines(fileName, path);
+    /**
+     * Reads annotation file of a document and generates AnnotationEntities for that file.
+     * @param document document for which the .ann file should be parsed
+     * @param schema labels which are taken over
+     * @return List of entities in own AnnotationEntity format
+     */
+    private List<AnnotationEntity> readInAnnotationFile(DocumentPair document, LabelSchema schema) {
+        List<String> annotations = readAnnotationLines(document);
         List<AnnotationEntity> entities= new ArrayList<>();
         int offset = 0;
-        int id = 0;
         for (String annotation : annotations) {
-            List<AnnotationEntity> entitiesInLine =  parseAnnotationLine(annotation, id,
-                    allowedLabels, offset);
-            entities.addAll(entitiesInLine);
-            id += entitiesInLine.size();
+            entities.addAll(parseAnnotationLine(annotation, schema, offset));
         }
         entities = sortAnnotations(entities);
         return entities;
     }
 
+    /**
+     * Reads annotation file of a document and indexes the spans of all annotations with allowed labels.
+     * @param document document for which the .ann file should be parsed
+     * @param schema labels which are taken over
+     * @return spans and labels of the annotations
+     */
+    private AnnotationIndex readAnnotationIndex(DocumentPair document, LabelSchema schema) {
+        String fileName = document.getName() + ".ann";
+
+        AnnotationIndex annotations = new AnnotationIndex(schema);
+        for (String line : readAnnotationLines(document)) {
+            if (!annotations.addAnnotationLine(line)) {
+                System.out.println("skipped invalid annotation in " + fileName + ": " + line);
+            }
+        }
+        return annotations;
+    }
+
     private List<AnnotationEntity> sortAnnotations(List<AnnotationEntity> annotations) {
         Collections.sort(annotations, new Comparator<AnnotationEntity>() {
             public int compare(AnnotationEntity a1, AnnotationEntity a2) {
@@ -199,11 +1902,10 @@ public class FileParser {
      * Parses one line in the .ann File into a List of AnnotationEntity. This is needed because it is possible to have
      * annotations that contain multiple Elements.
      * @param line Line in .ann file to be parsed. This line is in format ID \t Label StartPosition EndPosition \t Content
-     * @param currentIDCounter current annotation ID needed fro create new Annotation
+     * @param schema labels which are taken over
      * @return List of Annotation Entities which then have only one word as content.
      */
-    private List<AnnotationEntity> parseAnnotationLine(String line, int currentIDCounter,
-                                                       List<String> allowedLabels, int offset) {
+    private List<AnnotationEntity> parseAnnotationLine(String line, LabelSchema schema, int offset) {
 
         //line = line.trim().replaceAll(" +", " ");
         String[] annotationParts = line.split("\t");
@@ -212,28 +1914,23 @@ public class FileParser {
 
         // annotation Information contains [Label StartPosition EndPosition]
         String[] annotationInformation = annotationParts[1].split(" ");
-        String label = annotationInformation[0];
-        if (!allowedLabels.contains(label)) {
+        int labelId = schema.getId(annotationInformation[0]);
+        if (labelId < 0) {
             return new ArrayList<>();
         }
+        // all entities share the label String of the schema
+        String label = schema.getLabel(labelId);
 
         int startPosition = Integer.parseInt(annotationInformation[1]);
 
-        List<String> tokenizedContent = tokenizeString(new StringReader(content));
-
-        List<String> splitAnnotations = new ArrayList<>();
-        for (String token : tokenizedContent) {
-            splitAnnotations.addAll(splitAnnotationsByDelimiters(token));
-        }
+        List<String> splitAnnotations = annotationTokens.getTokens(content, this::splitAnnotationContent);
 
         List<AnnotationEntity> entities = new ArrayList<>();
 
         int begin = startPosition + offset;
         for (String annotatedWord : splitAnnotations) {
-            String ID = "T" + currentIDCounter;
-
-            AnnotationEntity entity = new AnnotationEntity(ID, annotatedWord, begin,
-                    begin+annotatedWord.length(), label);
+            AnnotationEntity entity = new AnnotationEntity(annotatedWord, begin, begin + annotatedWord.length(),
+                    label);
 
             begin += annotatedWord.length() + 1;
             entities.add(entity);
@@ -242,85 +1939,110 @@ public class FileParser {
         return entities;
     }
 
+    /**
+     * tokenizes the content of an annotation like the text and splits the tokens at the delimiters
+     * @param content content of the annotation as given in the .ann file
+     * @return tokens of the content
+     */
+    private List<String> splitAnnotationContent(String content) {
+        List<String> splitAnnotations = new ArrayList<>();
+        for (String token : tokenizeString(new StringReader(content))) {
+            splitAnnotations.addAll(splitAnnotationsByDelimiters(token));
+        }
+        return splitAnnotations;
+    }
 
-    private List<String> splitAnnotationsByDelimiters(String content) {
-        List<String> contentParts = Arrays.asList(content.split(" ")).stream()
-                .map(this::splitTokenByDash).flatMap(Collection::stream)
-                .collect(Collectors.toList());
-
-
-        List<String> splittedCommata =
-                contentParts.stream().map(this::splitTokenByComma)
-                        .flatMap(Collection::stream).collect(Collectors.toList());
-
-        List<String> splitByAmpersand = splittedCommata.stream().map(this::splitTokenByAmpersand)
-                .flatMap(Collection::stream).collect(Collectors.toList());
-
-        List<String> splitByPoint = splitByAmpersand.stream().map(this::splitTokenByPoint)
-                .flatMap(Collection::stream).collect(Collectors.toList());
 
-        return splitByPoint;
+    /**
+     * Splits a token at the delimiters of the DelimiterSplitter of this parser, e.g. "Beats-Electronics" into
+     * "Beats", "-" and "Electronics"
+     * @param content token which should be split
+     * @return parts of the token
+     */
+    List<String> splitAnnotationsByDelimiters(String content) {
+        return splitter.split(content);
     }
 
     /**
      * Takes a string as input and replaces all unicode quotes to the respective ascii
-     * representation
+     * representation. The characters which are replaced are defined by the AsciiNormalizer of this parser.
      * @param input text in which quotes should be replaced
      * @return text without unicode Quotes
      */
-    private String applyAsciiTransformation(String input) {
-        String asciiString = input;
-        List<Integer> doubleQuotes =
-                new ArrayList<>(Arrays.asList(0x201c, 0x201d,0x201e, 0x201f, 0x275d, 0x275e,
-                        0x00AB, 0x00BB));
-        List<Integer> singleQuotes =
-                new ArrayList<>(Arrays.asList(0x2018,0x2019,0x201a,0x201b,0x275b,0x275c,0x0091));
-
-        for (Integer doubleQuoteHexValue : doubleQuotes) {
-            String doubleQuote = String.valueOf(Character.toChars(doubleQuoteHexValue));
-            asciiString = asciiString.replaceAll(doubleQuote, "\"");
-        }
-
-        for (Integer singleQuoteHexValue : singleQuotes) {
-            String singleQuote = String.valueOf(Character.toChars(singleQuoteHexValue));
-            asciiString = asciiString.replaceAll(singleQuote, "\'");
-        }
-        String nonBreakingSpace =String.valueOf(Character.toChars(0x00A0));
-        asciiString = asciiString.replaceAll(nonBreakingSpace, " ");
-
-        String tripleDots =String.valueOf(Character.toChars(0x2026));
-        asciiString = asciiString.replaceAll(tripleDots, "...");
-
-        String softHyphen =String.valueOf(Character.toChars(0x00AD));
-        asciiString = asciiString.replaceAll(softHyphen, "");
-
-        return asciiString;
+    String applyAsciiTransformation(String input) {
+        return normalizer.normalize(input);
     }
+
     /**
      * prints matched tokens and labels generated by matchTokens() to an TSV file which can be read by the Standford NER
-     * @param tokens list of tokens which the Standford PTB Tokenizer produces for the text which should be parsed to TSV 
-     * @param labels List of labels, from the annotated file or "O" for other. This is the output generated of the matchTokens method
+     * @param document tokens which the Standford PTB Tokenizer produces for the text together with their labels
      * @param fileName name of TSV file which will be created  
      * @param path output path where the TSV File will be created
      */
-    private void writeAnnotationsToTSV(List<String> tokens, List<String> labels, String fileName, String path) {
+    private void writeAnnotationsToTSV(ConvertedDocument document, String fileName, String path) {
         try {
             fileName += ".tsv";
             //tokens = postProcessTokens(tokens);
-            PrintWriter writer = new PrintWriter(path + File.separator + fileName, "UTF-8");
-            for (int i = 0; i < tokens.size(); i++) {
-                if (labels.size() <= i) {
-                    writer.println(tokens.get(i) + "\t" + "O");
-                } else {
-                    writer.println(tokens.get(i) + "\t" + labels.get(i));
-                }
-            }
+            PrintWriter writer = new PrintWriter(new ChannelWriter(new File(path, fileName)));
+            writeAnnotations(document.getTokens(), document.getLabels(), sequenceCuts(document), writer);
             writer.close();
-        } catch (FileNotFoundException | UnsupportedEncodingException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * @return index of the first token of every sequence but the first, empty if the documents are not split into
+     * sequences
+     */
+    private List<Integer> sequenceCuts(ConvertedDocument document) {
+        SequenceSplitter sequences = sequenceSplitter;
+        return sequences == null ? Collections.<Integer>emptyList()
+                : sequences.split(document.getTokens(), document.getLabels(), document.getSentenceStarts());
+    }
+
+    /**
+     * @param words tokens of the PTB Tokenizer
+     * @param alignedTokens the tokens split from the words
+     * @return index of the first token of every sentence but the first, empty if the documents are not split into
+     * sequences
+     */
+    private List<Integer> findSentenceStarts(List<CoreLabel> words, AlignedTokens alignedTokens) {
+        SequenceSplitter sequences = sequenceSplitter;
+        if (sequences == null) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>(words.size());
+        for (CoreLabel word : words) {
+            values.add(word.value());
+        }
+        return sequences.findSentenceStarts(values, alignedTokens.getWordStarts(), alignedTokens.size());
+    }
+
+    /**
+     * prints matched tokens and labels, one token per line in the form token \t label. If the documents are split
+     * into sequences an empty line is printed between them.
+     * @param tokens list of tokens which the Standford PTB Tokenizer produces for the text
+     * @param labels List of labels, tokens without a label are written with "O" for other
+     * @param sequenceCuts index of the first token of every sequence but the first, see sequenceCuts()
+     * @param writer writer the lines are printed to
+     */
+    private void writeAnnotations(List<String> tokens, List<String> labels, List<Integer> sequenceCuts,
+                                  PrintWriter writer) {
+        Iterator<Integer> cuts = sequenceCuts.iterator();
+        int nextCut = cuts.hasNext() ? cuts.next() : -1;
+        // the parts are written one by one, the line is never built as a String
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i == nextCut) {
+                writer.println();
+                nextCut = cuts.hasNext() ? cuts.next() : -1;
+            }
+            writer.print(tokens.get(i));
+            writer.print('\t');
+            writer.println(labels.size() <= i ? "O" : labels.get(i));
+        }
+    }
+
     /**
      * Match the positions of the Standford Tokenizer to the positions in the text to compare
      * them with the positions in the .ann files later on.
@@ -341,9 +2063,6 @@ public class FileParser {
 
             String nextTextToken = text.substring(textIndex, textIndex + tokenSize);
             //System.out.println(" found " + nextTextToken + " expected " + nextToken);
-            if (nextToken.contains("$")) {
-                System.out.println("'");
-            }
             if (nextTextToken.equals(nextToken)) {
                 startPositions.add(textIndex);
                 textIndex += tokenSize;
@@ -359,21 +2078,13 @@ public class FileParser {
 
     /**
      * helper method that reads in the text and returns it as string with lines separated by " "
-     * @param textName name of the text which should be searched
-     * @param path directory in which the text should be searched
+     * @param document document whose text should be read
      * @return text in given text file with lines separated by " "
      */
-    private String readInText(String textName, String path) {
-        String fileDir = textName + ".txt";
+    private String readInText(DocumentPair document) {
         String text = "";
         try {
-            BufferedReader in = new BufferedReader(
-                    new InputStreamReader(
-                            new FileInputStream(path + File.separator + fileDir), "UTF8"));
-            String line;
-            while ((line = in.readLine()) != null) {
-                text +=  line + " ";
-            }
+            text = readText(document);
         } catch (UnsupportedEncodingException e) {
             System.out.println("invalid encoding");;
         } catch (IOException e) {
@@ -383,16 +2094,29 @@ public class FileParser {
         return text;
     }
 
+    /**
+     * reads in the text without any transformation, so positions in the returned text are the positions used in
+     * the .ann file. Lines are separated by " "
+     * @param document document whose text should be read
+     * @return text in given text file with lines separated by " "
+     * @throws IOException if the text could not be read
+     */
+    private String readText(DocumentPair document) throws IOException {
+        return document.readText();
+    }
+
     /**
      * Takes input of tokenizer and replaces them with the corresponding text representation
      * @param tokens tokens generated by PTB tokenizer
+     * @param firstTokens receives the index of the first cleaned token of every token
      * @return list of cleaned tokens
      */
 
-    private List<String> preprocessTokens(List<String> tokens) {
+    private List<String> preprocessTokens(List<String> tokens, int[] firstTokens) {
         List<String> processedTokens = new ArrayList<>();
-        for (String token : tokens) {
-            String asciiToken = applyAsciiTransformation(token);
+        for (int i = 0; i < tokens.size(); i++) {
+            firstTokens[i] = processedTokens.size();
+            String asciiToken = applyAsciiTransformation(tokens.get(i));
             processedTokens.addAll(splitAnnotationsByDelimiters(asciiToken));
         }
         return processedTokens;
@@ -401,91 +2125,29 @@ public class FileParser {
     /**
      * Method use the generate tokens which have to be labeled to train the Standford NER. This is needed to  
      * partition the text into chunks like expexted from the CRF-Classifier
-     * @param textName name of the text which should be tokenized
-     * @param path directory in which the text should be searched
+     * @param document document whose text should be tokenized
      * @return list of tokens produced by PTBTokenizer
      */
-    private List<String> tokenizeText(String textName, String path) throws IOException {
-        String fileName = textName + ".txt";
-
-        BufferedReader in = new BufferedReader(
-                new InputStreamReader(
-                        new FileInputStream(path+ File.separator +fileName), "UTF8"));
-
-        return tokenizeString(in);
-    }
-
-    private List<String> tokenizeString(Reader inputReader) {
-        List<String> tokens = new ArrayList<>();
-
-        PTBTokenizer<CoreLabel> ptbt = new PTBTokenizer<>(inputReader,
-                new CoreLabelTokenFactory(), PARSING_OPTIONS);
-        while (ptbt.hasNext()) {
-            CoreLabel label = ptbt.next();
-            tokens.add(label.value());
-        }
-
-        return tokens;
-    }
-
-
-    List<String> splitTokenByDelimiterWithoutDeletion(String input, String delimiter) {
-        if (input.equals("Saurenz.BASF")){
-            System.out.printf("");
-            System.out.println(input.split(delimiter).length);
-        }
-        if (input.contains(delimiter)) {
-            List<String> splittedString = new ArrayList<>();
-            if (delimiter.equals(".")) {
-                splittedString = new ArrayList<>(Arrays.asList(input.split("\\.")));
-            } else {
-                splittedString = new ArrayList<>(Arrays.asList(input.split(delimiter)));
-            }
-
-            for (int i = 1; i < splittedString.size(); i += 2) {
-                // i has to be increased by two because elements are added
-                splittedString.add(i, delimiter);
-            }
-            if (splittedString.size() != 0) {
-                return splittedString;
-            }
+    private List<String> tokenizeText(DocumentPair document) throws IOException {
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(document.openText(), "UTF8"))) {
+            return tokenizeString(in);
         }
-        List<String> result = new ArrayList<>();
-        result.add(input);
-        return result;
-    }
-    List<String> splitTokenByComma(String input) {
-        return splitTokenByDelimiterWithoutDeletion(input, ",");
     }
 
-    List<String> splitTokenByAmpersand(String input) {
-        return splitTokenByDelimiterWithoutDeletion(input, "&");
-    }
-
-    List<String> splitTokenByPoint(String input) {
-        return splitTokenByDelimiterWithoutDeletion(input, ".");
+    /**
+     * Tokenizes the text and cleans the tokens like AnnotationConverter does for every document
+     * @param text text as returned by readText(), positions refer to this text
+     * @return cleaned tokens together with their start and end positions in the text
+     */
+    AlignedTokens alignTokens(String text) {
+        return new AnnotationConverter(Collections.<String>emptyList(), normalizer, splitter).alignTokens(text);
     }
 
-    List<String> splitTokenByBackslash(String input) {
-        return splitTokenByDelimiterWithoutDeletion(input, "\\");
+    private List<String> tokenizeString(Reader inputReader) {
+        return AnnotationConverter.tokenizeWords(inputReader);
     }
 
-    List<String> splitTokenByDash(String input) {
-        if (input.contains("-")) {
-            List<String> splittedString = new ArrayList<>(Arrays.asList(input.split("-")));
-
-            for (int i = 1; i < splittedString.size(); i += 2) {
-                // i has to be increased by two because elements are added
-                splittedString.add(i, "-");
-            }
-            if (splittedString.size() != 0) {
-                return splittedString;
-            }
-        }
-        List<String> result = new ArrayList<>();
-        result.add(input);
-        return result;
-    }
 
     /**
      * Converts each word of the tokenized text into the representation of the TSV file
@@ -520,7 +2182,6 @@ public class FileParser {
                 annotationIndex++;
                 //System.out.println("matched: " + annotation.getContent());
                 matchedTokens++;
-                System.out.println("debug this case");
             }
             else {
                 labels.add("O");
@@ -549,76 +2210,93 @@ public class FileParser {
      * @return list if lines of the file as Strings 
      */
     private static List<String> readFileToLines(String fileName, String path) {
-        File file = new File(path + File.separator + fileName);
-        List<String> lines = new ArrayList<>();
-
-
-        Scanner fileScanner = null;
         try {
-            fileScanner = new Scanner(file);
-            while (fileScanner.hasNextLine()) {
-                String line = fileScanner.nextLine();
-                lines.add(line);
-            }
-        } catch (FileNotFoundException e) {
+            return TextInput.readLines(Paths.get(path, fileName));
+        } catch (IOException e) {
             e.printStackTrace();
         }
-        return lines;
-    }
-
-    private void trainModels() {
-        //trainModel("D:\\Job\\AnnotationFileParser\\data\\100Comp.prop", "100comp.ser");
-        //trainModel("D:\\Job\\AnnotationFileParser\\data\\200Comp.prop", "200comp.ser");
-        //trainModel("D:\\Job\\AnnotationFileParser\\data\\Rand.prop", "100rand.ser");
+        return new ArrayList<>();
     }
 
-    private void trainModel(String propPath, String outputName) {
-        Properties properties = new Properties();
-        BufferedInputStream stream = null;
+    /**
+     * reads the .ann file of a document, which may be a file or an entry of an archive
+     * @param document document whose annotations should be read
+     * @return list of lines of the .ann file
+     */
+    private static List<String> readAnnotationLines(DocumentPair document) {
         try {
-            stream = new BufferedInputStream(new FileInputStream
-                    (propPath));
-            properties.load(stream);
-            stream.close();
+            return document.readAnnotationLines();
         } catch (IOException e) {
             e.printStackTrace();
         }
-        CRFClassifier cr = new CRFClassifier(properties);
-        cr.train();
-        cr.serializeClassifier("D:\\Job\\AnnotationFileParser\\data\\" + outputName);
-        CRFClassifier test = new CRFClassifier(properties);
-        try {
-            test.loadClassifier("D:\\Job\\AnnotationFileParser\\data\\" + outputName);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+        return new ArrayList<>();
+    }
+
+    /**
+     * A document on its way through the ConversionPipeline, every stage fills in its result and drops what the
+     * following stages do not need any more.
+     */
+    private static class StagedDocument {
+        private final DocumentPair pair;
+        private String text;
+        private AnnotationIndex annotations;
+        private AlignedTokens alignedTokens;
+        private List<Integer> sentenceStarts;
+        // set by the match stage or taken from the cache
+        private ConvertedDocument document;
+        // converted in chunks by the write stage
+        private boolean chunked;
+
+        StagedDocument(DocumentPair pair) {
+            this.pair = pair;
         }
 
+        boolean isDone() {
+            return document != null || chunked;
+        }
     }
+
     /**
-     * method needed to read in annotation configurations which can be used to verify if all the labels present in the current
-     * annotation file are defined and valid. For now it is enough to just read all entities from the configuration file.
-     * Unlike in Brat for the moment the method requires the configuration File to be present in the given location and does not
-     * search for it in higher directories     
-     * @param path path to the location of the annotation file  
-     * @return list of labels of entities defined in the configuration file
+     * Counts the line breaks written through it, so the lines of every document in the merged file are known
+     * without reading the file again.
      */
-    private List<String> parseConfigurationFile(String path) {
-        List<String> configuration = readFileToLines("annotation.conf", path);
-        List<String> entityLabels = new ArrayList<>();
-        for (String line : configuration) {
-            if (line.equals("[entities]") || line.equals("")){
-                continue;
+    private static class LineCountingWriter extends FilterWriter {
+        private long lines = 0;
+
+        LineCountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (c == '\n') {
+                lines++;
             }
-            else if (line.equals("[relations]")) {
-                //for now only read the entities
-                break;
+            out.write(c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                if (buffer[i] == '\n') {
+                    lines++;
+                }
             }
-            else {
-                entityLabels.add(line);
+            out.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                if (text.charAt(i) == '\n') {
+                    lines++;
+                }
             }
+            out.write(text, offset, length);
+        }
+
+        long getLines() {
+            return lines;
         }
-        return entityLabels;
     }
 }
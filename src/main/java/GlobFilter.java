@@ -0,0 +1,49 @@
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides with include and exclude glob patterns which documents are converted. The patterns are matched against
+ * the path of the .txt file relative to the input, e.g. "news/**".
+ */
+class GlobFilter {
+    private final List<PathMatcher> includes = new ArrayList<>();
+    private final List<PathMatcher> excludes = new ArrayList<>();
+
+    /**
+     * @param fileSystem file system whose glob syntax is used
+     * @param includeGlobs only matching documents are converted, all documents if the list is empty
+     * @param excludeGlobs matching documents are skipped
+     */
+    GlobFilter(FileSystem fileSystem, List<String> includeGlobs, List<String> excludeGlobs) {
+        for (String glob : includeGlobs) {
+            includes.add(fileSystem.getPathMatcher("glob:" + glob));
+        }
+        for (String glob : excludeGlobs) {
+            excludes.add(fileSystem.getPathMatcher("glob:" + glob));
+        }
+    }
+
+    /**
+     * @param relativePath path of the .txt file relative to the input
+     * @return true if the document should be converted
+     */
+    boolean isIncluded(Path relativePath) {
+        for (PathMatcher exclude : excludes) {
+            if (exclude.matches(relativePath)) {
+                return false;
+            }
+        }
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (PathMatcher include : includes) {
+            if (include.matches(relativePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
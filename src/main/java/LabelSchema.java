@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The labels which are taken over from the .ann files, compiled into small integer ids. Labels are looked up in
+ * an open addressing hash table directly in the annotation line, so checking the label of a line neither creates
+ * a String nor searches a list, and annotations store the id instead of their own label String.
+ */
+public class LabelSchema {
+    /** name of the brat configuration file, usually in the root directory of a collection */
+    public static final String CONFIGURATION_FILE = "annotation.conf";
+
+    private final String[] labels;
+    // slot i holds the id of a label + 1, 0 for an empty slot
+    private final int[] table;
+    private final int mask;
+
+    /**
+     * @param labels labels which are taken over, duplicates are ignored
+     */
+    public LabelSchema(Collection<String> labels) {
+        this.labels = new LinkedHashSet<>(labels).toArray(new String[0]);
+        int capacity = Integer.highestOneBit(Math.max(2, this.labels.length * 4) - 1) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        for (int id = 0; id < this.labels.length; id++) {
+            int slot = hash(this.labels[id], 0, this.labels[id].length()) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    /**
+     * reads the entity types of the [entities] section of a brat annotation.conf. Comments, abstract types
+     * starting with ! and the indentation of the type hierarchy are ignored.
+     * @param file the annotation.conf
+     * @return schema with the entity types of the file
+     * @throws IOException if the file could not be read or defines no entity types
+     */
+    public static LabelSchema fromConfiguration(Path file) throws IOException {
+        List<String> entityLabels = new ArrayList<>();
+        boolean inEntities = false;
+        for (String line : TextInput.readLines(file)) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("[")) {
+                inEntities = trimmed.equals("[entities]");
+            } else if (inEntities && !trimmed.isEmpty() && !trimmed.startsWith("#") && !trimmed.startsWith("!")) {
+                // further columns of an entity line are arguments of the type
+                entityLabels.add(trimmed.split("\\s+")[0]);
+            }
+        }
+        if (entityLabels.isEmpty()) {
+            throw new IOException(file + " defines no entity types");
+        }
+        return new LabelSchema(entityLabels);
+    }
+
+    /**
+     * @param label a label
+     * @return id of the label, -1 if the label is not taken over
+     */
+    public int getId(String label) {
+        return getId(label, 0, label.length());
+    }
+
+    /**
+     * looks up the label text[start..end) without creating a String
+     * @param text text containing the label, e.g. a line of a .ann file
+     * @param start index of the first character of the label
+     * @param end index after the last character of the label
+     * @return id of the label, -1 if the label is not taken over
+     */
+    public int getId(String text, int start, int end) {
+        int length = end - start;
+        for (int slot = hash(text, start, end) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            String label = labels[table[slot] - 1];
+            if (label.length() == length && text.regionMatches(start, label, 0, length)) {
+                return table[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param id id returned by getId()
+     * @return the label, always the same String instance for an id
+     */
+    public String getLabel(int id) {
+        return labels[id];
+    }
+
+    /**
+     * @return all labels in the order of their ids
+     */
+    public List<String> getLabels() {
+        return Collections.unmodifiableList(Arrays.asList(labels));
+    }
+
+    public int size() {
+        return labels.length;
+    }
+
+    private static int hash(String text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        // spread the high bits, the table only uses the low ones
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(labels);
+    }
+}
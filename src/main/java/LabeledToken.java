@@ -0,0 +1,70 @@
+/**
+ * A token of a converted text together with its label and its position in the text.
+ */
+public class LabeledToken {
+    private final String token;
+    private final String label;
+    private final int begin;
+    private final int end;
+    private final String word;
+
+    /**
+     * @param token cleaned token as written to the TSV file
+     * @param label label of the annotation covering the token, "O" for tokens which are not annotated
+     * @param begin start position of the token in the text
+     * @param end end position of the token in the text (exclusive)
+     */
+    LabeledToken(String token, String label, int begin, int end) {
+        this(token, label, begin, end, null);
+    }
+
+    /**
+     * @param token cleaned token as written to the TSV file
+     * @param label label of the annotation covering the token, "O" for tokens which are not annotated
+     * @param begin start position of the token in the text
+     * @param end end position of the token in the text (exclusive)
+     * @param word token of the PTB Tokenizer if the token is its first part, else null
+     */
+    LabeledToken(String token, String label, int begin, int end, String word) {
+        this.token = token;
+        this.label = label;
+        this.begin = begin;
+        this.end = end;
+        this.word = word;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return start position of the token in the text, the position the .ann file uses
+     */
+    public int getBegin() {
+        return begin;
+    }
+
+    /**
+     * @return end position of the token in the text (exclusive)
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the token of the PTB Tokenizer this token was split from if it is the first part of it, null for the
+     * following parts
+     */
+    public String getWord() {
+        return word;
+    }
+
+    @Override
+    public String toString() {
+        return token + "\t" + label;
+    }
+}
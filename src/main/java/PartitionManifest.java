@@ -0,0 +1,431 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Describes the share of a corpus converted by one of N independent runs with --partition k/N. Every document
+ * belongs to exactly one partition, chosen by a CRC32 of its path relative to the input directory, so the
+ * partitions do not depend on the machine, the file system or the other documents. Every run still discovers the
+ * whole corpus and records the position of its documents in the complete order, together with the number of
+ * lines each document has in the partial .tsv file. merge() uses this to interleave the partial files into
+ * the merged file a single run would have written, byte for byte, as long as all runs saw the same input and
+ * configuration and use the same line separator.
+ * The manifest is a text file next to the partial .tsv file: header lines starting with "# " followed by one
+ * line "position \t lines \t name" per written document.
+ */
+public class PartitionManifest {
+    public static final String FILE_ENDING = ".manifest";
+    private static final String HEADER_PREFIX = "# ";
+    private static final String FAILURE_HEADER = "failure";
+    private static final String[] COUNTERS = {"converted", "fromCache", "failed", "tokens", "matched", "unmatched",
+            "elapsedMillis"};
+
+    private final int partition;
+    private final int partitionCount;
+    private final String configuration;
+    private volatile long documentCount;
+    private String tsvFileName;
+    private long tsvBytes;
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private final List<String[]> failures = new ArrayList<>();
+    private final List<Entry> entries = new ArrayList<>();
+    // positions of the selected documents which are not written yet
+    private final Map<String, Long> pendingPositions = new ConcurrentHashMap<>();
+
+    /**
+     * @param partition number of the partition, from 1 to partitionCount
+     * @param partitionCount number of partitions the corpus is split into
+     * @param configuration hash of the configuration of the conversion, all partitions have to use the same
+     */
+    public PartitionManifest(int partition, int partitionCount, String configuration) {
+        if (partitionCount < 1 || partition < 1 || partition > partitionCount) {
+            throw new IllegalArgumentException("partition has to be between 1 and " + partitionCount + " but was: "
+                    + partition);
+        }
+        this.partition = partition;
+        this.partitionCount = partitionCount;
+        this.configuration = configuration;
+    }
+
+    /**
+     * @param name path of the document relative to the input directory, without ending
+     * @param partition number of the partition, from 1 to partitionCount
+     * @param partitionCount number of partitions the corpus is split into
+     * @return true if the document belongs to the partition
+     */
+    public static boolean isInPartition(String name, int partition, int partitionCount) {
+        CRC32 crc = new CRC32();
+        crc.update(name.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue() % partitionCount == partition - 1;
+    }
+
+    /**
+     * @param partition number of the partition, from 1 to partitionCount
+     * @param partitionCount number of partitions the corpus is split into
+     * @return suffix of the partial .tsv and manifest file of the partition, e.g. ".part-2-of-4"
+     */
+    public static String fileSuffix(int partition, int partitionCount) {
+        return ".part-" + partition + "-of-" + partitionCount;
+    }
+
+    /**
+     * returns the documents of this partition and remembers the position of each one in the whole corpus
+     * @param documents all documents of the corpus in the order of the merged file
+     * @return the documents which belong to this partition, in the same order
+     */
+    public Iterable<DocumentPair> select(Iterable<DocumentPair> documents) {
+        return () -> new Iterator<DocumentPair>() {
+            private final Iterator<DocumentPair> all = documents.iterator();
+            private DocumentPair next;
+            private long position = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && all.hasNext()) {
+                    DocumentPair document = all.next();
+                    if (isInPartition(document.getName(), partition, partitionCount)) {
+                        pendingPositions.put(document.getName(), position);
+                        next = document;
+                    }
+                    documentCount = ++position;
+                }
+                return next != null;
+            }
+
+            @Override
+            public DocumentPair next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                DocumentPair document = next;
+                next = null;
+                return document;
+            }
+        };
+    }
+
+    /**
+     * records a document written to the partial .tsv file, documents have to be added in the order of the file
+     * @param name name of a document returned by select()
+     * @param lines number of lines of the document in the partial file, including the empty line after it
+     */
+    public void addDocument(String name, long lines) {
+        Long position = pendingPositions.remove(name);
+        if (position == null) {
+            throw new IllegalArgumentException(name + " was not selected for partition " + partition);
+        }
+        entries.add(new Entry(position, lines, name));
+    }
+
+    /**
+     * takes over the counters of the run of this partition, they are summed up by writeMergedMetrics()
+     * @param metrics metrics of the run
+     */
+    public void setMetrics(ConversionMetrics metrics) {
+        counters.put("converted", metrics.getConvertedDocuments());
+        counters.put("fromCache", metrics.getCachedDocuments());
+        counters.put("failed", (long) metrics.getFailures().size());
+        counters.put("tokens", metrics.getTokens());
+        counters.put("matched", metrics.getMatchedAnnotations());
+        counters.put("unmatched", metrics.getUnmatchedAnnotations());
+        counters.put("elapsedMillis", metrics.getElapsedMillis());
+        failures.clear();
+        failures.addAll(metrics.getFailures());
+    }
+
+    /**
+     * writes the manifest, it is written to a temporary file first and replaces the old manifest when complete
+     * @param manifestFile file of the manifest
+     * @param tsvFile partial .tsv file of the partition, has to be in the same directory
+     * @throws IOException if the manifest could not be written
+     */
+    public void write(File manifestFile, File tsvFile) throws IOException {
+        tsvFileName = tsvFile.getName();
+        tsvBytes = tsvFile.length();
+        File temporaryFile = new File(manifestFile.getPath() + ".tmp");
+        try (PrintWriter writer = new PrintWriter(temporaryFile, "UTF-8")) {
+            writer.println(HEADER_PREFIX + "partition " + partition + "/" + partitionCount);
+            writer.println(HEADER_PREFIX + "configuration " + configuration);
+            writer.println(HEADER_PREFIX + "documents " + documentCount);
+            writer.println(HEADER_PREFIX + "tsv " + tsvFileName);
+            writer.println(HEADER_PREFIX + "tsvBytes " + tsvBytes);
+            for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                writer.println(HEADER_PREFIX + counter.getKey() + " " + counter.getValue());
+            }
+            for (String[] failure : failures) {
+                writer.println(HEADER_PREFIX + FAILURE_HEADER + " " + singleLine(failure[0]) + "\t"
+                        + singleLine(failure[1]));
+            }
+            for (Entry entry : entries) {
+                writer.println(entry.position + "\t" + entry.lines + "\t" + entry.name);
+            }
+            if (writer.checkError()) {
+                throw new IOException("writing " + temporaryFile + " failed");
+            }
+        }
+        Files.move(temporaryFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @param manifestFile manifest written by write()
+     * @return the manifest
+     * @throws IOException if the manifest could not be read or is not a partition manifest
+     */
+    public static PartitionManifest read(File manifestFile) throws IOException {
+        Map<String, String> header = new HashMap<>();
+        List<String[]> failures = new ArrayList<>();
+        List<Entry> entries = new ArrayList<>();
+        for (String line : TextInput.readLines(manifestFile.toPath())) {
+            if (line.startsWith(HEADER_PREFIX)) {
+                String[] field = line.substring(HEADER_PREFIX.length()).split(" ", 2);
+                if (field[0].equals(FAILURE_HEADER) && field.length == 2) {
+                    failures.add(field[1].split("\t", 2));
+                } else if (field.length == 2) {
+                    header.put(field[0], field[1]);
+                }
+            } else if (!line.isEmpty()) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length != 3) {
+                    throw new IOException("invalid line in " + manifestFile + ": " + line);
+                }
+                entries.add(new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]));
+            }
+        }
+
+        String[] partition = header.getOrDefault("partition", "").split("/");
+        if (partition.length != 2 || !header.containsKey("tsv")) {
+            throw new IOException(manifestFile + " is not a partition manifest");
+        }
+        try {
+            PartitionManifest manifest = new PartitionManifest(Integer.parseInt(partition[0]),
+                    Integer.parseInt(partition[1]), header.get("configuration"));
+            manifest.documentCount = Long.parseLong(header.get("documents"));
+            manifest.tsvFileName = header.get("tsv");
+            manifest.tsvBytes = Long.parseLong(header.get("tsvBytes"));
+            for (String counter : COUNTERS) {
+                if (header.containsKey(counter)) {
+                    manifest.counters.put(counter, Long.parseLong(header.get(counter)));
+                }
+            }
+            manifest.failures.addAll(failures);
+            manifest.entries.addAll(entries);
+            return manifest;
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IOException("invalid header in " + manifestFile + ": " + e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(manifestFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Interleaves the partial .tsv files of all partitions into the merged file, in the order of the whole
+     * corpus. The bytes of every document are copied unchanged.
+     * @param manifestFiles the manifests of all partitions of one conversion, each read from its own directory
+     * @param mergedFile file which is created
+     * @return null if the merged file was written, otherwise the reason why the partitions could not be merged
+     * @throws IOException if a partial file could not be read or the merged file could not be written
+     */
+    public static String merge(List<File> manifestFiles, File mergedFile) throws IOException {
+        List<PartitionManifest> manifests = new ArrayList<>();
+        for (File manifestFile : manifestFiles) {
+            manifests.add(read(manifestFile));
+        }
+        String problem = validate(manifests, manifestFiles);
+        if (problem != null) {
+            return problem;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        Map<Entry, Integer> partitions = new HashMap<>();
+        for (int i = 0; i < manifests.size(); i++) {
+            for (Entry entry : manifests.get(i).entries) {
+                entries.add(entry);
+                partitions.put(entry, i);
+            }
+        }
+        entries.sort(Comparator.comparingLong(entry -> entry.position));
+
+        LineCopier[] inputs = new LineCopier[manifests.size()];
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(mergedFile))) {
+            for (int i = 0; i < manifests.size(); i++) {
+                inputs[i] = new LineCopier(new FileInputStream(
+                        new File(manifestFiles.get(i).getParentFile(), manifests.get(i).tsvFileName)));
+            }
+            for (Entry entry : entries) {
+                if (!inputs[partitions.get(entry)].copyLines(out, entry.lines)) {
+                    return "partial file of partition " + manifests.get(partitions.get(entry)).partition
+                            + " ends before document " + entry.name;
+                }
+            }
+            for (int i = 0; i < inputs.length; i++) {
+                if (!inputs[i].isAtEnd()) {
+                    return "partial file of partition " + manifests.get(i).partition
+                            + " has more lines than its manifest lists";
+                }
+            }
+        } finally {
+            for (LineCopier input : inputs) {
+                if (input != null) {
+                    input.close();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * writes the summed up counters of all partitions as JSON, the elapsed time is the one of the slowest
+     * partition
+     * @param manifestFiles the manifests of all partitions
+     * @param file file the summary is written to
+     * @throws IOException if a manifest could not be read or the file could not be written
+     */
+    public static void writeMergedMetrics(List<File> manifestFiles, String file) throws IOException {
+        Map<String, Long> sums = new LinkedHashMap<>();
+        List<String[]> failures = new ArrayList<>();
+        for (File manifestFile : manifestFiles) {
+            PartitionManifest manifest = read(manifestFile);
+            for (Map.Entry<String, Long> counter : manifest.counters.entrySet()) {
+                sums.merge(counter.getKey(), counter.getValue(),
+                        counter.getKey().equals("elapsedMillis") ? Math::max : Long::sum);
+            }
+            failures.addAll(manifest.failures);
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"partitions\": ").append(manifestFiles.size()).append(",\n");
+        json.append("  \"elapsedMillis\": ").append(sums.getOrDefault("elapsedMillis", 0L)).append(",\n");
+        json.append("  \"documents\": {\"converted\": ").append(sums.getOrDefault("converted", 0L))
+                .append(", \"fromCache\": ").append(sums.getOrDefault("fromCache", 0L))
+                .append(", \"failed\": ").append(sums.getOrDefault("failed", 0L)).append("},\n");
+        json.append("  \"tokens\": ").append(sums.getOrDefault("tokens", 0L)).append(",\n");
+        json.append("  \"annotations\": {\"matched\": ").append(sums.getOrDefault("matched", 0L))
+                .append(", \"unmatched\": ").append(sums.getOrDefault("unmatched", 0L)).append("},\n");
+        json.append("  \"failures\": [");
+        for (int i = 0; i < failures.size(); i++) {
+            String[] failure = failures.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"document\": \"").append(ConversionMetrics.escape(failure[0]))
+                    .append("\", \"reason\": \"")
+                    .append(ConversionMetrics.escape(failure.length > 1 ? failure[1] : "")).append("\"}");
+        }
+        json.append(failures.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(json.toString());
+        }
+    }
+
+    /**
+     * @return null if the manifests are the complete set of partitions of the same conversion, otherwise the reason
+     */
+    private static String validate(List<PartitionManifest> manifests, List<File> manifestFiles) {
+        if (manifests.isEmpty()) {
+            return "no partition manifest found";
+        }
+        PartitionManifest first = manifests.get(0);
+        boolean[] seen = new boolean[first.partitionCount];
+        for (int i = 0; i < manifests.size(); i++) {
+            PartitionManifest manifest = manifests.get(i);
+            if (manifest.partitionCount != first.partitionCount) {
+                return manifestFiles.get(i) + " belongs to a split into " + manifest.partitionCount
+                        + " partitions, " + manifestFiles.get(0) + " to a split into " + first.partitionCount;
+            }
+            if (!Objects.equals(manifest.configuration, first.configuration)) {
+                return manifestFiles.get(i) + " was converted with a different configuration than "
+                        + manifestFiles.get(0);
+            }
+            if (manifest.documentCount != first.documentCount) {
+                return manifestFiles.get(i) + " saw " + manifest.documentCount + " documents in the corpus, "
+                        + manifestFiles.get(0) + " saw " + first.documentCount;
+            }
+            if (seen[manifest.partition - 1]) {
+                return "partition " + manifest.partition + " is given twice";
+            }
+            seen[manifest.partition - 1] = true;
+            File tsvFile = new File(manifestFiles.get(i).getParentFile(), manifest.tsvFileName);
+            if (tsvFile.length() != manifest.tsvBytes) {
+                return tsvFile + " does not have the size recorded in " + manifestFiles.get(i);
+            }
+        }
+        for (int partition = 1; partition <= seen.length; partition++) {
+            if (!seen[partition - 1]) {
+                return "partition " + partition + " of " + seen.length + " is missing";
+            }
+        }
+        return null;
+    }
+
+    private static String singleLine(String value) {
+        return value.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * A document in the partial file: its position in the whole corpus and its number of lines.
+     */
+    private static class Entry {
+        private final long position;
+        private final long lines;
+        private final String name;
+
+        Entry(long position, long lines, String name) {
+            this.position = position;
+            this.lines = lines;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Copies whole lines from a partial file, a line ends with \n, so \r\n line separators are copied as well.
+     */
+    private static class LineCopier implements Closeable {
+        private final InputStream in;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int position = 0;
+        private int limit = 0;
+
+        LineCopier(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @return false if the file ended before the lines were copied
+         */
+        boolean copyLines(OutputStream out, long lines) throws IOException {
+            while (lines > 0) {
+                if (position == limit && !fill()) {
+                    return false;
+                }
+                int start = position;
+                while (position < limit && lines > 0) {
+                    if (buffer[position++] == '\n') {
+                        lines--;
+                    }
+                }
+                out.write(buffer, start, position - start);
+            }
+            return true;
+        }
+
+        boolean isAtEnd() throws IOException {
+            return position == limit && !fill();
+        }
+
+        private boolean fill() throws IOException {
+            int read = in.read(buffer);
+            position = 0;
+            limit = Math.max(read, 0);
+            return read > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
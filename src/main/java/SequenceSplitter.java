@@ -0,0 +1,270 @@
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.process.WordToSentenceProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Splits the tokens of a document into sentence level sequences, written with an empty line between them like
+ * documents, so the CRF trains on sentences instead of whole documents. The sentences are found by the
+ * WordToSentenceProcessor of CoreNLP on the tokens of the PTB Tokenizer, before they are split at the delimiters,
+ * so the dots of abbreviations like "z.B." do not end a sentence. A sentence starts at the first converted token
+ * of its first PTB token. Sequences longer than the maximal length are cut as well. A sequence is never cut
+ * inside an annotation: a cut is only made in front of a token labeled "O" or labeled differently than the token
+ * before, otherwise the sequence continues until the annotation ends.
+ * The splitter is immutable and can be used by any number of threads at the same time.
+ */
+public class SequenceSplitter {
+    // tokens kept in memory while the end of their sentence is searched, longer runs are passed on uncut
+    private static final int MAX_BUFFERED_TOKENS = 4096;
+
+    private final int maxLength;
+    private final WordToSentenceProcessor<PtbWord> sentences = new WordToSentenceProcessor<>(
+            WordToSentenceProcessor.DEFAULT_BOUNDARY_REGEX, WordToSentenceProcessor.DEFAULT_BOUNDARY_FOLLOWERS,
+            Collections.<String>emptySet(), WordToSentenceProcessor.NewlineIsSentenceBreak.NEVER);
+
+    /**
+     * @param maxLength maximal number of tokens of a sequence, 0 to only cut at sentence ends
+     */
+    public SequenceSplitter(int maxLength) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("maximal sequence length must not be negative but was: " + maxLength);
+        }
+        this.maxLength = maxLength;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * finds the sentences of a document in the tokens of the PTB Tokenizer. Tokens which were dropped completely
+     * by the normalization and the delimiters are not part of any sentence.
+     * @param words tokens of the PTB Tokenizer
+     * @param firstTokens index of the first converted token of every word
+     * @param tokenCount number of converted tokens of the document
+     * @return index of the first converted token of every sentence but the first, ascending
+     */
+    public List<Integer> findSentenceStarts(List<String> words, int[] firstTokens, int tokenCount) {
+        List<PtbWord> convertedWords = new ArrayList<>(words.size());
+        for (int i = 0; i < words.size(); i++) {
+            int end = i + 1 < words.size() ? firstTokens[i + 1] : tokenCount;
+            if (firstTokens[i] < end) {
+                convertedWords.add(new PtbWord(words.get(i), firstTokens[i]));
+            }
+        }
+        List<Integer> sentenceStarts = new ArrayList<>();
+        for (PtbWord start : findSentences(convertedWords)) {
+            sentenceStarts.add(start.firstToken);
+        }
+        if (!sentenceStarts.isEmpty()) {
+            sentenceStarts.remove(0);
+        }
+        return sentenceStarts;
+    }
+
+    /**
+     * @param words tokens of the PTB Tokenizer
+     * @return the first word of every sentence. The processor drops some words, e.g. a quote in the middle of a
+     * sentence, so the sentences are only identified by their first word.
+     */
+    private List<PtbWord> findSentences(List<PtbWord> words) {
+        List<PtbWord> starts = new ArrayList<>();
+        for (List<PtbWord> sentence : sentences.process(words)) {
+            if (!sentence.isEmpty()) {
+                starts.add(sentence.get(0));
+            }
+        }
+        return starts;
+    }
+
+    /**
+     * @param tokens tokens of a document
+     * @param labels label of every token, missing labels are "O"
+     * @param sentenceStarts index of the first token of every sentence but the first, see findSentenceStarts()
+     * @return index of the first token of every sequence but the first, ascending
+     */
+    public List<Integer> split(List<String> tokens, List<String> labels, List<Integer> sentenceStarts) {
+        List<Integer> cuts = new ArrayList<>();
+        Iterator<Integer> starts = sentenceStarts.iterator();
+        int nextStart = starts.hasNext() ? starts.next() : -1;
+        int sequenceLength = 0;
+        String lastLabel = null;
+        for (int i = 0; i < tokens.size(); i++) {
+            String label = i < labels.size() ? labels.get(i) : "O";
+            boolean sentenceStart = i == nextStart;
+            if (sentenceStart) {
+                nextStart = starts.hasNext() ? starts.next() : -1;
+            }
+            if (sequenceLength > 0 && (sentenceStart || (maxLength > 0 && sequenceLength >= maxLength))
+                    && canCut(lastLabel, label)) {
+                cuts.add(i);
+                sequenceLength = 0;
+            }
+            sequenceLength++;
+            lastLabel = label;
+        }
+        return cuts;
+    }
+
+    /**
+     * starts splitting a document whose tokens are added one at a time, e.g. while it is converted in chunks
+     * @param sink receives the tokens and the ends of the sequences
+     * @return session the tokens of the document are added to
+     */
+    public Session start(Sink sink) {
+        return new Session(sink);
+    }
+
+    /**
+     * @param labelBefore label of the token in front of the cut
+     * @param labelAfter label of the token after the cut
+     * @return true if the cut is not inside an annotation
+     */
+    private static boolean canCut(String labelBefore, String labelAfter) {
+        return labelAfter.equals("O") || !labelAfter.equals(labelBefore);
+    }
+
+    /**
+     * Receives the tokens of a document in order, with the end of every sequence but the last.
+     */
+    public interface Sink {
+        void token(String token, String label);
+
+        void endSequence();
+    }
+
+    /**
+     * Splits a single document. Tokens are buffered until the end of their sentence is known and passed to the
+     * sink then, so only the current sentence is held in memory. Every token of the PTB Tokenizer is started with
+     * startWord() and followed by the converted tokens which were split from it.
+     */
+    public class Session {
+        private final Sink sink;
+        private final List<String> tokens = new ArrayList<>();
+        private final List<String> labels = new ArrayList<>();
+        // the first token of every word is an index into the buffered tokens
+        private final List<PtbWord> words = new ArrayList<>();
+        // tokens of the current sequence which were passed to the sink
+        private int sequenceLength = 0;
+        private String lastLabel = null;
+
+        private Session(Sink sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * starts the next token of the PTB Tokenizer, the converted tokens added after it were split from it
+         * @param word token of the PTB Tokenizer
+         */
+        public void startWord(String word) {
+            if (tokens.size() >= MAX_BUFFERED_TOKENS) {
+                pass(false);
+            }
+            words.add(new PtbWord(word, tokens.size()));
+        }
+
+        /**
+         * @param token next token of the document, part of the last started word
+         * @param label label of the token
+         */
+        public void add(String token, String label) {
+            tokens.add(token);
+            labels.add(label);
+        }
+
+        /**
+         * passes the remaining tokens to the sink, the end of the document is not reported as end of a sequence
+         */
+        public void finish() {
+            pass(true);
+        }
+
+        /**
+         * passes the complete sentences of the buffer to the sink. The last sentence stays in the buffer unless
+         * the document ended, following words may still belong to it.
+         */
+        private void pass(boolean documentEnded) {
+            // words whose tokens were all dropped are not part of any sentence, like in findSentenceStarts()
+            for (int i = words.size() - 1; i >= 0; i--) {
+                int end = i + 1 < words.size() ? words.get(i + 1).firstToken : tokens.size();
+                if (words.get(i).firstToken == end) {
+                    words.remove(i);
+                }
+            }
+            List<PtbWord> sentenceStarts = findSentences(words);
+            int passed = 0;
+            for (int sentence = 1; sentence < sentenceStarts.size(); sentence++) {
+                int sentenceStart = sentenceStarts.get(sentence).firstToken;
+                while (passed < sentenceStart) {
+                    passToken(passed++);
+                }
+                if (canCut(lastLabel, labels.get(sentenceStart))) {
+                    endSequence();
+                }
+            }
+            int keptWords = 0;
+            if (!documentEnded && !sentenceStarts.isEmpty()) {
+                int keptWord = words.indexOf(sentenceStarts.get(sentenceStarts.size() - 1));
+                // a long last sentence is passed on uncut up to the word the kept tokens start with
+                while (keptWord < words.size() - 1
+                        && tokens.size() - words.get(keptWord).firstToken > MAX_BUFFERED_TOKENS / 2) {
+                    keptWord++;
+                }
+                keptWords = words.size() - keptWord;
+            }
+            int keptStart = keptWords > 0 ? words.get(words.size() - keptWords).firstToken : tokens.size();
+            while (passed < keptStart) {
+                passToken(passed++);
+            }
+            tokens.subList(0, passed).clear();
+            labels.subList(0, passed).clear();
+            words.subList(0, words.size() - keptWords).clear();
+            for (PtbWord word : words) {
+                word.firstToken -= passed;
+            }
+        }
+
+        private void passToken(int index) {
+            String label = labels.get(index);
+            if (maxLength > 0 && sequenceLength >= maxLength && canCut(lastLabel, label)) {
+                endSequence();
+            }
+            sink.token(tokens.get(index), label);
+            sequenceLength++;
+            lastLabel = label;
+        }
+
+        private void endSequence() {
+            if (sequenceLength > 0) {
+                sink.endSequence();
+                sequenceLength = 0;
+            }
+        }
+    }
+
+    /**
+     * A token of the PTB Tokenizer together with the index of the first converted token split from it.
+     */
+    private static class PtbWord implements HasWord {
+        private String word;
+        private int firstToken;
+
+        PtbWord(String word, int firstToken) {
+            this.word = word;
+            this.firstToken = firstToken;
+        }
+
+        @Override
+        public String word() {
+            return word;
+        }
+
+        @Override
+        public void setWord(String word) {
+            this.word = word;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the entries of a tar stream one after the other without extracting them. Understands ustar and the GNU
+ * and pax extensions for long names, which is all that tar archives of brat corpora need. The content of an
+ * entry has to be read with readContent() or is skipped when the next entry is requested.
+ */
+class TarReader {
+    private static final int BLOCK_SIZE = 512;
+
+    private final InputStream in;
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private String name;
+    private long size;
+    private long modified;
+    private boolean regularFile;
+    private long remaining;
+    private long padding;
+
+    /**
+     * @param in uncompressed tar stream
+     */
+    TarReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * moves to the next entry, skipping the content of the current one
+     * @return false if the end of the archive is reached
+     * @throws IOException if the archive could not be read or is corrupt
+     */
+    boolean nextEntry() throws IOException {
+        String longName = null;
+        while (true) {
+            skipFully(remaining + padding);
+            remaining = 0;
+            padding = 0;
+            if (!readBlock()) {
+                return false;
+            }
+            long entrySize = parseNumber(124, 12);
+            byte type = header[156];
+            remaining = entrySize;
+            padding = (BLOCK_SIZE - entrySize % BLOCK_SIZE) % BLOCK_SIZE;
+
+            if (type == 'L') {
+                // GNU long name, the name is the content of this entry and applies to the next one
+                longName = trimNul(readContent());
+            } else if (type == 'x') {
+                String path = parsePaxPath(readContent());
+                if (path != null) {
+                    longName = path;
+                }
+            } else if (type == 'g' || type == 'K') {
+                // global pax header and GNU long link name are not needed
+                continue;
+            } else {
+                name = longName != null ? longName : headerName();
+                size = entrySize;
+                modified = parseNumber(136, 12) * 1000;
+                regularFile = type == '0' || type == 0 || type == '7';
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return path of the current entry inside the archive
+     */
+    String getName() {
+        return name;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return modification time of the current entry in milliseconds
+     */
+    long getModified() {
+        return modified;
+    }
+
+    /**
+     * @return true if the current entry is a file, false for directories, links and other special entries
+     */
+    boolean isRegularFile() {
+        return regularFile;
+    }
+
+    /**
+     * reads the whole content of the current entry
+     * @return content of the entry
+     * @throws IOException if the archive could not be read or the entry is too large
+     */
+    byte[] readContent() throws IOException {
+        if (remaining > Integer.MAX_VALUE - 8) {
+            throw new IOException("tar entry " + name + " is too large: " + remaining + " bytes");
+        }
+        byte[] content = new byte[(int) remaining];
+        readFully(content);
+        remaining = 0;
+        return content;
+    }
+
+    private boolean readBlock() throws IOException {
+        int read = 0;
+        while (read < BLOCK_SIZE) {
+            int count = in.read(header, read, BLOCK_SIZE - read);
+            if (count < 0) {
+                if (read == 0) {
+                    return false;
+                }
+                throw new EOFException("tar archive ends inside an entry header");
+            }
+            read += count;
+        }
+        for (byte b : header) {
+            if (b != 0) {
+                return true;
+            }
+        }
+        // a block of zeros marks the end of the archive
+        return false;
+    }
+
+    private String headerName() {
+        String entryName = readString(0, 100);
+        String prefix = readString(345, 155);
+        boolean ustar = header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a'
+                && header[261] == 'r';
+        if (ustar && !prefix.isEmpty()) {
+            return prefix + "/" + entryName;
+        }
+        return entryName;
+    }
+
+    private String readString(int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * parses an octal number or, if the highest bit of the first byte is set, a big endian binary number
+     */
+    private long parseNumber(int offset, int length) throws IOException {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7f;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xff);
+            }
+            return value;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b == 0 || b == ' ') {
+                if (value > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("corrupt tar header, invalid number: " + readString(offset, length));
+            }
+            value = value * 8 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @param content records of a pax header, "length key=value\n". The length is the decimal number of bytes of
+     *                the whole record including the length itself and the newline, so values may contain newlines.
+     * @return value of the last path record or null if there is none
+     * @throws IOException if a record does not fit its length
+     */
+    static String parsePaxPath(byte[] content) throws IOException {
+        String path = null;
+        int position = 0;
+        while (position < content.length) {
+            long length = 0;
+            int digits = position;
+            while (digits < content.length && content[digits] >= '0' && content[digits] <= '9'
+                    && length <= content.length) {
+                length = length * 10 + (content[digits++] - '0');
+            }
+            if (digits == position || digits >= content.length || content[digits] != ' '
+                    || length > content.length - position || position + length - 1 <= digits
+                    || content[(int) (position + length - 1)] != '\n') {
+                throw new IOException("corrupt pax header, invalid record at byte " + position);
+            }
+            int end = (int) (position + length - 1);
+            int keyStart = digits + 1;
+            int equals = keyStart;
+            while (equals < end && content[equals] != '=') {
+                equals++;
+            }
+            if (equals < end && new String(content, keyStart, equals - keyStart, StandardCharsets.UTF_8)
+                    .equals("path")) {
+                path = new String(content, equals + 1, end - equals - 1, StandardCharsets.UTF_8);
+            }
+            position = end + 1;
+        }
+        return path;
+    }
+
+    private static String trimNul(byte[] content) {
+        int end = 0;
+        while (end < content.length && content[end] != 0) {
+            end++;
+        }
+        return new String(content, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private void readFully(byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int count = in.read(buffer, read, buffer.length - read);
+            if (count < 0) {
+                throw new EOFException("tar archive ends inside entry " + name);
+            }
+            read += count;
+        }
+    }
+
+    private void skipFully(long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                // some streams do not support skip, reading a single byte tells if the end is reached
+                if (in.read() < 0) {
+                    throw new EOFException("tar archive ends inside entry " + name);
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
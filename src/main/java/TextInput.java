@@ -0,0 +1,412 @@
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the .txt, .ann and .tsv files of the converter and the texts given to AnnotationConverter. Every file is
+ * read once with a FileChannel, files of at least MAPPING_THRESHOLD bytes are memory mapped, and decoded as UTF-8
+ * into a char buffer which is reused by the thread for the next file. Invalid bytes are replaced like
+ * InputStreamReader does.
+ * Line breaks are \n, \r and \r\n, like for BufferedReader.readLine(), so readText() gives exactly the text
+ * the .ann offsets were matched against so far: every line followed by a single space.
+ */
+final class TextInput {
+    private static final int MAPPING_THRESHOLD = 1024 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    // buffers of huge documents are not kept, so a single large file does not hold the memory forever
+    private static final int MAX_RETAINED_BUFFER_SIZE = 8 * 1024 * 1024;
+
+    private static final ThreadLocal<TextInput> BUFFERS = ThreadLocal.withInitial(TextInput::new);
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer bytes = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private CharBuffer chars = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    private TextInput() {
+    }
+
+    /**
+     * reads a text file and replaces every line break with a space, the last line is followed by a space as well
+     * @param file file which should be read
+     * @return text of the file with lines separated by " "
+     * @throws IOException if the file could not be read
+     */
+    static String readText(Path file) throws IOException {
+        TextInput input = BUFFERS.get();
+        return input.joinLines(input.decode(input.read(file)));
+    }
+
+    /**
+     * like readText(Path) for content which is already in memory
+     * @param content UTF-8 encoded text
+     * @return text with lines separated by " "
+     */
+    static String readText(byte[] content) throws IOException {
+        TextInput input = BUFFERS.get();
+        return input.joinLines(input.decode(ByteBuffer.wrap(content)));
+    }
+
+    /**
+     * reads a text file line by line
+     * @param file file which should be read
+     * @return lines of the file without line breaks
+     * @throws IOException if the file could not be read
+     */
+    static List<String> readLines(Path file) throws IOException {
+        TextInput input = BUFFERS.get();
+        return input.splitLines(input.decode(input.read(file)));
+    }
+
+    /**
+     * like readLines(Path) for content which is already in memory
+     * @param content UTF-8 encoded text
+     * @return lines of the text without line breaks
+     */
+    static List<String> readLines(byte[] content) throws IOException {
+        TextInput input = BUFFERS.get();
+        return input.splitLines(input.decode(ByteBuffer.wrap(content)));
+    }
+
+    /**
+     * like readText(Path) for a stream
+     * @param in UTF-8 encoded text, is read until its end but not closed
+     * @return text with lines separated by " "
+     * @throws IOException if the stream could not be read
+     */
+    static String readText(InputStream in) throws IOException {
+        TextInput input = BUFFERS.get();
+        return input.joinLines(input.decode(input.read(in)));
+    }
+
+    /**
+     * like readLines(Path) for a stream
+     * @param in UTF-8 encoded text, is read until its end but not closed
+     * @return lines of the text without line breaks
+     * @throws IOException if the stream could not be read
+     */
+    static List<String> readLines(InputStream in) throws IOException {
+        TextInput input = BUFFERS.get();
+        return input.splitLines(input.decode(input.read(in)));
+    }
+
+    /**
+     * like readText(Path) for text which is already decoded
+     * @param in text, is read until its end but not closed
+     * @return text with lines separated by " "
+     * @throws IOException if the reader could not be read
+     */
+    static String readText(Reader in) throws IOException {
+        TextInput input = BUFFERS.get();
+        return input.joinLines(input.load(in));
+    }
+
+    /**
+     * like readLines(Path) for text which is already decoded
+     * @param in text, is read until its end but not closed
+     * @return lines of the text without line breaks
+     * @throws IOException if the reader could not be read
+     */
+    static List<String> readLines(Reader in) throws IOException {
+        TextInput input = BUFFERS.get();
+        return input.splitLines(input.load(in));
+    }
+
+    /**
+     * replaces every line break of the text with a space, like readText(Path)
+     * @param text text with line breaks
+     * @return text with lines separated by " "
+     */
+    static String joinLines(CharSequence text) {
+        TextInput input = BUFFERS.get();
+        return input.joinLines(input.load(text));
+    }
+
+    /**
+     * splits the text at its line breaks, like readLines(Path)
+     * @param text text with line breaks
+     * @return lines of the text without line breaks
+     */
+    static List<String> splitLines(CharSequence text) {
+        TextInput input = BUFFERS.get();
+        return input.splitLines(input.load(text));
+    }
+
+    /**
+     * replaces the line breaks of the text with spaces while it is read, like readText(Reader) but without
+     * holding the text in memory
+     * @param in text with line breaks, is closed when the returned reader is closed
+     * @return reader which returns the text with lines separated by " "
+     */
+    static Reader joinLines(Reader in) {
+        return new LineJoiningReader(in);
+    }
+
+    private ByteBuffer read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException(file + " is too large: " + size + " bytes");
+            }
+            if (size >= MAPPING_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            if (bytes.capacity() < size) {
+                bytes = ByteBuffer.allocate((int) size);
+            }
+            bytes.clear();
+            bytes.limit((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // the file may have been shortened while reading, the bytes read so far are used
+            }
+            bytes.flip();
+            return bytes;
+        }
+    }
+
+    private ByteBuffer read(InputStream in) throws IOException {
+        bytes.clear();
+        int read;
+        while ((read = in.read(bytes.array(), bytes.position(), bytes.remaining())) >= 0) {
+            bytes.position(bytes.position() + read);
+            if (!bytes.hasRemaining()) {
+                bytes = grow(bytes);
+            }
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        if (buffer.capacity() >= Integer.MAX_VALUE / 2) {
+            throw new OutOfMemoryError("text is too large for a single buffer");
+        }
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    /**
+     * copies the text into the char buffer
+     * @return number of chars
+     */
+    private int load(CharSequence text) {
+        int length = text.length();
+        ensureCharCapacity(length + 1);
+        if (text instanceof String) {
+            ((String) text).getChars(0, length, chars.array(), 0);
+        } else {
+            char[] array = chars.array();
+            for (int i = 0; i < length; i++) {
+                array[i] = text.charAt(i);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * reads the text into the char buffer
+     * @return number of chars
+     */
+    private int load(Reader in) throws IOException {
+        int length = 0;
+        int read;
+        while ((read = in.read(chars.array(), length, chars.capacity() - length)) >= 0) {
+            length += read;
+            if (length == chars.capacity()) {
+                if (chars.capacity() >= Integer.MAX_VALUE / 2) {
+                    throw new OutOfMemoryError("text is too large for a single buffer");
+                }
+                CharBuffer larger = CharBuffer.allocate(chars.capacity() * 2);
+                larger.put(chars.array(), 0, length);
+                chars = larger;
+            }
+        }
+        // one more char has to be free for the space after the last line, guaranteed by the growing above
+        return length;
+    }
+
+    private void ensureCharCapacity(int capacity) {
+        if (chars.capacity() < capacity) {
+            chars = CharBuffer.allocate(Math.max(capacity, 2 * chars.capacity()));
+        }
+    }
+
+    /**
+     * decodes the bytes into the char buffer
+     * @return number of decoded chars
+     */
+    private int decode(ByteBuffer content) throws CharacterCodingException {
+        // UTF-8 never gives more chars than bytes, one more char is kept free for the space after the last line
+        ensureCharCapacity(content.remaining() + 1);
+        chars.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(content, chars, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(chars);
+        }
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        if (bytes.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            bytes = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        }
+        return chars.position();
+    }
+
+    /**
+     * replaces the line breaks in the decoded chars with spaces, \r\n becomes a single space
+     */
+    private String joinLines(int length) {
+        char[] text = chars.array();
+        int written = 0;
+        boolean lineOpen = false;
+        for (int i = 0; i < length; i++) {
+            char c = text[i];
+            if (c == '\n' || c == '\r') {
+                text[written++] = ' ';
+                if (c == '\r' && i + 1 < length && text[i + 1] == '\n') {
+                    i++;
+                }
+                lineOpen = false;
+            } else {
+                text[written++] = c;
+                lineOpen = true;
+            }
+        }
+        if (lineOpen) {
+            text[written++] = ' ';
+        }
+        String result = new String(text, 0, written);
+        releaseLargeBuffer();
+        return result;
+    }
+
+    private List<String> splitLines(int length) {
+        char[] text = chars.array();
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text[i];
+            if (c == '\n' || c == '\r') {
+                lines.add(new String(text, lineStart, i - lineStart));
+                if (c == '\r' && i + 1 < length && text[i + 1] == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < length) {
+            lines.add(new String(text, lineStart, length - lineStart));
+        }
+        releaseLargeBuffer();
+        return lines;
+    }
+
+    private void releaseLargeBuffer() {
+        if (chars.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            chars = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Replaces the line breaks of the underlying reader like joinLines(int). A \r at the end of one read and the
+     * \n at the start of the next one are still treated as a single line break.
+     */
+    private static class LineJoiningReader extends FilterReader {
+        private boolean afterCarriageReturn = false;
+        private boolean lineOpen = false;
+        private boolean finished = false;
+
+        LineJoiningReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            char[] c = new char[1];
+            return read(c, 0, 1) < 0 ? -1 : c[0];
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int written = offset;
+            while (written == offset) {
+                if (finished) {
+                    return -1;
+                }
+                int read = in.read(buffer, offset, length);
+                if (read < 0) {
+                    finished = true;
+                    if (lineOpen) {
+                        buffer[written++] = ' ';
+                    }
+                    break;
+                }
+                for (int i = offset; i < offset + read; i++) {
+                    char c = buffer[i];
+                    if (afterCarriageReturn) {
+                        afterCarriageReturn = false;
+                        if (c == '\n') {
+                            continue;
+                        }
+                    }
+                    if (c == '\n' || c == '\r') {
+                        buffer[written++] = ' ';
+                        afterCarriageReturn = c == '\r';
+                        lineOpen = false;
+                    } else {
+                        buffer[written++] = c;
+                        lineOpen = true;
+                    }
+                }
+            }
+            return written == offset ? -1 : written - offset;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            char[] skipped = new char[(int) Math.min(n, 8192)];
+            long total = 0;
+            int read;
+            while (total < n && (read = read(skipped, 0, (int) Math.min(n - total, skipped.length))) > 0) {
+                total += read;
+            }
+            return total;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(int readAheadLimit) throws IOException {
+            throw new IOException("mark() not supported");
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("reset() not supported");
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes documents with BinaryTokenWriter and reads them back with BinaryTokenReader, by index, by iteration and
+ * as exported TSV file, which has to equal the TSV output byte for byte.
+ */
+public class BinaryTokenWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<ConvertedDocument> documents = Arrays.asList(
+            new ConvertedDocument("news/first", Arrays.asList("Die", "BASF", "SE", "meldet", "Zahlen", "."),
+                    Arrays.asList("O", "COMP", "COMP", "O", "O", "O"), 1, 0),
+            // two and three byte UTF-8 chars and four byte chars outside the basic multilingual plane
+            new ConvertedDocument("unicode", Arrays.asList("M\u00fcller", "\u20ac", "\ud83d\ude00",
+                    "\ud835\udd18nicode", "\u65e5\u672c", "M\u00fcller"),
+                    Arrays.asList("PERSON", "O", "O", "O", "ORT\u00c9", "PERSON"), 2, 1),
+            new ConvertedDocument("empty", Collections.<String>emptyList(), Collections.<String>emptyList(), 0, 0),
+            new ConvertedDocument("sentences", Arrays.asList("Ein", "Satz", ".", "Noch", "einer", "."),
+                    Arrays.asList("O", "O", "O", "O", "O", "O"), 0, 0));
+    private final List<List<Integer>> sequenceCuts = Arrays.asList(
+            Collections.<Integer>emptyList(), Collections.<Integer>emptyList(), Collections.<Integer>emptyList(),
+            Collections.singletonList(3));
+
+    @Test
+    public void documentsAreReadByIndex() throws IOException {
+        File file = writeDocuments();
+        try (BinaryTokenReader reader = new BinaryTokenReader(file.toPath())) {
+            assertEquals(documents.size(), reader.getDocumentCount());
+            // the vocabulary holds every distinct token once, also the ones of the aborted document
+            assertEquals(17, reader.getVocabularySize());
+            for (int i = documents.size() - 1; i >= 0; i--) {
+                assertEquals(documents.get(i).getName(), reader.getName(i));
+                assertEquals(documents.get(i).getTokens().size(), reader.getTokenCount(i));
+                assertDocumentEquals(documents.get(i), reader.getDocument(i));
+                assertEquals(sequenceCuts.get(i), reader.getSequenceCuts(i));
+            }
+        }
+    }
+
+    @Test
+    public void documentsAreReadByIteration() throws IOException {
+        File file = writeDocuments();
+        try (BinaryTokenReader reader = new BinaryTokenReader(file.toPath())) {
+            Iterator<ConvertedDocument> read = reader.iterator();
+            for (ConvertedDocument document : documents) {
+                assertTrue(read.hasNext());
+                assertDocumentEquals(document, read.next());
+            }
+            assertFalse(read.hasNext());
+        }
+    }
+
+    @Test
+    public void exportEqualsTSVOutput() throws IOException {
+        File file = writeDocuments();
+        File exported = folder.newFile("exported.tsv");
+        try (BinaryTokenReader reader = new BinaryTokenReader(file.toPath())) {
+            reader.exportTSV(exported);
+        }
+
+        // the lines of the merged file, see FileParser.writeAnnotations()
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(expected, StandardCharsets.UTF_8))) {
+            for (int i = 0; i < documents.size(); i++) {
+                ConvertedDocument document = documents.get(i);
+                for (int token = 0; token < document.getTokens().size(); token++) {
+                    if (sequenceCuts.get(i).contains(token)) {
+                        writer.println();
+                    }
+                    writer.print(document.getTokens().get(token));
+                    writer.print('\t');
+                    writer.println(document.getLabels().get(token));
+                }
+                writer.println();
+            }
+        }
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(exported.toPath()));
+    }
+
+    @Test
+    public void exportEqualsMergedFileOfConversion() throws IOException {
+        File input = folder.newFolder("input");
+        writeDocument(input, "a", "Die M\u00fcller GmbH meldet \ud83d\ude00 Gewinne. Die BASF SE auch.",
+                "T1\tCOMP 4 15\tM\u00fcller GmbH\nT2\tCOMP 40 47\tBASF SE\n");
+        writeDocument(input, "b", "\u00dcber \u65e5\u672c berichtet die Zeitung \ud835\udd18nicode.",
+                "T1\tCOMP 30 38\t\ud835\udd18nicode\n");
+        File output = folder.newFolder("output");
+        new FileParser().parseAnnotationFilesInDirectory(input.getPath(), output.getPath(), "merged",
+                Collections.singletonList("COMP"), new ConversionOptions()
+                        .setOutputFormat(ConversionOptions.OutputFormat.BOTH)
+                        .setSentenceSplitting(true));
+
+        File exported = new File(output, "exported.tsv");
+        try (BinaryTokenReader reader = new BinaryTokenReader(new File(output, "merged.bin").toPath())) {
+            assertEquals(2, reader.getDocumentCount());
+            reader.exportTSV(exported);
+        }
+        assertArrayEquals(Files.readAllBytes(new File(output, "merged.tsv").toPath()),
+                Files.readAllBytes(exported.toPath()));
+    }
+
+    @Test
+    public void documentsSpanningWindowsAreRead() throws IOException {
+        File file = writeDocuments();
+        File expected = folder.newFile("expected.tsv");
+        try (BinaryTokenReader reader = new BinaryTokenReader(file.toPath())) {
+            reader.exportTSV(expected);
+        }
+        // every window size puts the tokens, the strings and the numbers of the footer elsewhere across a boundary
+        for (int windowSize = 1; windowSize <= 16; windowSize++) {
+            File exported = folder.newFile("exported-" + windowSize + ".tsv");
+            try (BinaryTokenReader reader = new BinaryTokenReader(file.toPath(), windowSize)) {
+                assertEquals(documents.size(), reader.getDocumentCount());
+                for (int i = 0; i < documents.size(); i++) {
+                    assertDocumentEquals(documents.get(i), reader.getDocument(i));
+                    assertEquals(sequenceCuts.get(i), reader.getSequenceCuts(i));
+                }
+                reader.exportTSV(exported);
+            }
+            assertArrayEquals("window size " + windowSize, Files.readAllBytes(expected.toPath()),
+                    Files.readAllBytes(exported.toPath()));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void incompleteFileIsRejected() throws IOException {
+        File file = writeDocuments();
+        byte[] content = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(content, content.length - 1));
+        new BinaryTokenReader(file.toPath()).close();
+    }
+
+    /**
+     * writes the documents with an aborted document between them
+     */
+    private File writeDocuments() throws IOException {
+        File file = folder.newFile("documents" + BinaryTokenWriter.FILE_ENDING);
+        BinaryTokenWriter writer = new BinaryTokenWriter(file);
+        writer.writeDocument(documents.get(0), sequenceCuts.get(0));
+
+        writer.startDocument("aborted");
+        writer.writeToken("verworfen", "O");
+        writer.writeToken("Gr\u00fcnde", "COMP");
+        writer.abortDocument();
+
+        // written one token at a time like a document converted in chunks
+        ConvertedDocument unicode = documents.get(1);
+        writer.startDocument(unicode.getName());
+        for (int i = 0; i < unicode.getTokens().size(); i++) {
+            writer.writeToken(unicode.getTokens().get(i), unicode.getLabels().get(i));
+        }
+        writer.endDocument(unicode.getMatchedAnnotations(), unicode.getUnmatchedAnnotations());
+
+        for (int i = 2; i < documents.size(); i++) {
+            writer.writeDocument(documents.get(i), sequenceCuts.get(i));
+        }
+        writer.close();
+        assertFalse(writer.checkError());
+        return file;
+    }
+
+    private static void writeDocument(File directory, String name, String text, String annotations)
+            throws IOException {
+        Files.write(new File(directory, name + ".txt").toPath(), text.getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(directory, name + ".ann").toPath(), annotations.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertDocumentEquals(ConvertedDocument expected, ConvertedDocument actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getTokens(), actual.getTokens());
+        assertEquals(expected.getLabels(), actual.getLabels());
+        assertEquals(expected.getMatchedAnnotations(), actual.getMatchedAnnotations());
+        assertEquals(expected.getUnmatchedAnnotations(), actual.getUnmatchedAnnotations());
+    }
+}
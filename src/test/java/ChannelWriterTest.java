@@ -0,0 +1,103 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the files of ChannelWriter with the files of an OutputStreamWriter and reads compressed files back
+ * with GZIPInputStream.
+ */
+public class ChannelWriterTest {
+    private static final String PAIR = "\ud83d\ude00";
+    private static final char HIGH = '\uD835';
+    private static final char LOW = '\uDD18';
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void uncompressedFileEqualsOutputStreamWriter() throws IOException {
+        // every offset puts the bytes of the pairs and of the longer chars elsewhere across the block boundary
+        for (int offset = 0; offset <= 8; offset++) {
+            File expected = folder.newFile("expected-" + offset + ".tsv");
+            File actual = folder.newFile("actual-" + offset + ".tsv");
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(expected), StandardCharsets.UTF_8)) {
+                writeSample(writer, ChannelWriter.BLOCK_SIZE - offset);
+            }
+            try (Writer writer = new ChannelWriter(actual)) {
+                writeSample(writer, ChannelWriter.BLOCK_SIZE - offset);
+            }
+            assertArrayEquals("offset " + offset, Files.readAllBytes(expected.toPath()),
+                    Files.readAllBytes(actual.toPath()));
+        }
+    }
+
+    @Test
+    public void unpairedSurrogatesAreWrittenAsQuestionMarks() throws IOException {
+        File file = folder.newFile("surrogates.tsv");
+        try (Writer writer = new ChannelWriter(file)) {
+            writer.write(new char[]{'a', LOW, 'b', HIGH, 'c', HIGH, HIGH, LOW, HIGH});
+        }
+        assertEquals("a?b?c?\ud835\udd18?", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void compressedBlocksAreReadAsOneGzipStream() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int line = 0; text.length() < 3 * ChannelWriter.BLOCK_SIZE + 1000; line++) {
+            text.append("Token").append(line).append(line % 7 == 0 ? "\tCOMP" : "\tO").append('\n');
+            if (line % 101 == 0) {
+                text.append("M\u00fcller\tPERSON\n\u20ac\tO\n").append(PAIR).append("\tO\n");
+            }
+        }
+        File file = folder.newFile("merged.tsv.gz");
+        ChannelWriter writer = new ChannelWriter(file, 3);
+        int half = text.length() / 2;
+        writer.write(text.toString(), 0, half);
+        // a flush ends the current member early
+        writer.flush();
+        writer.write(text.toString(), half, text.length() - half);
+        writer.close();
+
+        byte[] expected = text.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, writer.getUncompressedBytes());
+        assertEquals(file.length(), writer.getBytesWritten());
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                uncompressed.write(buffer, 0, read);
+            }
+        }
+        assertArrayEquals(expected, uncompressed.toByteArray());
+    }
+
+    /**
+     * writes ascii chars up to the position, followed by chars of every UTF-8 length, surrogate pairs split
+     * between calls and unpaired surrogates, each through another write method, and ends with a high surrogate
+     */
+    private static void writeSample(Writer writer, int position) throws IOException {
+        char[] ascii = new char[position];
+        Arrays.fill(ascii, 'x');
+        writer.write(ascii);
+        writer.write(PAIR);
+        writer.write("\u00fc\u20ac" + PAIR + "\tO\n");
+        writer.write(HIGH);
+        writer.write(LOW);
+        writer.write(new char[]{'a', LOW, HIGH, 'b', HIGH}, 0, 5);
+        writer.write(HIGH);
+        writer.write("\uDD18 end", 0, 5);
+        for (int i = 0; i < 3; i++) {
+            writer.write(PAIR + "\u00e9");
+        }
+        writer.write(HIGH);
+    }
+}
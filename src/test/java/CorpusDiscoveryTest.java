@@ -0,0 +1,55 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Lists the documents of a small directory tree whose directories are partly named like documents.
+ */
+public class CorpusDiscoveryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void directoriesNamedLikeDocumentsAreWalked() throws IOException {
+        File input = folder.newFolder("input");
+        write(new File(input, "first.txt"), "Die BASF SE");
+        write(new File(input, "first.ann"), "");
+        // a directory and a file which would form a pair if the directory were taken for a document
+        File report = new File(input, "report.txt");
+        mkdirs(report);
+        write(new File(input, "report.ann"), "");
+        write(new File(report, "inner.txt"), "Siemens AG");
+        write(new File(report, "inner.ann"), "");
+        File notes = new File(input, "news/notes.ann");
+        mkdirs(notes);
+        write(new File(input, "news/notes.txt"), "Bayer");
+        write(new File(notes, "second.txt"), "SAP");
+        write(new File(notes, "second.ann"), "");
+
+        List<String> names = new ArrayList<>();
+        for (DocumentPair pair : new CorpusDiscovery(input.toPath())) {
+            names.add(pair.getName());
+        }
+        assertEquals(Arrays.asList("first", "news/notes.ann/second", "report.txt/inner"), names);
+    }
+
+    private static void mkdirs(File directory) throws IOException {
+        if (!directory.mkdirs()) {
+            throw new IOException("could not create " + directory);
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,66 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the parts of the default splitter with golden files. delimiter-splitter/tokens.txt holds one token per
+ * line, the same line of delimiter-splitter/expected.txt the parts the former chain of String.split() calls produced
+ * for it, every part in brackets. They cover the quirks of that chain which the converted files depend on: dropped
+ * delimiters at the end of a part, tokens of delimiters only which are not split, empty parts between delimiters
+ * and "Saurenz.BASF".
+ */
+public class DelimiterSplitterTest {
+
+    @Test
+    public void partsMatchGoldenFile() throws IOException, URISyntaxException {
+        List<String> tokens = readLines("tokens.txt");
+        List<String> expected = readLines("expected.txt");
+        assertEquals(expected.size(), tokens.size());
+
+        DelimiterSplitter splitter = new DelimiterSplitter();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            assertEquals("parts of '" + token + "'", expected.get(i), format(splitter.split(token)));
+        }
+    }
+
+    @Test
+    public void boundariesMatchParts() throws IOException, URISyntaxException {
+        DelimiterSplitter splitter = new DelimiterSplitter();
+        for (String token : readLines("tokens.txt")) {
+            List<String> parts = new ArrayList<>();
+            splitter.split(new StringBuilder(token), (start, end) -> parts.add(token.substring(start, end)));
+            assertEquals("parts of '" + token + "'", splitter.split(token), parts);
+        }
+    }
+
+    @Test
+    public void configuredDelimitersAreAppliedInOrder() {
+        DelimiterSplitter splitter = new DelimiterSplitter("/", ".");
+        assertEquals("[a][.][b][c]", format(splitter.split("a.b/c")));
+        assertEquals("[a-b]", format(splitter.split("a-b./")));
+        assertEquals("[..][x]", format(splitter.split("../x//")));
+    }
+
+    private static String format(List<String> parts) {
+        StringBuilder formatted = new StringBuilder();
+        for (String part : parts) {
+            formatted.append('[').append(part).append(']');
+        }
+        return formatted.toString();
+    }
+
+    private static List<String> readLines(String name) throws IOException, URISyntaxException {
+        Path path = Paths.get(DelimiterSplitterTest.class.getResource("/delimiter-splitter/" + name).toURI());
+        return Files.readAllLines(path, StandardCharsets.UTF_8);
+    }
+}
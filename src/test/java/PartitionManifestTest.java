@@ -0,0 +1,113 @@
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Converts a small corpus once as a whole and once as N partitions, which are merged with
+ * PartitionManifest.merge() and have to give the same merged file byte for byte.
+ */
+public class PartitionManifestTest {
+    private static final List<String> LABELS = Collections.singletonList("COMP");
+    private static final String[] COMPANIES = {"BASF SE", "Siemens AG", "M\u00fcller GmbH", "Bayer", "Lufthansa",
+            "Deutsche Bank", "SAP", "Zalando SE", "Henkel", "Merck KGaA", "Continental", "Fresenius"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File input;
+
+    @Before
+    public void createCorpus() throws IOException {
+        input = folder.newFolder("input");
+        for (int i = 0; i < COMPANIES.length; i++) {
+            // nested collections, so the order of the corpus is not just the order of the names
+            File directory = i % 3 == 0 ? input : new File(input, i % 3 == 1 ? "news" : "news/2015");
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("could not create " + directory);
+            }
+            String text = "Bericht " + i + ": Die " + COMPANIES[i] + " meldet steigende Ums\u00e4tze. Der Vorstand "
+                    + "rechnet mit einem guten Jahr, sagte ein Sprecher am Montag.";
+            int start = text.indexOf(COMPANIES[i]);
+            String annotations = "T1\tCOMP " + start + " " + (start + COMPANIES[i].length()) + "\t" + COMPANIES[i]
+                    + "\n";
+            write(new File(directory, "document" + i + ".txt"), text);
+            write(new File(directory, "document" + i + ".ann"), annotations);
+        }
+    }
+
+    @Test
+    public void mergedPartitionsEqualWholeConversion() throws IOException {
+        assertMergedPartitionsEqualWholeConversion(3, new ConversionOptions());
+    }
+
+    @Test
+    public void mergedPartitionsEqualWholeConversionWithSentences() throws IOException {
+        assertMergedPartitionsEqualWholeConversion(4, new ConversionOptions().setSentenceSplitting(true));
+    }
+
+    @Test
+    public void singlePartitionEqualsWholeConversion() throws IOException {
+        assertMergedPartitionsEqualWholeConversion(1, new ConversionOptions());
+    }
+
+    @Test
+    public void missingPartitionIsReported() throws IOException {
+        List<File> manifests = convertPartitions(3, new ConversionOptions());
+        String problem = PartitionManifest.merge(manifests.subList(0, 2), folder.newFile("merged.tsv"));
+        assertNotNull(problem);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void partitionOfBinaryOutputIsRejected() throws IOException {
+        new FileParser().parseAnnotationFilesInDirectory(input.getPath(), folder.newFolder("binary").getPath(),
+                "merged", LABELS, new ConversionOptions().setOutputFormat(ConversionOptions.OutputFormat.BINARY)
+                        .setPartition(1, 2));
+    }
+
+    private void assertMergedPartitionsEqualWholeConversion(int partitionCount, ConversionOptions options)
+            throws IOException {
+        File whole = folder.newFolder("whole");
+        new FileParser().parseAnnotationFilesInDirectory(input.getPath(), whole.getPath(), "merged", LABELS,
+                options.setStreaming(true));
+
+        List<File> manifests = convertPartitions(partitionCount, options);
+        File merged = new File(folder.getRoot(), "merged.tsv");
+        assertNull(PartitionManifest.merge(manifests, merged));
+
+        byte[] expected = Files.readAllBytes(new File(whole, "merged.tsv").toPath());
+        assertTrue(expected.length > 0);
+        assertArrayEquals(expected, Files.readAllBytes(merged.toPath()));
+    }
+
+    /**
+     * @return the manifests of all partitions, every partition is converted into a directory of its own
+     */
+    private List<File> convertPartitions(int partitionCount, ConversionOptions options) throws IOException {
+        List<File> manifests = new ArrayList<>();
+        for (int partition = 1; partition <= partitionCount; partition++) {
+            File output = folder.newFolder("partition-" + partition + "-of-" + partitionCount);
+            new FileParser().parseAnnotationFilesInDirectory(input.getPath(), output.getPath(), "merged", LABELS,
+                    options.setPartition(partition, partitionCount));
+            File manifest = new File(output, "merged" + PartitionManifest.fileSuffix(partition, partitionCount)
+                    + PartitionManifest.FILE_ENDING);
+            assertTrue(manifest + " was not written", manifest.isFile());
+            manifests.add(manifest);
+        }
+        return manifests;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,131 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Splits converted texts into sentences, which are found on the tokens of the PTB Tokenizer and not on the tokens
+ * split at the delimiters.
+ */
+public class SequenceSplitterTest {
+    private static final String TEXT = "Die Firma meldet z.B. Umsatz der Dr. Ing. h.c. F. Porsche AG etc. und mehr. "
+            + "Neuer Satz hier.";
+
+    @Test
+    public void abbreviationsDoNotEndSentences() {
+        assertEquals(Arrays.asList(
+                "Die Firma meldet z . B Umsatz der Dr Ing .",
+                "h . c F Porsche AG etc und mehr .",
+                "Neuer Satz hier ."), sentences(TEXT, "", 0));
+    }
+
+    @Test
+    public void sentencesAreNotCutInsideAnnotations() {
+        // the annotation covers the end of the first sentence and the start of the second
+        assertEquals(Arrays.asList(
+                "Die Firma meldet z . B Umsatz der Dr Ing . h . c F Porsche AG etc und mehr .",
+                "Neuer Satz hier ."), sentences(TEXT, "T1\tCOMP 33 49\tDr. Ing. h.c. F.\n", 0));
+    }
+
+    @Test
+    public void longSequencesAreCut() {
+        assertEquals(Arrays.asList(
+                "Die Firma meldet z . B", "Umsatz der Dr Ing .",
+                "h . c F Porsche AG", "etc und mehr .",
+                "Neuer Satz hier ."), sentences(TEXT, "", 6));
+    }
+
+    @Test
+    public void sessionFindsTheSentencesOfTheWholeDocument() {
+        // quotes in the middle of a sentence are dropped by the WordToSentenceProcessor
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 100000; i++) {
+            text.append("Die \"BASF SE\" meldet ").append(i).append(" Mio. EUR, z.B. ")
+                    .append(i % 7 == 0 ? "(sagt er.) " : "").append(i % 3 == 0 ? "Ende! " : "Ende. ")
+                    .append(i % 5 == 0 ? "\"Neu\" ist das. " : "");
+        }
+        SequenceSplitter splitter = new SequenceSplitter(0);
+        List<String> words = new ArrayList<>();
+        List<Integer> firstTokens = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        List<Integer> cuts = new ArrayList<>();
+        SequenceSplitter.Session session = splitter.start(new SequenceSplitter.Sink() {
+            private int written = 0;
+
+            @Override
+            public void token(String token, String label) {
+                written++;
+            }
+
+            @Override
+            public void endSequence() {
+                cuts.add(written);
+            }
+        });
+        Iterator<LabeledToken> labeledTokens = convert(text.toString(), "");
+        while (labeledTokens.hasNext()) {
+            LabeledToken token = labeledTokens.next();
+            if (token.getWord() != null) {
+                words.add(token.getWord());
+                firstTokens.add(tokens.size());
+                session.startWord(token.getWord());
+            }
+            tokens.add(token.getToken());
+            session.add(token.getToken(), token.getLabel());
+        }
+        session.finish();
+
+        List<Integer> sentenceStarts = splitter.findSentenceStarts(words, toArray(firstTokens), tokens.size());
+        assertEquals(sentenceStarts, cuts);
+        assertEquals(sentenceStarts, splitter.split(tokens, Collections.<String>emptyList(), sentenceStarts));
+    }
+
+    /**
+     * @return the tokens of every sequence, separated by spaces
+     */
+    private static List<String> sentences(String text, String annotations, int maxLength) {
+        List<String> words = new ArrayList<>();
+        List<Integer> firstTokens = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        Iterator<LabeledToken> labeledTokens = convert(text, annotations);
+        while (labeledTokens.hasNext()) {
+            LabeledToken token = labeledTokens.next();
+            if (token.getWord() != null) {
+                words.add(token.getWord());
+                firstTokens.add(tokens.size());
+            }
+            tokens.add(token.getToken());
+            labels.add(token.getLabel());
+        }
+        SequenceSplitter splitter = new SequenceSplitter(maxLength);
+        List<Integer> cuts = splitter.split(tokens, labels,
+                splitter.findSentenceStarts(words, toArray(firstTokens), tokens.size()));
+
+        List<String> sequences = new ArrayList<>();
+        int start = 0;
+        for (int end : cuts) {
+            sequences.add(String.join(" ", tokens.subList(start, end)));
+            start = end;
+        }
+        sequences.add(String.join(" ", tokens.subList(start, tokens.size())));
+        return sequences;
+    }
+
+    private static Iterator<LabeledToken> convert(String text, String annotations) {
+        return new AnnotationConverter(Collections.singletonList("COMP")).convert(text, annotations);
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
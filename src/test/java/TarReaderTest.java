@@ -0,0 +1,110 @@
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads pax headers, whose records are delimited by their length prefix and not by newlines.
+ */
+public class TarReaderTest {
+
+    @Test
+    public void paxPathMayContainNewlines() throws IOException {
+        byte[] records = concat(record("mtime", "1432112233.5"), record("path", "corpus/first\nsecond.txt"),
+                record("comment", "a\nb\n"));
+        assertEquals("corpus/first\nsecond.txt", TarReader.parsePaxPath(records));
+    }
+
+    @Test
+    public void paxLengthCountsBytes() throws IOException {
+        byte[] records = concat(record("path", "korpus/Gr\u00f6\u00dfe \u2013 \ud83d\ude00.txt"),
+                record("uname", "m\u00fcller"));
+        assertEquals("korpus/Gr\u00f6\u00dfe \u2013 \ud83d\ude00.txt", TarReader.parsePaxPath(records));
+    }
+
+    @Test
+    public void lastPaxPathWins() throws IOException {
+        byte[] records = concat(record("path", "first.txt"), record("linkpath", "link.txt"),
+                record("path", "second.txt"));
+        assertEquals("second.txt", TarReader.parsePaxPath(records));
+        assertNull(TarReader.parsePaxPath(record("linkpath", "link.txt")));
+        assertNull(TarReader.parsePaxPath(new byte[0]));
+    }
+
+    @Test(expected = IOException.class)
+    public void paxRecordLongerThanHeaderIsRejected() throws IOException {
+        TarReader.parsePaxPath("30 path=short.txt\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void paxRecordWithoutNewlineAtItsEndIsRejected() throws IOException {
+        TarReader.parsePaxPath("12 path=a.txt\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void paxPathNamesTheNextEntry() throws IOException {
+        String path = "corpus/news/with\nnewline/" + String.join("", Collections.nCopies(20, "long/"))
+                + "document.txt";
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "PaxHeaders/document.txt", 'x', record("path", path));
+        writeEntry(tar, "document.txt", '0', "Die BASF SE".getBytes(StandardCharsets.UTF_8));
+        writeEntry(tar, "other.txt", '0', "Siemens".getBytes(StandardCharsets.UTF_8));
+        tar.write(new byte[1024]);
+
+        TarReader reader = new TarReader(new ByteArrayInputStream(tar.toByteArray()));
+        assertTrue(reader.nextEntry());
+        assertEquals(path, reader.getName());
+        assertTrue(reader.isRegularFile());
+        assertEquals("Die BASF SE", new String(reader.readContent(), StandardCharsets.UTF_8));
+        // the pax header only applies to the entry following it
+        assertTrue(reader.nextEntry());
+        assertEquals("other.txt", reader.getName());
+        assertFalse(reader.nextEntry());
+    }
+
+    /**
+     * @return a pax record whose length prefix counts its own digits
+     */
+    private static byte[] record(String key, String value) {
+        int length = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int digits = String.valueOf(length).length();
+        while (String.valueOf(length + digits).length() != digits) {
+            digits++;
+        }
+        return ((length + digits) + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.write(part, 0, part.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeEntry(ByteArrayOutputStream tar, String name, char type, byte[] content) {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 124, 12, content.length);
+        putOctal(header, 136, 12, 1432112233);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        tar.write(header, 0, header.length);
+        tar.write(content, 0, content.length);
+        tar.write(new byte[(512 - content.length % 512) % 512], 0, (512 - content.length % 512) % 512);
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        byte[] digits = String.format("%0" + (length - 1) + "o", value).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(digits, 0, header, offset, digits.length);
+        Arrays.fill(header, offset + digits.length, offset + length, (byte) 0);
+    }
+}